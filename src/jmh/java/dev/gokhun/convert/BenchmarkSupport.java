@@ -0,0 +1,123 @@
+package dev.gokhun.convert;
+
+import static com.google.common.io.RecursiveDeleteOption.ALLOW_INSECURE;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.io.MoreFiles;
+import dev.gokhun.convert.ConversionUtil.ConversionOptions;
+import dev.gokhun.convert.ConversionUtil.FileType;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Locale;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** Synthetic inputs and the operations shared by the benchmarks. */
+final class BenchmarkSupport {
+  private static final JsonNodeFactory FACTORY = JsonNodeFactory.instance;
+
+  private BenchmarkSupport() {}
+
+  /** Flat records with the given number of fields, all text as CSV would read them. */
+  static ArrayNode wideRows(int rows, int columns) {
+    var result = FACTORY.arrayNode(rows);
+    for (var row = 0; row < rows; row++) {
+      var record = result.addObject();
+      for (var column = 0; column < columns; column++) {
+        record.put(
+            "column" + column,
+            column % 2 == 0 ? "value " + row + ", " + column : Integer.toString(row * column));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * An object nested {@code depth} levels deep. Every level has a few scalars, an array of small
+   * objects and the next level.
+   */
+  static ObjectNode deepTree(int depth) {
+    var root = FACTORY.objectNode();
+    var level = root;
+    for (var i = 0; i < depth; i++) {
+      level.put("name", "level " + i);
+      level.put("index", i);
+      level.put("ratio", i / 7.0);
+      level.put("enabled", i % 2 == 0);
+      var items = level.putArray("items");
+      for (var j = 0; j < 8; j++) {
+        items.addObject().put("id", j).put("label", "item " + i + "." + j);
+      }
+      level = level.putObject("child");
+    }
+    level.put("name", "leaf");
+    return root;
+  }
+
+  /** Small typed records, such as log events. */
+  static ArrayNode smallDocuments(int documents) {
+    var result = FACTORY.arrayNode(documents);
+    for (var i = 0; i < documents; i++) {
+      result
+          .addObject()
+          .put("id", i)
+          .put("event", "event " + i)
+          .put("success", i % 3 != 0)
+          .put("latency", i % 1000 / 10.0);
+    }
+    return result;
+  }
+
+  /** Encodes the tree into every given file type, keyed by file type. */
+  static ImmutableMap<FileType, byte[]> encode(
+      JsonNode tree, ConversionOptions options, FileType... types) throws IOException {
+    var inputs = ImmutableMap.<FileType, byte[]>builderWithExpectedSize(types.length);
+    for (var type : types) {
+      var out = new ByteArrayOutputStream();
+      type.writer(options).write(out, tree);
+      inputs.put(type, out.toByteArray());
+    }
+    return inputs.buildOrThrow();
+  }
+
+  /** Writes every encoded input into the directory as {@code input.<extension>}. */
+  static ImmutableMap<FileType, File> writeInputs(
+      Path directory, ImmutableMap<FileType, byte[]> inputs) throws IOException {
+    var files = ImmutableMap.<FileType, File>builderWithExpectedSize(inputs.size());
+    for (var input : inputs.entrySet()) {
+      var file = directory.resolve("input." + extension(input.getKey()));
+      Files.write(file, input.getValue());
+      files.put(input.getKey(), file.toFile());
+    }
+    return files.buildOrThrow();
+  }
+
+  static File output(Path directory, FileType type) {
+    return directory.resolve("output." + extension(type)).toFile();
+  }
+
+  static void deleteDirectory(Path directory) throws IOException {
+    MoreFiles.deleteRecursively(directory, ALLOW_INSECURE);
+  }
+
+  static void read(FileType type, byte[] input, ConversionOptions options, Blackhole blackhole)
+      throws IOException {
+    blackhole.consume(type.reader(options).read(new ByteArrayInputStream(input)));
+  }
+
+  static void write(FileType type, JsonNode tree, ConversionOptions options) throws IOException {
+    type.writer(options).write(OutputStream.nullOutputStream(), tree);
+  }
+
+  private static String extension(FileType type) {
+    return type.name().toLowerCase(Locale.ENGLISH);
+  }
+}
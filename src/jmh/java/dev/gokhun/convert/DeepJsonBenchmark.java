@@ -0,0 +1,113 @@
+package dev.gokhun.convert;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.collect.ImmutableMap;
+import dev.gokhun.convert.ConversionUtil.ConversionOptions;
+import dev.gokhun.convert.ConversionUtil.FileType;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/** A single deeply nested document, the typical shape of configuration files. */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DeepJsonBenchmark {
+  private static final ConversionOptions OPTIONS =
+      ConversionOptions.builder().setCsvSeparator(',').build();
+  private static final FileType[] TYPES = {
+    FileType.JSON, FileType.YAML, FileType.TOML, FileType.PROPERTIES
+  };
+
+  @State(Scope.Benchmark)
+  public static class Dataset {
+    @Param({"8", "64"})
+    int depth;
+
+    JsonNode tree;
+    ImmutableMap<FileType, byte[]> inputs;
+    ImmutableMap<FileType, File> files;
+    Path directory;
+
+    /** Generates the data and encodes it into every file type, in memory and on disk. */
+    @Setup
+    public void setUp() throws IOException {
+      tree = BenchmarkSupport.deepTree(depth);
+      inputs = BenchmarkSupport.encode(tree, OPTIONS, TYPES);
+      directory = Files.createTempDirectory("convert-benchmark");
+      files = BenchmarkSupport.writeInputs(directory, inputs);
+    }
+
+    /** Deletes the files written for the benchmark. */
+    @TearDown
+    public void tearDown() throws IOException {
+      BenchmarkSupport.deleteDirectory(directory);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Source {
+    @Param({"JSON", "YAML", "TOML", "PROPERTIES"})
+    String from;
+
+    FileType type;
+
+    /** Resolves the file type by its name. */
+    @Setup
+    public void setUp() {
+      type = FileType.valueOf(from);
+    }
+  }
+
+  @State(Scope.Benchmark)
+  public static class Target {
+    @Param({"JSON", "YAML", "TOML", "PROPERTIES"})
+    String to;
+
+    FileType type;
+
+    /** Resolves the file type by its name. */
+    @Setup
+    public void setUp() {
+      type = FileType.valueOf(to);
+    }
+  }
+
+  /** Reads an in memory input into a tree. */
+  @Benchmark
+  public void read(Dataset dataset, Source source, Blackhole blackhole) throws IOException {
+    BenchmarkSupport.read(source.type, dataset.inputs.get(source.type), OPTIONS, blackhole);
+  }
+
+  /** Writes the tree into a discarding stream. */
+  @Benchmark
+  public void write(Dataset dataset, Target target) throws IOException {
+    BenchmarkSupport.write(target.type, dataset.tree, OPTIONS);
+  }
+
+  /** Converts a file into another, through the same path as the command line. */
+  @Benchmark
+  public void convert(Dataset dataset, Source source, Target target) throws IOException {
+    ConversionUtil.convert(
+        dataset.files.get(source.type),
+        BenchmarkSupport.output(dataset.directory, target.type),
+        OPTIONS);
+  }
+}
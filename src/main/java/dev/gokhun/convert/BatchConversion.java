@@ -0,0 +1,230 @@
+package dev.gokhun.convert;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static com.google.common.collect.ImmutableMap.toImmutableMap;
+import static com.google.common.io.Files.getNameWithoutExtension;
+import static dev.gokhun.convert.ConversionUtil.FileType.fromFileExtension;
+import static dev.gokhun.convert.ConversionUtil.FileType.isSupported;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import dev.gokhun.convert.ConversionUtil.ConversionOptions;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+
+/** Converts many files within a single process. */
+final class BatchConversion {
+  private static final CharMatcher GLOB_CHARS = CharMatcher.anyOf("*?[{");
+
+  private BatchConversion() {}
+
+  record Result(File input, File output, Optional<String> error) {
+    boolean succeeded() {
+      return error.isEmpty();
+    }
+  }
+
+  /** Whether the input denotes many files: a directory, a glob pattern or a manifest. */
+  static boolean isBatch(File input, boolean manifest) {
+    return manifest || input.isDirectory() || GLOB_CHARS.matchesAnyOf(input.getPath());
+  }
+
+  /**
+   * Converts every input file into {@code outputDirectory}, keeping the relative layout of the
+   * inputs. Files are converted concurrently, one virtual thread per file, with at most {@code
+   * parallelism} conversions running at once. A non-positive {@code parallelism} means no limit.
+   * Results are returned in input order, and the measures of every file are added to {@code stats}.
+   * Outputs are copied from {@code cache} where it holds them.
+   */
+  static ImmutableList<Result> convert(
+      File input,
+      boolean manifest,
+      File outputDirectory,
+      String toType,
+      ConversionOptions options,
+      int parallelism,
+      ConversionStats stats,
+      ConversionCache cache)
+      throws IOException, InterruptedException {
+    return convert(
+        targets(input, manifest, outputDirectory, toType), options, parallelism, stats, cache);
+  }
+
+  /**
+   * Maps every input file to the file in {@code outputDirectory} that it is converted into, keeping
+   * the relative layout of the inputs.
+   *
+   * @throws IllegalArgumentException if two inputs would be converted into the same file, such as
+   *     {@code data.json} and {@code data.yaml}, which would otherwise be written at the same time
+   */
+  static ImmutableMap<File, File> targets(
+      File input, boolean manifest, File outputDirectory, String toType) throws IOException {
+    checkArgument(toType != null, "Target file type is required in batch mode!");
+    checkArgument(
+        !outputDirectory.isFile(),
+        "Output must be a directory in batch mode! [%s]",
+        outputDirectory);
+    var extension = toType.toLowerCase(Locale.ENGLISH);
+    fromFileExtension(extension);
+
+    var inputs = manifest ? fromManifest(input.toPath()) : fromPattern(input.toPath());
+    var targets = ImmutableMap.<File, File>builderWithExpectedSize(inputs.size());
+    var sources = new HashMap<File, File>();
+    inputs.forEach((source, relative) -> {
+      var directory = relative.getParent() == null
+          ? outputDirectory.toPath()
+          : outputDirectory.toPath().resolve(relative.getParent());
+      var target = directory.resolve(targetName(relative, extension)).toFile();
+      var other = sources.putIfAbsent(target, source.toFile());
+      checkArgument(
+          other == null,
+          "Inputs would be converted into the same output! [%s, %s]",
+          other,
+          source);
+      targets.put(source.toFile(), target);
+    });
+    return targets.buildOrThrow();
+  }
+
+  /**
+   * Returns the directory that the inputs are searched under, a directory itself or the fixed part
+   * of a glob pattern, which is empty for a manifest.
+   */
+  static Optional<Path> root(File input, boolean manifest) {
+    if (manifest) {
+      return Optional.empty();
+    }
+    var pattern = input.getPath();
+    var globStart = GLOB_CHARS.indexIn(pattern);
+    if (globStart < 0) {
+      return Optional.of(input.toPath());
+    }
+    var separator = pattern.lastIndexOf(File.separatorChar, globStart);
+    return Optional.of(Path.of(separator < 0 ? "." : pattern.substring(0, separator + 1)));
+  }
+
+  /** Converts every input file into the file it is mapped to, in the same way. */
+  static ImmutableList<Result> convert(
+      ImmutableMap<File, File> targets,
+      ConversionOptions options,
+      int parallelism,
+      ConversionStats stats,
+      ConversionCache cache)
+      throws InterruptedException {
+    var permits = new Semaphore(parallelism > 0 ? parallelism : Integer.MAX_VALUE);
+    var futures = ImmutableMap.<File, Future<?>>builderWithExpectedSize(targets.size());
+    try (var executor = Executors.newVirtualThreadPerTaskExecutor()) {
+      targets.forEach((source, target) -> futures.put(source, executor.submit(() -> {
+        permits.acquire();
+        var converted = false;
+        try {
+          Files.createDirectories(target.getAbsoluteFile().toPath().getParent());
+          var fileStats = new ConversionStats();
+          if (stats.timesRecords()) {
+            fileStats.timeRecords();
+          }
+          cache.convert(
+              source,
+              target,
+              options,
+              fileStats,
+              () -> ConversionUtil.convert(source, target, options, fileStats));
+          stats.add(fileStats);
+          converted = true;
+          return null;
+        } finally {
+          // Do not leave partially written output behind for a failed file.
+          if (!converted) {
+            Files.deleteIfExists(target.toPath());
+          }
+          permits.release();
+        }
+      })));
+    }
+
+    var results = ImmutableList.<Result>builderWithExpectedSize(targets.size());
+    for (var entry : futures.buildOrThrow().entrySet()) {
+      var source = entry.getKey();
+      try {
+        entry.getValue().get();
+        results.add(new Result(source, targets.get(source), Optional.empty()));
+      } catch (ExecutionException e) {
+        results.add(new Result(
+            source, targets.get(source), Optional.of(String.valueOf(e.getCause().getMessage()))));
+      }
+    }
+    return results.build();
+  }
+
+  /**
+   * Returns the name of the file that an input is converted into, which keeps the compression of
+   * the input, e.g. {@code data.csv.gz} into {@code data.json.gz}.
+   */
+  private static String targetName(Path relative, String extension) {
+    var name = relative.getFileName().toString();
+    var compression = Compression.fromFileName(name);
+    var baseName = compression == Compression.NONE
+        ? getNameWithoutExtension(name)
+        : getNameWithoutExtension(getNameWithoutExtension(name));
+    return baseName + "." + extension + compression.extension();
+  }
+
+  /**
+   * Maps each file listed in the manifest, one per line, to its path relative to the manifest, or
+   * to its file name if it is not under the directory of the manifest.
+   */
+  private static ImmutableMap<Path, Path> fromManifest(Path manifest) throws IOException {
+    var base = manifest.toAbsolutePath().normalize().getParent();
+    var inputs = ImmutableMap.<Path, Path>builder();
+    for (var line : Files.readAllLines(manifest, UTF_8)) {
+      var trimmed = line.strip();
+      if (!trimmed.isEmpty() && !trimmed.startsWith("#")) {
+        var path = base.resolve(trimmed).normalize();
+        inputs.put(path, path.startsWith(base) ? base.relativize(path) : path.getFileName());
+      }
+    }
+    return inputs.buildKeepingLast();
+  }
+
+  /**
+   * Maps every supported file under a directory, or every file matching a glob pattern, to its path
+   * relative to the directory or to the fixed part of the pattern.
+   */
+  private static ImmutableMap<Path, Path> fromPattern(Path input) throws IOException {
+    var pattern = input.toString();
+    var globStart = GLOB_CHARS.indexIn(pattern);
+    if (globStart < 0) {
+      try (var paths = Files.walk(input)) {
+        return paths
+            .filter(Files::isRegularFile)
+            .filter(path -> isSupported(Compression.fileExtension(path.toString())))
+            .sorted()
+            .collect(toImmutableMap(path -> path, input::relativize));
+      }
+    }
+
+    var separator = pattern.lastIndexOf(File.separatorChar, globStart);
+    var base = Path.of(separator < 0 ? "." : pattern.substring(0, separator + 1));
+    var matcher =
+        FileSystems.getDefault().getPathMatcher("glob:" + pattern.substring(separator + 1));
+    try (var paths = Files.walk(base)) {
+      return paths
+          .filter(Files::isRegularFile)
+          .filter(path -> matcher.matches(base.relativize(path)))
+          .sorted()
+          .collect(toImmutableMap(path -> path, base::relativize));
+    }
+  }
+}
@@ -0,0 +1,317 @@
+package dev.gokhun.convert;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.file.StandardOpenOption.READ;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.google.common.base.CharMatcher;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Iterables;
+import com.google.common.primitives.Bytes;
+import dev.gokhun.convert.ConversionUtil.RecordReader;
+import dev.gokhun.convert.ConversionUtil.RecordSink;
+import java.io.File;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+/**
+ * Reads a line oriented file by splitting it into byte ranges that start and end on record
+ * boundaries, parsing the ranges concurrently and emitting their records in the original order.
+ *
+ * <p>When fields may be quoted, a line break within quotes does not end a record. Boundaries are
+ * then found in two concurrent passes: the first scans fixed size blocks for the state each block
+ * ends in, from each state it may start in, which tells the state each block starts in, and the
+ * second scans forward from each block start to the first line break outside quotes. A quote that
+ * neither starts nor ends a quoted field, such as one within an unquoted field, leaves it unclear
+ * where quotes start, so such files are read sequentially instead.
+ *
+ * <p>Files with records much longer than a chunk, which splitting does not help with, are read
+ * sequentially too, rather than into chunks that could grow past the largest possible array.
+ */
+final class ChunkedRecordReader {
+  private static final int SCAN_BUFFER_SIZE = 64 << 10;
+  /** The largest array that can be allocated on common virtual machines. */
+  private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+  /** How many times longer than a chunk a range of whole records may grow. */
+  private static final int MAX_RANGE_CHUNKS = 4;
+  private static final byte QUOTE = '"';
+  private static final byte LINE_FEED = '\n';
+  private static final byte CARRIAGE_RETURN = '\r';
+
+  // States of scanning fields that may be quoted.
+  private static final byte FIELD_START = 0;
+  private static final byte UNQUOTED = 1;
+  private static final byte QUOTED = 2;
+  /** Right after a quote within a quoted field, which either ends it or escapes another. */
+  private static final byte QUOTE_IN_QUOTED = 3;
+  /** After a quote where a quote can not be, once it is no longer clear where fields start. */
+  private static final byte INVALID = 4;
+
+  /** Parses a chunk of whole records, prefixed with the header when the file has one. */
+  interface ChunkParser {
+    void parse(byte[] chunk, RecordSink sink) throws IOException;
+  }
+
+  private record Range(long start, long end) {}
+
+  private final ExecutorService executor;
+  private final int parallelism;
+  private final int chunkSize;
+  private final int maxRangeSize;
+  private final boolean header;
+  private final boolean quoted;
+  private final byte separator;
+  private final ChunkParser parser;
+  private final RecordReader sequential;
+
+  /**
+   * Creates a reader of files in chunks of about the given size. Fields separated by the given
+   * separator may be quoted, or else every line break ends a record. Files that can not be split
+   * are read with the given sequential reader.
+   */
+  ChunkedRecordReader(
+      ExecutorService executor,
+      int parallelism,
+      int chunkSize,
+      boolean header,
+      Optional<Character> separator,
+      ChunkParser parser,
+      RecordReader sequential) {
+    checkArgument(
+        chunkSize > 0 && chunkSize <= MAX_ARRAY_SIZE, "Invalid chunk size! [%s]", chunkSize);
+    checkArgument(
+        separator.map(CharMatcher.ascii().and(CharMatcher.isNot('"'))::matches).orElse(true),
+        "Separator of quoted fields must be a single byte other than a quote! [%s]",
+        separator.map(String::valueOf).orElse(""));
+    this.executor = executor;
+    this.parallelism = parallelism;
+    this.chunkSize = chunkSize;
+    this.maxRangeSize = (int)
+        Math.min(MAX_ARRAY_SIZE, Math.max(SCAN_BUFFER_SIZE, (long) MAX_RANGE_CHUNKS * chunkSize));
+    this.header = header;
+    this.quoted = separator.isPresent();
+    this.separator = (byte) separator.orElse('\0').charValue();
+    this.parser = parser;
+    this.sequential = sequential;
+  }
+
+  /** Whether the file is large enough to be read in more than one chunk. */
+  boolean isWorthSplitting(File file) {
+    return file.isFile() && file.length() >= 2L * chunkSize;
+  }
+
+  void read(File file, RecordSink sink) throws IOException {
+    try (var channel = FileChannel.open(file.toPath(), READ)) {
+      var size = channel.size();
+      var headerEnd = header ? recordEnd(channel, 0, false, size) : 0;
+      var split = headerEnd > maxRangeSize
+          ? Optional.<ImmutableList<Range>>empty()
+          : split(channel, headerEnd, size);
+      if (split.isEmpty()) {
+        sequential.read(Channels.newInputStream(channel.position(0)), sink);
+        return;
+      }
+      var headerBytes = read(channel, new Range(0, headerEnd));
+      var ranges = split.get().iterator();
+
+      // Keep a bounded number of chunks in flight so that memory use does not grow with the input.
+      var pending = new ArrayDeque<Future<List<JsonNode>>>();
+      try {
+        while (ranges.hasNext() || !pending.isEmpty()) {
+          while (ranges.hasNext() && pending.size() < parallelism * 2) {
+            var range = ranges.next();
+            pending.add(executor.submit(() -> {
+              var records = new ArrayList<JsonNode>();
+              parser.parse(Bytes.concat(headerBytes, read(channel, range)), records::add);
+              return records;
+            }));
+          }
+          for (var record : await(pending.remove())) {
+            sink.accept(record);
+          }
+        }
+      } finally {
+        pending.forEach(future -> future.cancel(true));
+      }
+    }
+  }
+
+  /**
+   * Splits the records after the header into ranges, or returns nothing if the file has to be read
+   * sequentially.
+   */
+  private Optional<ImmutableList<Range>> split(FileChannel channel, long start, long size)
+      throws IOException {
+    var blocks = (int) Math.max(1, (size - start + chunkSize - 1) / chunkSize);
+
+    var inQuotes = new boolean[blocks];
+    if (quoted) {
+      var tasks = new ArrayList<Callable<byte[]>>(blocks + 1);
+      tasks.add(() -> transitions(channel, 0, start));
+      for (var i = 0; i < blocks; i++) {
+        var from = start + (long) i * chunkSize;
+        tasks.add(() -> transitions(channel, from, Math.min(from + chunkSize, size)));
+      }
+      var results = invokeAll(tasks);
+      // The header has to end where a field starts, as every record does.
+      var state = results.get(0)[FIELD_START];
+      if (state != FIELD_START) {
+        return Optional.empty();
+      }
+      for (var i = 0; i < blocks; i++) {
+        inQuotes[i] = state == QUOTED;
+        state = results.get(i + 1)[state];
+        if (state == INVALID) {
+          return Optional.empty();
+        }
+      }
+    }
+
+    var tasks = new ArrayList<Callable<Long>>(blocks - 1);
+    for (var i = 1; i < blocks; i++) {
+      var from = start + (long) i * chunkSize;
+      var fromInQuotes = inQuotes[i];
+      tasks.add(() -> recordEnd(channel, from, fromInQuotes, size));
+    }
+    var boundaries = invokeAll(tasks);
+
+    var ranges = ImmutableList.<Range>builderWithExpectedSize(blocks);
+    var previous = start;
+    for (var boundary : Iterables.concat(boundaries, ImmutableList.of(size))) {
+      // A record longer than a block pushes a boundary past the next block start. Such
+      // boundaries are still record boundaries, so only empty ranges have to be dropped.
+      if (boundary > previous) {
+        if (start + boundary - previous > maxRangeSize) {
+          return Optional.empty();
+        }
+        ranges.add(new Range(previous, boundary));
+        previous = boundary;
+      }
+    }
+    return Optional.of(ranges.build());
+  }
+
+  /**
+   * Returns the states that a range of fields ends in, indexed by the state it starts in, so that
+   * the range can be scanned before the state it starts in is known.
+   */
+  private byte[] transitions(FileChannel channel, long from, long to) throws IOException {
+    var states = new byte[] {FIELD_START, UNQUOTED, QUOTED, QUOTE_IN_QUOTED};
+    var buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+    for (var position = from; position < to; ) {
+      buffer.clear().limit((int) Math.min(SCAN_BUFFER_SIZE, to - position));
+      var read = channel.read(buffer, position);
+      if (read < 0) {
+        break;
+      }
+      var bytes = buffer.array();
+      for (var i = 0; i < read; i++) {
+        for (var j = 0; j < states.length; j++) {
+          states[j] = next(states[j], bytes[i]);
+        }
+      }
+      position += read;
+    }
+    return states;
+  }
+
+  private byte next(byte state, byte value) {
+    return switch (state) {
+      case FIELD_START -> value == QUOTE ? QUOTED : afterUnquoted(value);
+      case UNQUOTED -> value == QUOTE ? INVALID : afterUnquoted(value);
+      case QUOTED -> value == QUOTE ? QUOTE_IN_QUOTED : QUOTED;
+      case QUOTE_IN_QUOTED -> {
+        if (value == QUOTE) {
+          yield QUOTED;
+        }
+        if (value == separator || value == LINE_FEED) {
+          yield FIELD_START;
+        }
+        // A carriage return may only be followed by the line feed that ends the record.
+        yield value == CARRIAGE_RETURN ? UNQUOTED : INVALID;
+      }
+      default -> INVALID;
+    };
+  }
+
+  private byte afterUnquoted(byte value) {
+    return value == separator || value == LINE_FEED ? FIELD_START : UNQUOTED;
+  }
+
+  /** Returns the position right after the first line break outside quotes, starting at from. */
+  private long recordEnd(FileChannel channel, long from, boolean inQuotes, long size)
+      throws IOException {
+    var buffer = ByteBuffer.allocate(SCAN_BUFFER_SIZE);
+    var quotes = inQuotes;
+    for (var position = from; position < size; ) {
+      buffer.clear();
+      var read = channel.read(buffer, position);
+      if (read < 0) {
+        break;
+      }
+      var bytes = buffer.array();
+      for (var i = 0; i < read; i++) {
+        if (quoted && bytes[i] == QUOTE) {
+          quotes = !quotes;
+        } else if (bytes[i] == LINE_FEED && !quotes) {
+          return position + i + 1;
+        }
+      }
+      position += read;
+    }
+    return size;
+  }
+
+  private static byte[] read(FileChannel channel, Range range) throws IOException {
+    var bytes = new byte[(int) (range.end() - range.start())];
+    var buffer = ByteBuffer.wrap(bytes);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, range.start() + buffer.position()) < 0) {
+        throw new IOException("Unexpected end of file!");
+      }
+    }
+    return bytes;
+  }
+
+  private <T> List<T> invokeAll(List<Callable<T>> tasks) throws IOException {
+    try {
+      var futures = executor.invokeAll(tasks);
+      var results = new ArrayList<T>(futures.size());
+      for (var future : futures) {
+        results.add(await(future));
+      }
+      return results;
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    }
+  }
+
+  private static <T> T await(Future<T> future) throws IOException {
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException(e.getMessage());
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException cause) {
+        throw cause;
+      }
+      if (e.getCause() instanceof RuntimeException cause) {
+        throw cause;
+      }
+      throw new IOException(e.getCause());
+    }
+  }
+}
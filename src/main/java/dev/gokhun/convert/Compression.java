@@ -0,0 +1,178 @@
+package dev.gokhun.convert;
+
+import static com.google.common.io.Files.getFileExtension;
+import static com.google.common.io.Files.getNameWithoutExtension;
+import static java.nio.file.StandardOpenOption.READ;
+
+import com.google.common.collect.ImmutableSet;
+import com.google.common.primitives.Bytes;
+import io.airlift.compress.zstd.ZstdInputStream;
+import io.airlift.compress.zstd.ZstdOutputStream;
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Compression of input and output files, detected from a compound extension such as {@code
+ * data.csv.gz}, or for input from the magic bytes it starts with.
+ *
+ * <p>Gzip is compressed by the JDK, and Zstandard and LZ4 by aircompressor, which is written in
+ * Java alone and so needs no native library. Input of any of them is decompressed ahead of the
+ * reader, see {@link PipelinedInputStream}.
+ */
+enum Compression {
+  NONE(ImmutableSet.of()),
+  GZIP(ImmutableSet.of("gz", "gzip"), 0x1F, 0x8B) {
+    @Override
+    InputStream decompress(InputStream in, int bufferSize) throws IOException {
+      // Inflating runs on a thread of its own, so that the parser never waits on it.
+      return new PipelinedInputStream(new GZIPInputStream(in, bufferSize), bufferSize);
+    }
+
+    @Override
+    OutputStream compress(OutputStream out) {
+      return new ParallelGzipOutputStream(out);
+    }
+  },
+  ZSTD(ImmutableSet.of("zst", "zstd"), 0x28, 0xB5, 0x2F, 0xFD) {
+    @Override
+    InputStream decompress(InputStream in, int bufferSize) {
+      return new PipelinedInputStream(new ZstdInputStream(in), bufferSize);
+    }
+
+    @Override
+    OutputStream compress(OutputStream out) throws IOException {
+      return new ZstdOutputStream(out);
+    }
+  },
+  LZ4(ImmutableSet.of("lz4"), 0x04, 0x22, 0x4D, 0x18) {
+    @Override
+    InputStream decompress(InputStream in, int bufferSize) {
+      return new PipelinedInputStream(new Lz4FrameInputStream(in), bufferSize);
+    }
+
+    @Override
+    OutputStream compress(OutputStream out) {
+      return new Lz4FrameOutputStream(out);
+    }
+  };
+
+  private static final int MAGIC_LENGTH = 4;
+
+  private final ImmutableSet<String> extensions;
+  private final byte[] magic;
+
+  Compression(ImmutableSet<String> extensions, int... magic) {
+    this.extensions = extensions;
+    this.magic = Bytes.toArray(Arrays.stream(magic).boxed().toList());
+  }
+
+  /** Returns the compression of a file name after its last extension, if it names one. */
+  static Compression fromFileName(String fileName) {
+    var extension = getFileExtension(fileName).toLowerCase(Locale.ENGLISH);
+    return Arrays.stream(values())
+        .filter(compression -> compression.extensions.contains(extension))
+        .findAny()
+        .orElse(NONE);
+  }
+
+  /**
+   * Returns the compression of an input file, from its name or else from the magic bytes it starts
+   * with, which are read from a channel of its own. Files that are read through a stream are
+   * detected on that stream instead, see {@link #decompressing(InputStream, String, int)}.
+   */
+  static Compression of(Path input) throws IOException {
+    var compression = fromFileName(input.getFileName().toString());
+    if (compression != NONE) {
+      return compression;
+    }
+    var head = ByteBuffer.allocate(MAGIC_LENGTH);
+    try (var channel = FileChannel.open(input, READ)) {
+      var read = 0;
+      while (head.hasRemaining() && read >= 0) {
+        read = channel.read(head);
+      }
+    }
+    return fromMagic(Arrays.copyOf(head.array(), head.position()));
+  }
+
+  /**
+   * Reads a stream through a buffer of the given size, decompressing it if it starts with the magic
+   * bytes of a compression. This is how input without a file name, such as standard input, is
+   * detected.
+   */
+  static InputStream decompressing(InputStream in, int bufferSize) throws IOException {
+    var buffered = new BufferedInputStream(in, Math.max(bufferSize, MAGIC_LENGTH));
+    return fromMagic(peek(buffered)).decompress(buffered, bufferSize);
+  }
+
+  /**
+   * Decompresses an opened input file by the compression its name ends with, or else by the magic
+   * bytes it starts with. These are peeked at on the stream itself, so that the file is opened and
+   * read only once, which is all that named pipes can be.
+   */
+  static InputStream decompressing(InputStream in, String fileName, int bufferSize)
+      throws IOException {
+    var compression = fromFileName(fileName);
+    if (compression != NONE) {
+      return compression.decompress(in, bufferSize);
+    }
+    var peekable = in.markSupported() ? in : new PushbackInputStream(in, MAGIC_LENGTH);
+    return fromMagic(peek(peekable)).decompress(peekable, bufferSize);
+  }
+
+  /** Reads the first bytes of a stream, which supports marks or else pushback, to read again. */
+  private static byte[] peek(InputStream in) throws IOException {
+    if (in instanceof PushbackInputStream pushback) {
+      var head = pushback.readNBytes(MAGIC_LENGTH);
+      pushback.unread(head);
+      return head;
+    }
+    in.mark(MAGIC_LENGTH);
+    var head = in.readNBytes(MAGIC_LENGTH);
+    in.reset();
+    return head;
+  }
+
+  private static Compression fromMagic(byte[] head) {
+    return Arrays.stream(values())
+        .filter(candidate -> candidate != NONE && candidate.startsWithMagic(head))
+        .findAny()
+        .orElse(NONE);
+  }
+
+  /** Returns the extension of the file type in a file name, past any compression extension. */
+  static String fileExtension(String fileName) {
+    return fromFileName(fileName) == NONE
+        ? getFileExtension(fileName)
+        : getFileExtension(getNameWithoutExtension(fileName));
+  }
+
+  /** Returns the extension that compressed file names end with, or an empty one. */
+  String extension() {
+    return extensions.isEmpty() ? "" : "." + extensions.iterator().next();
+  }
+
+  /** Wraps an input stream into one that decompresses it, which closes the stream when closed. */
+  InputStream decompress(InputStream in, int bufferSize) throws IOException {
+    return in;
+  }
+
+  /** Wraps an output stream into one that compresses into it, which closes it when closed. */
+  OutputStream compress(OutputStream out) throws IOException {
+    return out;
+  }
+
+  private boolean startsWithMagic(byte[] head) {
+    return head.length >= magic.length
+        && Arrays.equals(head, 0, magic.length, magic, 0, magic.length);
+  }
+}
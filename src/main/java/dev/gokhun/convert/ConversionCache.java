@@ -0,0 +1,371 @@
+package dev.gokhun.convert;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+
+import com.google.common.hash.Funnels;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import dev.gokhun.convert.ConversionUtil.ConversionOptions;
+import dev.gokhun.convert.ConversionUtil.FileType;
+import dev.gokhun.convert.ConversionUtil.StandardStreams;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Caches converted outputs on disk, keyed by a hash of the input bytes, the file types and the
+ * conversion options. A hit copies the cached output over and skips parsing altogether, which pays
+ * off where the same inputs are converted with the same options again and again, as in CI.
+ *
+ * <p>The cache is bounded in size and evicts the least recently used outputs first. Recency is kept
+ * in the modification time of the cached files, so that it carries over to the next process. Every
+ * entry is moved into place at once, so processes sharing a cache directory never see half of one,
+ * and an entry evicted by another process is taken as a miss. Temporary files left behind by a
+ * process that died while moving an entry into place are deleted once they are stale.
+ *
+ * <p>The input is hashed in a pass of its own before it is converted. An input whose size or
+ * modification time changed by the time its output is written may have been converted from other
+ * content than that of its key, so its output is not cached.
+ */
+final class ConversionCache {
+  /** Changes whenever the output of the same input and options may change. */
+  private static final String VERSION = "3";
+  private static final String TEMPORARY_SUFFIX = ".tmp";
+  /** Age after which a temporary file is no longer being written by any process. */
+  private static final Duration STALE_TEMPORARY_AGE = Duration.ofHours(1);
+
+  private static final ConversionCache DISABLED = new ConversionCache(null, 0);
+
+  private final Path directory;
+  private final long maxBytes;
+  // Cached entries in order of use, least recently used first, with their sizes.
+  private final LinkedHashMap<String, Long> entries = new LinkedHashMap<>(16, 0.75f, true);
+  private final AtomicLong hits = new AtomicLong();
+  private final AtomicLong misses = new AtomicLong();
+  private long totalBytes;
+
+  /** Converts an input into an output, when the cache has no output for it. */
+  interface Conversion {
+    void convert() throws IOException;
+  }
+
+  /**
+   * The size and modification time of a file, which change whenever its content is written. Inputs
+   * whose state changed while they were hashed and converted are not recorded by their hash.
+   */
+  record FileState(long size, FileTime lastModified) {
+    /** Returns the state of a file, which is empty once the file is gone. */
+    static Optional<FileState> of(File file) throws IOException {
+      try {
+        var attributes = Files.readAttributes(file.toPath(), BasicFileAttributes.class);
+        return Optional.of(new FileState(attributes.size(), attributes.lastModifiedTime()));
+      } catch (NoSuchFileException e) {
+        return Optional.empty();
+      }
+    }
+  }
+
+  private ConversionCache(Path directory, long maxBytes) {
+    this.directory = directory;
+    this.maxBytes = maxBytes;
+  }
+
+  /** Returns a cache that caches nothing, converting every input. */
+  static ConversionCache disabled() {
+    return DISABLED;
+  }
+
+  /** Opens a cache in a directory, which is created if missing, of at most {@code maxBytes}. */
+  static ConversionCache open(Path directory, long maxBytes) throws IOException {
+    checkArgument(maxBytes > 0, "Cache size must be positive! [%s]", maxBytes);
+    Files.createDirectories(directory);
+    var cache = new ConversionCache(directory, maxBytes);
+    cache.load();
+    return cache;
+  }
+
+  boolean isEnabled() {
+    return directory != null;
+  }
+
+  long hits() {
+    return hits.get();
+  }
+
+  long misses() {
+    return misses.get();
+  }
+
+  /** Converts an input file into an output file through the cache, of the types of their names. */
+  void convert(
+      File input,
+      File output,
+      ConversionOptions options,
+      ConversionStats stats,
+      Conversion conversion)
+      throws IOException {
+    convert(
+        input,
+        FileType.fromFileExtension(Compression.fileExtension(input.getName())),
+        output,
+        FileType.fromFileExtension(Compression.fileExtension(output.getName())),
+        options,
+        stats,
+        conversion);
+  }
+
+  /**
+   * Converts an input file into an output file through the cache. The cached output of the same
+   * input, file types and options is copied over if there is one. Otherwise the input is converted
+   * and its output is cached. Standard streams can not be read twice, so they are never cached.
+   *
+   * <p>Hashing the input is timed as reading it. A hit adds the time of copying the output as
+   * writing, the bytes of the input and the output, and is recorded as a {@link ConversionEvent} of
+   * its own, as the conversion that it stands in for would be.
+   */
+  void convert(
+      File input,
+      FileType from,
+      File output,
+      FileType to,
+      ConversionOptions options,
+      ConversionStats stats,
+      Conversion conversion)
+      throws IOException {
+    if (!isEnabled()
+        || StandardStreams.isStandardStream(input)
+        || StandardStreams.isStandardStream(output)) {
+      conversion.convert();
+      return;
+    }
+    var event = new ConversionEvent();
+    event.begin();
+    var state = FileState.of(input);
+    var hashing = System.nanoTime();
+    var key = key(input, from, output, to, options);
+    var copying = System.nanoTime();
+    stats.addReadNanos(copying - hashing);
+    if (copyCached(key, output)) {
+      hits.incrementAndGet();
+      stats.addWriteNanos(System.nanoTime() - copying);
+      stats.addBytes(input.length(), output.length());
+      stats.addCacheHit();
+      event.input = input.getPath();
+      event.output = output.getPath();
+      event.cacheHit = true;
+      event.commit(stats);
+      return;
+    }
+    misses.incrementAndGet();
+    conversion.convert();
+    if (state.isPresent() && state.equals(FileState.of(input))) {
+      put(key, output);
+    }
+  }
+
+  /**
+   * Hashes everything that the output depends on. Murmur3 hashes gigabytes a second, and 128 bits
+   * leave no room for collisions in a cache of any realistic size.
+   */
+  private static String key(
+      File input, FileType from, File output, FileType to, ConversionOptions options)
+      throws IOException {
+    var hasher = Hashing.murmur3_128().newHasher();
+    hasher
+        .putString(VERSION, UTF_8)
+        .putString(from.name(), UTF_8)
+        .putString(to.name(), UTF_8)
+        .putString(Compression.fromFileName(output.getName()).name(), UTF_8);
+    putOptions(hasher, options);
+    MoreFiles.asByteSource(input.toPath()).copyTo(Funnels.asOutputStream(hasher));
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Hashes the options that the output depends on, which {@link WatchConversion} also tells its
+   * manifests apart by. The buffer size and parallel parsing only change how fast the same output
+   * is written, so they are left out and share entries.
+   */
+  static void putOptions(Hasher hasher, ConversionOptions options) {
+    hasher
+        .putChar(options.csvSeparator())
+        .putBoolean(options.pretty())
+        .putBoolean(options.indentYaml())
+        .putBoolean(options.minimizeYamlQuotes())
+        .putBoolean(options.deduplicateKeys())
+        .putBoolean(options.yamlDocuments())
+        .putBoolean(options.expandKeys())
+        .putInt(options.csvHeaderSample())
+        .putBoolean(options.typedCsv())
+        .putBoolean(options.csvAlwaysQuote())
+        .putBoolean(options.flatten())
+        .putBoolean(options.unflatten())
+        .putInt(options.csvColumnTypes().size());
+    options.csvColumnTypes().forEach((column, type) -> {
+      putString(hasher, column);
+      putString(hasher, type.name());
+    });
+    putStrings(hasher, options.select());
+    putStrings(hasher, options.where());
+    putString(hasher, options.csvSchema().map(Object::toString).orElse(""));
+  }
+
+  private static void putStrings(Hasher hasher, List<String> strings) {
+    hasher.putInt(strings.size());
+    strings.forEach(string -> putString(hasher, string));
+  }
+
+  /** Hashes a string after its length, so that no two sequences of strings hash the same. */
+  private static void putString(Hasher hasher, String string) {
+    hasher.putInt(string.length()).putString(string, UTF_8);
+  }
+
+  private boolean copyCached(String key, File output) throws IOException {
+    synchronized (this) {
+      if (entries.get(key) == null) {
+        return false;
+      }
+    }
+    var cached = path(key);
+    try {
+      Files.copy(cached, output.toPath(), REPLACE_EXISTING);
+      Files.setLastModifiedTime(cached, FileTime.fromMillis(System.currentTimeMillis()));
+      return true;
+    } catch (NoSuchFileException e) {
+      if (Files.exists(cached)) {
+        // Missing is the output directory rather than the entry.
+        throw e;
+      }
+      // Evicted in the meantime, possibly by another process sharing the directory.
+      forget(key);
+      return false;
+    }
+  }
+
+  private void put(String key, File output) throws IOException {
+    var size = output.length();
+    if (size > maxBytes) {
+      return;
+    }
+    var path = path(key);
+    Files.createDirectories(path.getParent());
+    var temporary = Files.createTempFile(directory, key, TEMPORARY_SUFFIX);
+    try {
+      Files.copy(output.toPath(), temporary, REPLACE_EXISTING);
+      Files.move(temporary, path, REPLACE_EXISTING, ATOMIC_MOVE);
+    } finally {
+      Files.deleteIfExists(temporary);
+    }
+    synchronized (this) {
+      var previous = entries.put(key, size);
+      totalBytes += size - (previous == null ? 0 : previous);
+      evict();
+    }
+  }
+
+  /** Deletes least recently used entries until the cache fits into its size again. */
+  private void evict() throws IOException {
+    var iterator = entries.entrySet().iterator();
+    while (totalBytes > maxBytes && iterator.hasNext()) {
+      var entry = iterator.next();
+      iterator.remove();
+      totalBytes -= entry.getValue();
+      Files.deleteIfExists(path(entry.getKey()));
+    }
+  }
+
+  private synchronized void forget(String key) {
+    var size = entries.remove(key);
+    if (size != null) {
+      totalBytes -= size;
+    }
+  }
+
+  /**
+   * Indexes the entries left by earlier processes, in order of their last use, and deletes the
+   * stale temporary files of those that died while moving an entry into place.
+   */
+  private void load() throws IOException {
+    record Entry(String key, long size, FileTime lastUsed) {}
+
+    deleteStaleTemporaryFiles();
+    try (var paths = Files.walk(directory, 2)) {
+      var found = paths
+          .filter(path -> path.getNameCount() == directory.getNameCount() + 2)
+          .filter(Files::isRegularFile)
+          .map(path -> {
+            try {
+              var attributes = Files.readAttributes(path, BasicFileAttributes.class);
+              return new Entry(
+                  path.getParent().getFileName().toString() + path.getFileName(),
+                  attributes.size(),
+                  attributes.lastModifiedTime());
+            } catch (IOException e) {
+              // Evicted by another process while walking.
+              return null;
+            }
+          })
+          .filter(entry -> entry != null && isKey(entry.key()))
+          .sorted(Comparator.comparing(Entry::lastUsed))
+          .toList();
+      synchronized (this) {
+        for (var entry : found) {
+          entries.put(entry.key(), entry.size());
+          totalBytes += entry.size();
+        }
+        evict();
+      }
+    }
+  }
+
+  private void deleteStaleTemporaryFiles() throws IOException {
+    List<Path> temporaryFiles;
+    try (var paths = Files.list(directory)) {
+      temporaryFiles = paths
+          .filter(path -> path.getFileName().toString().endsWith(TEMPORARY_SUFFIX))
+          .toList();
+    }
+    var staleBefore = Instant.now().minus(STALE_TEMPORARY_AGE);
+    for (var path : temporaryFiles) {
+      FileTime lastModified;
+      try {
+        lastModified = Files.getLastModifiedTime(path);
+      } catch (NoSuchFileException e) {
+        // Moved into place or deleted by another process in the meantime.
+        continue;
+      }
+      if (lastModified.toInstant().isBefore(staleBefore)) {
+        Files.deleteIfExists(path);
+      }
+    }
+  }
+
+  private static boolean isKey(String name) {
+    try {
+      return HashCode.fromString(name).bits() == 128;
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+  }
+
+  /** Spreads entries over directories named after the first byte of their key. */
+  private Path path(String key) {
+    return directory.resolve(key.substring(0, 2)).resolve(key.substring(2));
+  }
+}
@@ -0,0 +1,68 @@
+package dev.gokhun.convert;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * Flight recorder event of a file conversion, carrying its {@link ConversionStats}. Recordings
+ * started with {@code -XX:StartFlightRecording}, or on a native executable built with JFR
+ * monitoring, pick it up without any agent attached.
+ */
+@Name("dev.gokhun.convert.Conversion")
+@Label("Conversion")
+@Category("Convert")
+@Description("A file converted into another file type")
+@StackTrace(false)
+final class ConversionEvent extends Event {
+  @Label("Input")
+  String input;
+
+  @Label("Output")
+  String output;
+
+  @Label("Read Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long readTime;
+
+  @Label("Transform Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long transformTime;
+
+  @Label("Write Time")
+  @Timespan(Timespan.NANOSECONDS)
+  long writeTime;
+
+  @Label("Bytes In")
+  @DataAmount(DataAmount.BYTES)
+  long bytesIn;
+
+  @Label("Bytes Out")
+  @DataAmount(DataAmount.BYTES)
+  long bytesOut;
+
+  @Label("Records")
+  long records;
+
+  @Label("Cache Hit")
+  @Description("Whether the output was copied from the cache instead of being converted")
+  boolean cacheHit;
+
+  /** Commits the event with the measures of a finished conversion, if it is being recorded. */
+  void commit(ConversionStats stats) {
+    if (shouldCommit()) {
+      readTime = stats.readNanos();
+      transformTime = stats.transformNanos();
+      writeTime = stats.writeNanos();
+      bytesIn = stats.bytesIn();
+      bytesOut = stats.bytesOut();
+      records = stats.records();
+      commit();
+    }
+  }
+}
@@ -0,0 +1,341 @@
+package dev.gokhun.convert;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.base.Splitter;
+import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ListMultimap;
+import com.google.common.collect.MultimapBuilder;
+import com.google.common.net.HttpHeaders;
+import com.google.common.net.MediaType;
+import com.google.common.primitives.Ints;
+import com.google.common.primitives.Longs;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.Closeable;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URLDecoder;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import org.yaml.snakeyaml.error.YAMLException;
+
+/**
+ * Serves conversions over HTTP on the loopback interface, so that a single warmed up process can
+ * convert many small inputs without paying for JVM startup every time.
+ *
+ * <p>Conversions are posted to {@code /convert?from=<type>&to=<type>}, with the input as the
+ * request body. Options of the command line are accepted as further query parameters, e.g. {@code
+ * pretty=true} or {@code csv-separator=;}. Predicates and selections may be given more than once,
+ * as in {@code where=age>=18&where=name!=Ada}, and only the first {@code =} of a parameter ends its
+ * name, so that the ones of predicates need not be encoded. Every request is handled on a virtual
+ * thread of its own.
+ *
+ * <p>Output is streamed to the client in chunks as it is written, rather than held in memory until
+ * the conversion ends, and request bodies larger than a limit are rejected. Errors found before any
+ * output is written are answered with a status of their own; later ones can only drop the
+ * connection, which leaves the chunked response unterminated so that it is not mistaken for a
+ * whole one.
+ */
+final class ConversionServer implements Closeable {
+  static final String PATH = "/convert";
+  private static final Splitter QUERY_SPLITTER = Splitter.on('&').omitEmptyStrings();
+  private static final Splitter.MapSplitter COLUMN_TYPES_SPLITTER =
+      Splitter.on(',').omitEmptyStrings().trimResults().withKeyValueSeparator('=');
+  private static final Splitter SELECT_SPLITTER =
+      Splitter.on(',').omitEmptyStrings().trimResults();
+  private static final ImmutableMap<String, MediaType> MEDIA_TYPES = ImmutableMap.of(
+      "csv", MediaType.CSV_UTF_8,
+      "tsv", MediaType.TSV_UTF_8,
+      "json", MediaType.JSON_UTF_8,
+      "yaml", MediaType.create("application", "yaml").withCharset(UTF_8),
+      "yml", MediaType.create("application", "yaml").withCharset(UTF_8),
+      "toml", MediaType.create("application", "toml").withCharset(UTF_8),
+      "ndjson", MediaType.create("application", "x-ndjson").withCharset(UTF_8),
+      "jsonl", MediaType.create("application", "jsonl").withCharset(UTF_8));
+
+  private final HttpServer server;
+  private final ExecutorService executor;
+  private final long maxRequestSize;
+
+  private ConversionServer(HttpServer server, ExecutorService executor, long maxRequestSize) {
+    this.server = server;
+    this.executor = executor;
+    this.maxRequestSize = maxRequestSize;
+  }
+
+  /**
+   * Starts serving on the given loopback port, or on any free port when it is zero, accepting
+   * request bodies of up to the given number of bytes.
+   */
+  static ConversionServer start(int port, long maxRequestSize) throws IOException {
+    checkArgument(
+        maxRequestSize > 0, "Maximum request size must be positive! [%s]", maxRequestSize);
+    var server =
+        HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+    var executor = Executors.newVirtualThreadPerTaskExecutor();
+    server.setExecutor(executor);
+    var conversionServer = new ConversionServer(server, executor, maxRequestSize);
+    server.createContext(PATH, conversionServer::handle);
+    server.start();
+    return conversionServer;
+  }
+
+  URI uri() {
+    var address = server.getAddress();
+    return URI.create("http://%s:%d%s".formatted(address.getHostString(), address.getPort(), PATH));
+  }
+
+  @Override
+  public void close() {
+    server.stop(0);
+    executor.close();
+  }
+
+  private void handle(HttpExchange exchange) throws IOException {
+    if (!PATH.equals(exchange.getRequestURI().getPath())) {
+      respond(exchange, 404, "Not found!");
+      return;
+    }
+    if (!"POST".equals(exchange.getRequestMethod())) {
+      exchange.getResponseHeaders().set(HttpHeaders.ALLOW, "POST");
+      respond(exchange, 405, "Method not allowed!");
+      return;
+    }
+    var contentLength = exchange.getRequestHeaders().getFirst(HttpHeaders.CONTENT_LENGTH);
+    if (contentLength != null && Longs.tryParse(contentLength) instanceof Long length
+        && length > maxRequestSize) {
+      respond(exchange, 413, tooLarge());
+      return;
+    }
+
+    var response = new ResponseStream(exchange);
+    try {
+      var parameters = parameters(exchange.getRequestURI());
+      var from = single("from", parameters.removeAll("from"));
+      var to = single("to", parameters.removeAll("to"));
+      if (from == null || to == null) {
+        throw new IllegalArgumentException("Query parameters 'from' and 'to' are required!");
+      }
+      response.mediaType =
+          MEDIA_TYPES.getOrDefault(to.toLowerCase(Locale.ENGLISH), MediaType.PLAIN_TEXT_UTF_8);
+      converter(parameters)
+          .convert(new LimitedInputStream(exchange.getRequestBody()), from, response, to);
+    } catch (IllegalArgumentException | IOException | UncheckedIOException | YAMLException e) {
+      // Input that can not be read is the client's fault, so it is reported as a bad request.
+      if (Throwables.getCausalChain(e).stream().anyMatch(RequestTooLarge.class::isInstance)) {
+        fail(exchange, response, 413, tooLarge(), e);
+      } else {
+        fail(exchange, response, 400, String.valueOf(e.getMessage()), e);
+      }
+      return;
+    } catch (RuntimeException e) {
+      fail(exchange, response, 500, "Conversion failed! [%s]".formatted(e), e);
+      return;
+    }
+    response.finish();
+  }
+
+  private String tooLarge() {
+    return "Request body is larger than %d bytes!".formatted(maxRequestSize);
+  }
+
+  /**
+   * Answers a failed conversion with the given status, or drops the connection if the response has
+   * already started.
+   */
+  private static void fail(
+      HttpExchange exchange, ResponseStream response, int status, String message, Exception e)
+      throws IOException {
+    if (response.body != null) {
+      // Rethrowing makes the server close the connection without ending the chunked body.
+      throw new IOException("Conversion failed after the response started!", e);
+    }
+    respond(exchange, status, message);
+  }
+
+  /** Returns the values of every query parameter, in the order they are given. */
+  private static ListMultimap<String, String> parameters(URI uri) {
+    var query = uri.getRawQuery();
+    ListMultimap<String, String> parameters =
+        MultimapBuilder.linkedHashKeys().arrayListValues().build();
+    if (query != null) {
+      for (var parameter : QUERY_SPLITTER.split(query)) {
+        var separator = parameter.indexOf('=');
+        var name = separator < 0 ? parameter : parameter.substring(0, separator);
+        var value = separator < 0 ? "" : parameter.substring(separator + 1);
+        parameters.put(URLDecoder.decode(name, UTF_8), URLDecoder.decode(value, UTF_8));
+      }
+    }
+    return parameters;
+  }
+
+  /** Returns the only value of a parameter, or null if it is not given. */
+  private static String single(String name, List<String> values) {
+    if (values.size() > 1) {
+      throw new IllegalArgumentException("Option is given more than once! [%s]".formatted(name));
+    }
+    return values.isEmpty() ? null : values.get(0);
+  }
+
+  /** Builds a converter from the option parameters, named after the command line options. */
+  private static Converter converter(ListMultimap<String, String> parameters) {
+    var builder = Converter.builder();
+    for (var name : parameters.keySet()) {
+      var values = parameters.get(name);
+      switch (name) {
+        case "select" -> builder.setSelect(
+            values.stream().flatMap(SELECT_SPLITTER::splitToStream).toList());
+        case "where" -> builder.setWhere(values);
+        default -> option(builder, name, single(name, values));
+      }
+    }
+    return builder.build();
+  }
+
+  private static void option(Converter.Builder builder, String name, String value) {
+    switch (name) {
+      case "csv-separator" -> {
+        if (value.length() != 1) {
+          throw new IllegalArgumentException(
+              "CSV separator must be a single character! [%s]".formatted(value));
+        }
+        builder.setCsvSeparator(value.charAt(0));
+      }
+      case "pretty" -> builder.setPretty(Boolean.parseBoolean(value));
+      case "indent-yaml" -> builder.setIndentYaml(Boolean.parseBoolean(value));
+      case "minimize-yaml-quotes" -> builder.setMinimizeYamlQuotes(Boolean.parseBoolean(value));
+      case "deduplicate-keys" -> builder.setDeduplicateKeys(Boolean.parseBoolean(value));
+      case "yaml-documents" -> builder.setYamlDocuments(Boolean.parseBoolean(value));
+      case "expand-keys" -> builder.setExpandKeys(Boolean.parseBoolean(value));
+      case "csv-header-sample" -> builder.setCsvHeaderSample(number(name, value));
+      case "typed-csv" -> builder.setTypedCsv(Boolean.parseBoolean(value));
+      case "csv-column-types" -> builder.setCsvColumnTypes(COLUMN_TYPES_SPLITTER.split(value));
+      case "csv-always-quote" -> builder.setCsvAlwaysQuote(Boolean.parseBoolean(value));
+      case "flatten" -> builder.setFlatten(Boolean.parseBoolean(value));
+      case "unflatten" -> builder.setUnflatten(Boolean.parseBoolean(value));
+      default -> throw new IllegalArgumentException("Unknown option! [%s]".formatted(name));
+    }
+  }
+
+  private static int number(String name, String value) {
+    var number = Ints.tryParse(value);
+    if (number == null) {
+      throw new IllegalArgumentException(
+          "Option must be a number! [%s=%s]".formatted(name, value));
+    }
+    return number;
+  }
+
+  private static void respond(HttpExchange exchange, int status, String message)
+      throws IOException {
+    try (exchange) {
+      var body = message.getBytes(UTF_8);
+      exchange
+          .getResponseHeaders()
+          .set(HttpHeaders.CONTENT_TYPE, MediaType.PLAIN_TEXT_UTF_8.toString());
+      exchange.sendResponseHeaders(status, body.length);
+      exchange.getResponseBody().write(body);
+    }
+  }
+
+  /** Thrown when a request body turns out larger than allowed while it is read. */
+  private static final class RequestTooLarge extends IOException {
+    RequestTooLarge() {
+      super("Request body is too large!");
+    }
+  }
+
+  /** Fails reading a request body once more than the maximum request size is read from it. */
+  private final class LimitedInputStream extends FilterInputStream {
+    private long remaining = maxRequestSize;
+
+    LimitedInputStream(InputStream in) {
+      super(in);
+    }
+
+    @Override
+    public int read() throws IOException {
+      var read = super.read();
+      if (read >= 0) {
+        count(1);
+      }
+      return read;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+      var read = super.read(b, off, len);
+      if (read > 0) {
+        count(read);
+      }
+      return read;
+    }
+
+    private void count(int read) throws RequestTooLarge {
+      remaining -= read;
+      if (remaining < 0) {
+        throw new RequestTooLarge();
+      }
+    }
+  }
+
+  /**
+   * Sends the response headers, with a chunked body, once the first byte of output is written, so
+   * that a conversion failing before that can still be answered with an error status.
+   */
+  private static final class ResponseStream extends OutputStream {
+    private final HttpExchange exchange;
+    private MediaType mediaType = MediaType.PLAIN_TEXT_UTF_8;
+    private OutputStream body;
+
+    ResponseStream(HttpExchange exchange) {
+      this.exchange = exchange;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      start(0).write(b);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+      if (len > 0) {
+        start(0).write(b, off, len);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      if (body != null) {
+        body.flush();
+      }
+    }
+
+    /** Ends the response, which has no body if nothing was written. */
+    void finish() throws IOException {
+      try (exchange) {
+        start(-1);
+      }
+    }
+
+    private OutputStream start(long length) throws IOException {
+      if (body == null) {
+        exchange.getResponseHeaders().set(HttpHeaders.CONTENT_TYPE, mediaType.toString());
+        exchange.sendResponseHeaders(200, length);
+        body = exchange.getResponseBody();
+      }
+      return body;
+    }
+  }
+}
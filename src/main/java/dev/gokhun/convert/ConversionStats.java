@@ -0,0 +1,211 @@
+package dev.gokhun.convert;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryType;
+import java.util.Locale;
+
+/**
+ * Measures conversions: time spent reading, transforming and writing, bytes in and out, records,
+ * outputs copied from the cache, peak heap and GC time. Wall clock and GC time are taken from when the stats were created, so
+ * {@link #reporting()} stats can also total the conversions of a batch.
+ *
+ * <p>Reading and writing records are interleaved, so while records stream through, only the time
+ * spent in writing each record is measured and the rest is taken as reading. Timing every record
+ * costs two clock reads per record, which is only paid when {@link #timesRecords()}. Conversions
+ * that copy tokens straight through read and write in a single pass, which is timed as writing.
+ */
+final class ConversionStats {
+  private static final JsonMapper JSON_MAPPER = new JsonMapper();
+
+  private final long started = System.nanoTime();
+  private final long gcStarted;
+  private boolean timesRecords;
+  private long readNanos;
+  private long transformNanos;
+  private long writeNanos;
+  private long bytesIn;
+  private long bytesOut;
+  private long records;
+  private long cacheHits;
+
+  enum Format {
+    TEXT,
+    JSON;
+
+    static Format of(String name) {
+      for (var format : values()) {
+        if (format.name().equalsIgnoreCase(name)) {
+          return format;
+        }
+      }
+      throw new IllegalArgumentException("Unsupported stats format! [%s]".formatted(name));
+    }
+  }
+
+  /** Creates stats for a single conversion, which are not formatted themselves. */
+  ConversionStats() {
+    this(false, 0);
+  }
+
+  private ConversionStats(boolean timesRecords, long gcStarted) {
+    this.timesRecords = timesRecords;
+    this.gcStarted = gcStarted;
+  }
+
+  /** Creates stats to be formatted, which time every record and take GC time from now on. */
+  static ConversionStats reporting() {
+    return new ConversionStats(true, gcMillis());
+  }
+
+  /** Whether writing every record is timed, so that reading can be told apart from writing. */
+  boolean timesRecords() {
+    return timesRecords;
+  }
+
+  void timeRecords() {
+    timesRecords = true;
+  }
+
+  void addReadNanos(long nanos) {
+    readNanos += nanos;
+  }
+
+  void addTransformNanos(long nanos) {
+    transformNanos += nanos;
+  }
+
+  void addWriteNanos(long nanos) {
+    writeNanos += nanos;
+  }
+
+  void addBytes(long in, long out) {
+    bytesIn += in;
+    bytesOut += out;
+  }
+
+  void addRecords(long count) {
+    records += count;
+  }
+
+  /** Counts an output copied from the cache, whose bytes are added but whose records are not. */
+  void addCacheHit() {
+    cacheHits++;
+  }
+
+  long readNanos() {
+    return readNanos;
+  }
+
+  long transformNanos() {
+    return transformNanos;
+  }
+
+  long writeNanos() {
+    return writeNanos;
+  }
+
+  long bytesIn() {
+    return bytesIn;
+  }
+
+  long bytesOut() {
+    return bytesOut;
+  }
+
+  long records() {
+    return records;
+  }
+
+  long cacheHits() {
+    return cacheHits;
+  }
+
+  /** Adds the measures of a finished conversion, which may have run on another thread. */
+  synchronized void add(ConversionStats other) {
+    readNanos += other.readNanos;
+    transformNanos += other.transformNanos;
+    writeNanos += other.writeNanos;
+    bytesIn += other.bytesIn;
+    bytesOut += other.bytesOut;
+    records += other.records;
+    cacheHits += other.cacheHits;
+  }
+
+  /**
+   * Formats the measures so far, with wall clock, peak heap and GC time taken as of now. Peak heap
+   * is that of the whole process.
+   */
+  synchronized String format(Format format) {
+    var totalNanos = System.nanoTime() - started;
+    var recordsPerSecond = totalNanos == 0 ? 0 : records * 1e9 / totalNanos;
+    var peakHeap = peakHeapBytes();
+    var gcMillis = gcMillis() - gcStarted;
+    if (format == Format.JSON) {
+      var stats = JSON_MAPPER
+          .createObjectNode()
+          .put("readNanos", readNanos)
+          .put("transformNanos", transformNanos)
+          .put("writeNanos", writeNanos)
+          .put("totalNanos", totalNanos)
+          .put("bytesIn", bytesIn)
+          .put("bytesOut", bytesOut)
+          .put("records", records)
+          .put("cacheHits", cacheHits)
+          .put("recordsPerSecond", Math.round(recordsPerSecond))
+          .put("peakHeapBytes", peakHeap)
+          .put("gcMillis", gcMillis);
+      return stats.toString();
+    }
+    return String.join(
+        System.lineSeparator(),
+        line("Read", seconds(readNanos)),
+        line("Transform", seconds(transformNanos)),
+        line("Write", seconds(writeNanos)),
+        line("Total", seconds(totalNanos)),
+        line("Bytes in", bytes(bytesIn)),
+        line("Bytes out", bytes(bytesOut)),
+        line("Records", String.format(Locale.ROOT, "%,d (%,.0f/s)", records, recordsPerSecond)),
+        line("Cached", String.format(Locale.ROOT, "%,d", cacheHits)),
+        line("Peak heap", bytes(peakHeap)),
+        line("GC time", seconds(MILLISECONDS.toNanos(gcMillis))));
+  }
+
+  private static String line(String name, String value) {
+    return String.format(Locale.ROOT, "%-11s%s", name + ":", value);
+  }
+
+  private static String seconds(long nanos) {
+    return String.format(Locale.ROOT, "%.3f s", nanos / 1e9);
+  }
+
+  private static String bytes(long bytes) {
+    var units = "KMGT";
+    var value = (double) bytes;
+    var unit = -1;
+    while (value >= 1024 && unit < units.length() - 1) {
+      value /= 1024;
+      unit++;
+    }
+    return unit < 0
+        ? String.format(Locale.ROOT, "%d B", bytes)
+        : String.format(Locale.ROOT, "%.1f %siB", value, units.charAt(unit));
+  }
+
+  /** Returns the peak heap usage of the process, summed over its heap memory pools. */
+  private static long peakHeapBytes() {
+    return ManagementFactory.getMemoryPoolMXBeans().stream()
+        .filter(pool -> pool.getType() == MemoryType.HEAP)
+        .mapToLong(pool -> pool.getPeakUsage() == null ? 0 : pool.getPeakUsage().getUsed())
+        .sum();
+  }
+
+  /** Returns the time spent in garbage collection by the process so far. */
+  private static long gcMillis() {
+    return ManagementFactory.getGarbageCollectorMXBeans().stream()
+        .mapToLong(collector -> Math.max(0, collector.getCollectionTime()))
+        .sum();
+  }
+}
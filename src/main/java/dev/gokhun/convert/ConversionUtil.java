@@ -1,121 +1,193 @@
 package dev.gokhun.convert;
 
+import static com.fasterxml.jackson.core.JsonEncoding.UTF8;
+import static com.fasterxml.jackson.core.JsonToken.END_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.END_OBJECT;
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
+import static com.fasterxml.jackson.core.JsonToken.VALUE_STRING;
 import static com.fasterxml.jackson.databind.MapperFeature.SORT_PROPERTIES_ALPHABETICALLY;
-import static com.fasterxml.jackson.dataformat.csv.CsvGenerator.Feature.ALWAYS_QUOTE_STRINGS;
 import static com.fasterxml.jackson.dataformat.yaml.YAMLGenerator.Feature.INDENT_ARRAYS;
 import static com.fasterxml.jackson.dataformat.yaml.YAMLGenerator.Feature.INDENT_ARRAYS_WITH_INDICATOR;
 import static com.fasterxml.jackson.dataformat.yaml.YAMLGenerator.Feature.MINIMIZE_QUOTES;
 import static com.google.common.base.Preconditions.checkArgument;
-import static com.google.common.io.Files.getFileExtension;
 import static dev.gokhun.convert.ConversionUtil.FileType.fromFileExtension;
 import static java.lang.Character.isSpaceChar;
 import static java.lang.Character.isWhitespace;
 import static java.util.Objects.requireNonNull;
 
-import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.util.JsonGeneratorDelegate;
 import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectReader;
+import com.fasterxml.jackson.databind.ObjectWriter;
+import com.fasterxml.jackson.databind.SequenceWriter;
 import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.fasterxml.jackson.databind.node.ArrayNode;
 import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import com.fasterxml.jackson.databind.node.TextNode;
 import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvParser;
 import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema.ColumnType;
 import com.fasterxml.jackson.dataformat.javaprop.JavaPropsMapper;
 import com.fasterxml.jackson.dataformat.toml.TomlMapper;
 import com.fasterxml.jackson.dataformat.yaml.YAMLMapper;
+import com.google.common.base.CharMatcher;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import com.google.common.io.CountingInputStream;
+import com.google.common.io.CountingOutputStream;
+import java.io.Closeable;
 import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.PushbackInputStream;
+import java.nio.file.Files;
+import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Locale;
-import org.yaml.snakeyaml.Yaml;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ForkJoinPool;
 
 final class ConversionUtil {
+  private static final CsvMapper CSV_MAPPER = new CsvMapper();
+  private static final CsvSchema CSV_SCHEMA = CsvSchema.emptySchema().withHeader();
+  private static final char HORIZONTAL_TABULATION = '\t';
+  private static final int PARALLEL_CHUNK_SIZE = 8 << 20;
+  /** Rows of a typed CSV file that its column types are decided from before it is split. */
+  private static final int TYPED_CSV_SAMPLE = 1000;
+
+  private static final ConcurrentMap<CacheKey, ObjectReader> READERS = new ConcurrentHashMap<>();
+  private static final ConcurrentMap<CacheKey, ObjectWriter> WRITERS = new ConcurrentHashMap<>();
+
   private ConversionUtil() {}
 
-  private interface Reader {
-    JsonNode read(File file) throws IOException;
+  interface Reader {
+    JsonNode read(InputStream in) throws IOException;
+  }
+
+  interface Writer {
+    void write(OutputStream out, JsonNode jsonNode) throws IOException;
+  }
+
+  /** Receives records one at a time, in input order. */
+  interface RecordSink extends Closeable {
+    void accept(JsonNode record) throws IOException;
+
+    /**
+     * Receives an input which is a single document rather than a sequence of records, such as a
+     * JSON object. It is the only value the sink receives. Sinks which write the whole document
+     * as it is, instead of wrapping it into a sequence, override this.
+     */
+    default void acceptDocument(JsonNode document) throws IOException {
+      accept(document);
+    }
+
+    @Override
+    default void close() throws IOException {}
+  }
+
+  interface RecordReader {
+    void read(InputStream in, RecordSink sink) throws IOException;
+  }
+
+  private interface RecordWriter {
+    RecordSink open(OutputStream out) throws IOException;
   }
 
-  private interface Writer {
-    void write(File file, JsonNode jsonNode) throws IOException;
+  private interface TokenReader {
+    JsonParser open(InputStream in) throws IOException;
+  }
+
+  private interface TokenWriter {
+    JsonGenerator open(OutputStream out) throws IOException;
+  }
+
+  /** Pushes every record of an input into a sink. */
+  private interface RecordSource {
+    void forEach(RecordSink sink) throws IOException;
+  }
+
+  /**
+   * Identifies a configured {@link ObjectReader} or {@link ObjectWriter} by file type and the option
+   * values it was built from. Both are immutable, so each is built once and shared by every
+   * conversion, including concurrent ones.
+   */
+  private record CacheKey(FileType type, ImmutableList<Object> options) {
+    CacheKey(FileType type, Object... options) {
+      this(type, ImmutableList.copyOf(options));
+    }
   }
 
   enum FileType {
     CSV(ImmutableSet.of("csv")) {
-      private static final CsvMapper MAPPER = new CsvMapper().enable(ALWAYS_QUOTE_STRINGS);
-      private static final CsvSchema CSV_SCHEMA = CsvSchema.emptySchema().withHeader();
-
       @Override
       Reader reader(ConversionOptions options) {
-        return file -> {
-          var it = MAPPER
-              .readerFor(new TypeReference<LinkedHashMap<String, String>>() {})
-              .with(CSV_SCHEMA.withColumnSeparator(options.csvSeparator()))
-              .readValues(file);
-          var factory = JsonNodeFactory.instance;
-          var result = factory.arrayNode();
-          while (it.hasNextValue()) {
-            result.add(MAPPER.convertValue(it.next(), JsonNode.class));
-          }
-          return result;
-        };
+        return treeReader(csvRecordReader(options.csvSeparator(), options));
       }
 
       @Override
       Writer writer(ConversionOptions options) {
-        return (file, jsonNode) -> {
-          var csvSchemaBuilder = CsvSchema.builder();
-          var firstObject = jsonNode instanceof ArrayNode ? jsonNode.elements().next() : jsonNode;
-          firstObject.fieldNames().forEachRemaining(csvSchemaBuilder::addColumn);
-          MAPPER
-              .writerFor(JsonNode.class)
-              .with(csvSchemaBuilder
-                  .build()
-                  .withColumnSeparator(options.csvSeparator())
-                  .withHeader())
-              .writeValue(file, jsonNode);
-        };
+        return csvTreeWriter(options.csvSeparator(), options);
+      }
+
+      @Override
+      Optional<RecordReader> recordReader(ConversionOptions options) {
+        return Optional.of(csvRecordReader(options.csvSeparator(), options));
+      }
+
+      @Override
+      Optional<ChunkedRecordReader> chunkedReader(ConversionOptions options) {
+        // Quoted fields are told apart by single bytes, which other separators are not.
+        return options.parallel() && CharMatcher.ascii().matches(options.csvSeparator())
+            ? Optional.of(chunkedCsvRecordReader(options.csvSeparator(), options))
+            : Optional.empty();
+      }
+
+      @Override
+      Optional<RecordWriter> recordWriter(ConversionOptions options) {
+        return Optional.of(csvRecordWriter(options.csvSeparator(), options));
       }
     },
     TSV(ImmutableSet.of("tsv")) {
-      private static final CsvMapper MAPPER = new CsvMapper().enable(ALWAYS_QUOTE_STRINGS);
-      private static final CsvSchema CSV_SCHEMA = CsvSchema.emptySchema().withHeader();
-      private static final char HORIZONTAL_TABULATION = '\t';
-
       @Override
       Reader reader(ConversionOptions options) {
-        return file -> {
-          var it = MAPPER
-              .readerFor(new TypeReference<LinkedHashMap<String, String>>() {})
-              .with(CSV_SCHEMA.withColumnSeparator(HORIZONTAL_TABULATION))
-              .readValues(file);
-          var factory = JsonNodeFactory.instance;
-          var result = factory.arrayNode();
-          while (it.hasNextValue()) {
-            result.add(MAPPER.convertValue(it.next(), JsonNode.class));
-          }
-          return result;
-        };
+        return treeReader(csvRecordReader(HORIZONTAL_TABULATION, options));
       }
 
       @Override
       Writer writer(ConversionOptions options) {
-        return (file, jsonNode) -> {
-          var csvSchemaBuilder = CsvSchema.builder();
-          var firstObject = jsonNode instanceof ArrayNode ? jsonNode.elements().next() : jsonNode;
-          firstObject.fieldNames().forEachRemaining(csvSchemaBuilder::addColumn);
-          MAPPER
-              .writerFor(JsonNode.class)
-              .with(csvSchemaBuilder
-                  .build()
-                  .withColumnSeparator(HORIZONTAL_TABULATION)
-                  .withHeader())
-              .writeValue(file, jsonNode);
-        };
+        return csvTreeWriter(HORIZONTAL_TABULATION, options);
+      }
+
+      @Override
+      Optional<RecordReader> recordReader(ConversionOptions options) {
+        return Optional.of(csvRecordReader(HORIZONTAL_TABULATION, options));
+      }
+
+      @Override
+      Optional<ChunkedRecordReader> chunkedReader(ConversionOptions options) {
+        return options.parallel()
+            ? Optional.of(chunkedCsvRecordReader(HORIZONTAL_TABULATION, options))
+            : Optional.empty();
+      }
+
+      @Override
+      Optional<RecordWriter> recordWriter(ConversionOptions options) {
+        return Optional.of(csvRecordWriter(HORIZONTAL_TABULATION, options));
       }
     },
     JSON(ImmutableSet.of("json")) {
@@ -128,10 +200,96 @@ Reader reader(ConversionOptions options) {
 
       @Override
       Writer writer(ConversionOptions options) {
-        return (file, jsonNode) -> (options.pretty()
-                ? MAPPER.writerWithDefaultPrettyPrinter()
-                : MAPPER.writer())
-            .writeValue(file, jsonNode);
+        return objectWriter(options)::writeValue;
+      }
+
+      @Override
+      Optional<RecordReader> recordReader(ConversionOptions options) {
+        return Optional.of((in, sink) -> {
+          try (var parser = MAPPER.createParser(in)) {
+            readRecords(parser, sink);
+          }
+        });
+      }
+
+      @Override
+      Optional<RecordWriter> recordWriter(ConversionOptions options) {
+        return Optional.of(out -> sequenceSink(objectWriter(options), out));
+      }
+
+      @Override
+      Optional<TokenReader> tokenReader(ConversionOptions options) {
+        return Optional.of(MAPPER::createParser);
+      }
+
+      @Override
+      Optional<TokenWriter> tokenWriter(ConversionOptions options) {
+        return Optional.of(out -> objectWriter(options).createGenerator(out, UTF8));
+      }
+
+      private ObjectWriter objectWriter(ConversionOptions options) {
+        return WRITERS.computeIfAbsent(
+            new CacheKey(this, options.pretty()),
+            key -> options.pretty() ? MAPPER.writerWithDefaultPrettyPrinter() : MAPPER.writer());
+      }
+    },
+    NDJSON(ImmutableSet.of("ndjson", "jsonl")) {
+      private static final JsonMapper MAPPER = new JsonMapper();
+
+      @Override
+      Reader reader(ConversionOptions options) {
+        return treeReader(recordReader());
+      }
+
+      @Override
+      Writer writer(ConversionOptions options) {
+        return recordTreeWriter(recordWriter());
+      }
+
+      @Override
+      Optional<RecordReader> recordReader(ConversionOptions options) {
+        return Optional.of(recordReader());
+      }
+
+      @Override
+      Optional<ChunkedRecordReader> chunkedReader(ConversionOptions options) {
+        // JSON strings can not contain raw line breaks, so every line break ends a record.
+        return options.parallel()
+            ? Optional.of(newChunkedReader(
+                false,
+                Optional.empty(),
+                (chunk, sink) -> readJsonLines(MAPPER.createParser(chunk), sink),
+                recordReader()))
+            : Optional.empty();
+      }
+
+      @Override
+      Optional<RecordWriter> recordWriter(ConversionOptions options) {
+        return Optional.of(recordWriter());
+      }
+
+      private RecordReader recordReader() {
+        return (in, sink) -> readJsonLines(MAPPER.createParser(in), sink);
+      }
+
+      private RecordWriter recordWriter() {
+        return out -> {
+          var generator = MAPPER.createGenerator(out, UTF8);
+          // Lines are separated explicitly, so the default space between root values must go.
+          generator.setRootValueSeparator(null);
+          return new RecordSink() {
+            @Override
+            public void accept(JsonNode record) throws IOException {
+              generator.writeTree(record);
+              generator.writeRaw('\n');
+            }
+
+            @Override
+            public void close() throws IOException {
+              generator.close();
+            }
+          };
+        };
       }
     },
     PROPERTIES(ImmutableSet.of("properties")) {
@@ -161,22 +319,92 @@ Reader reader(ConversionOptions options) {
       Writer writer(ConversionOptions options) {
         return MAPPER::writeValue;
       }
+
+      @Override
+      Optional<TokenWriter> tokenWriter(ConversionOptions options) {
+        // TomlGenerator mangles escaped characters written from a char[] slice, which is what
+        // copyCurrentStructure uses, so route them through the String overload instead.
+        return Optional.of(
+            out -> new JsonGeneratorDelegate(MAPPER.createGenerator(out, UTF8), false) {
+              @Override
+              public void writeString(char[] text, int offset, int len) throws IOException {
+                delegate.writeString(new String(text, offset, len));
+              }
+            });
+      }
     },
     YAML(ImmutableSet.of("yaml", "yml")) {
       private static final YAMLMapper MAPPER = new YAMLMapper();
+      // Array indentation is fixed when a YAMLGenerator is constructed, so it can not be switched
+      // per ObjectWriter and needs a mapper of its own.
+      private static final YAMLMapper INDENTING_MAPPER = YAMLMapper.builder()
+          .enable(INDENT_ARRAYS, INDENT_ARRAYS_WITH_INDICATOR)
+          .build();
 
       @Override
       Reader reader(ConversionOptions options) {
-        return file -> MAPPER.valueToTree(new Yaml().load(new FileInputStream(file)));
+        return treeReader(recordReader());
       }
 
       @Override
       Writer writer(ConversionOptions options) {
-        return (file, jsonNode) -> MAPPER
-            .configure(INDENT_ARRAYS, options.indentYaml())
-            .configure(INDENT_ARRAYS_WITH_INDICATOR, options.indentYaml())
-            .configure(MINIMIZE_QUOTES, options.minimizeYamlQuotes())
-            .writeValue(file, jsonNode);
+        return options.yamlDocuments()
+            ? recordTreeWriter(documentWriter(options))
+            : objectWriter(options)::writeValue;
+      }
+
+      @Override
+      Optional<RecordReader> recordReader(ConversionOptions options) {
+        return Optional.of(recordReader());
+      }
+
+      @Override
+      Optional<RecordWriter> recordWriter(ConversionOptions options) {
+        if (options.yamlDocuments()) {
+          return Optional.of(documentWriter(options));
+        }
+        return Optional.of(out -> sequenceSink(objectWriter(options), out));
+      }
+
+      @Override
+      Optional<TokenWriter> tokenWriter(ConversionOptions options) {
+        // A generator writes a single document, so records written as documents need a sink.
+        if (options.yamlDocuments()) {
+          return Optional.empty();
+        }
+        return Optional.of(out -> objectWriter(options).createGenerator(out, UTF8));
+      }
+
+      private RecordReader recordReader() {
+        return (in, sink) -> new YamlTreeReader(in).read(sink);
+      }
+
+      /** Writes every record as a document of its own, in a single stream. */
+      private RecordWriter documentWriter(ConversionOptions options) {
+        return out -> {
+          var sequenceWriter = objectWriter(options).writeValues(out);
+          return new RecordSink() {
+            @Override
+            public void accept(JsonNode record) throws IOException {
+              sequenceWriter.write(record);
+            }
+
+            @Override
+            public void close() throws IOException {
+              sequenceWriter.close();
+            }
+          };
+        };
+      }
+
+      private ObjectWriter objectWriter(ConversionOptions options) {
+        return WRITERS.computeIfAbsent(
+            new CacheKey(this, options.indentYaml(), options.minimizeYamlQuotes()), key -> {
+              var writer = (options.indentYaml() ? INDENTING_MAPPER : MAPPER).writer();
+              return options.minimizeYamlQuotes()
+                  ? writer.with(MINIMIZE_QUOTES)
+                  : writer.without(MINIMIZE_QUOTES);
+            });
       }
     };
 
@@ -190,6 +418,38 @@ Writer writer(ConversionOptions options) {
 
     abstract Writer writer(ConversionOptions options);
 
+    /** Returns a reader that emits records one at a time, if this file type supports it. */
+    Optional<RecordReader> recordReader(ConversionOptions options) {
+      return Optional.empty();
+    }
+
+    /** Returns a writer that accepts records one at a time, if this file type supports it. */
+    Optional<RecordWriter> recordWriter(ConversionOptions options) {
+      return Optional.empty();
+    }
+
+    /**
+     * Returns a reader that splits a file into chunks and parses them in parallel, if this file type
+     * and the given options support it.
+     */
+    Optional<ChunkedRecordReader> chunkedReader(ConversionOptions options) {
+      return Optional.empty();
+    }
+
+    /** Returns a reader that exposes the input as a token stream, if this file type supports it. */
+    Optional<TokenReader> tokenReader(ConversionOptions options) {
+      return Optional.empty();
+    }
+
+    /**
+     * Returns a writer that builds the output from a token stream, if this file type supports it.
+     * File types which need the whole tree before writing, such as properties with sorted keys,
+     * must not provide one.
+     */
+    Optional<TokenWriter> tokenWriter(ConversionOptions options) {
+      return Optional.empty();
+    }
+
     static FileType fromFileExtension(String fileExtension) {
       checkArgument(
           fileExtension != null && !fileExtension.isBlank(), "File type could not be determined!");
@@ -199,6 +459,12 @@ static FileType fromFileExtension(String fileExtension) {
           .orElseThrow(() ->
               new IllegalArgumentException("Unsupported file type! [%s]".formatted(fileExtension)));
     }
+
+    static boolean isSupported(String fileExtension) {
+      return fileExtension != null
+          && Arrays.stream(values())
+              .anyMatch(f -> f.extensions.contains(fileExtension.toLowerCase(Locale.ENGLISH)));
+    }
   }
 
   record ConversionOptions(
@@ -206,11 +472,91 @@ record ConversionOptions(
       boolean pretty,
       boolean indentYaml,
       boolean minimizeYamlQuotes,
-      boolean deduplicateKeys) {
+      boolean deduplicateKeys,
+      boolean parallel,
+      int bufferSize,
+      boolean yamlDocuments,
+      boolean expandKeys,
+      int csvHeaderSample,
+      boolean typedCsv,
+      ImmutableMap<String, ColumnType> csvColumnTypes,
+      boolean csvAlwaysQuote,
+      boolean flatten,
+      boolean unflatten,
+      ImmutableList<String> select,
+      ImmutableList<String> where,
+      Optional<RecordProjection> projection,
+      Optional<CsvSchema> csvSchema) {
     ConversionOptions {
       checkArgument(
           !isWhitespace(csvSeparator) && !isSpaceChar(csvSeparator),
           "CSV separator can not be blank or whitespace!");
+      checkArgument(bufferSize > 0, "Buffer size must be positive!");
+      checkArgument(csvHeaderSample >= 0, "CSV header sample can not be negative!");
+      checkArgument(!flatten || !unflatten, "Records can not be both flattened and unflattened!");
+    }
+
+    /** Returns whether CSV input is read with typed cells, which giving column types implies. */
+    boolean readsTypedCsv() {
+      return typedCsv || !csvColumnTypes.isEmpty();
+    }
+
+    /** Returns whether records are flattened or unflattened between reading and writing them. */
+    boolean reshapesRecords() {
+      return flatten || unflatten;
+    }
+
+    /** Returns whether records are changed in any way between reading and writing them. */
+    boolean transformsRecords() {
+      return reshapesRecords() || projection.isPresent();
+    }
+
+    /** Returns these options with the schema that CSV output is written with. */
+    ConversionOptions withCsvSchema(CsvSchema schema) {
+      return new ConversionOptions(
+          csvSeparator,
+          pretty,
+          indentYaml,
+          minimizeYamlQuotes,
+          deduplicateKeys,
+          parallel,
+          bufferSize,
+          yamlDocuments,
+          expandKeys,
+          csvHeaderSample,
+          typedCsv,
+          csvColumnTypes,
+          csvAlwaysQuote,
+          flatten,
+          unflatten,
+          select,
+          where,
+          projection,
+          Optional.of(schema));
+    }
+
+    /** Returns these options with the types that CSV input columns are read with. */
+    ConversionOptions withCsvColumnTypes(Map<String, ColumnType> types) {
+      return new ConversionOptions(
+          csvSeparator,
+          pretty,
+          indentYaml,
+          minimizeYamlQuotes,
+          deduplicateKeys,
+          parallel,
+          bufferSize,
+          yamlDocuments,
+          expandKeys,
+          csvHeaderSample,
+          typedCsv,
+          ImmutableMap.copyOf(types),
+          csvAlwaysQuote,
+          flatten,
+          unflatten,
+          select,
+          where,
+          projection,
+          csvSchema);
     }
 
     static Builder builder() {
@@ -223,6 +569,18 @@ static final class Builder {
       private boolean indentYaml;
       private boolean minimizeYamlQuotes;
       private boolean deduplicateKeys;
+      private boolean parallel;
+      private int bufferSize = NioFiles.DEFAULT_BUFFER_SIZE;
+      private boolean yamlDocuments;
+      private boolean expandKeys;
+      private int csvHeaderSample = 1;
+      private boolean typedCsv;
+      private ImmutableMap<String, ColumnType> csvColumnTypes = ImmutableMap.of();
+      private boolean csvAlwaysQuote;
+      private boolean flatten;
+      private boolean unflatten;
+      private ImmutableList<String> select = ImmutableList.of();
+      private ImmutableList<String> where = ImmutableList.of();
 
       private Builder() {}
 
@@ -251,13 +609,525 @@ Builder setDeduplicateKeys(boolean deduplicateKeys) {
         return this;
       }
 
+      Builder setParallel(boolean parallel) {
+        this.parallel = parallel;
+        return this;
+      }
+
+      Builder setBufferSize(int bufferSize) {
+        this.bufferSize = bufferSize;
+        return this;
+      }
+
+      Builder setYamlDocuments(boolean yamlDocuments) {
+        this.yamlDocuments = yamlDocuments;
+        return this;
+      }
+
+      Builder setExpandKeys(boolean expandKeys) {
+        this.expandKeys = expandKeys;
+        return this;
+      }
+
+      Builder setCsvHeaderSample(int csvHeaderSample) {
+        this.csvHeaderSample = csvHeaderSample;
+        return this;
+      }
+
+      Builder setTypedCsv(boolean typedCsv) {
+        this.typedCsv = typedCsv;
+        return this;
+      }
+
+      Builder setCsvColumnTypes(Map<String, ColumnType> csvColumnTypes) {
+        this.csvColumnTypes = ImmutableMap.copyOf(csvColumnTypes);
+        return this;
+      }
+
+      Builder setCsvAlwaysQuote(boolean csvAlwaysQuote) {
+        this.csvAlwaysQuote = csvAlwaysQuote;
+        return this;
+      }
+
+      Builder setFlatten(boolean flatten) {
+        this.flatten = flatten;
+        return this;
+      }
+
+      Builder setUnflatten(boolean unflatten) {
+        this.unflatten = unflatten;
+        return this;
+      }
+
+      Builder setSelect(List<String> select) {
+        this.select = ImmutableList.copyOf(select);
+        return this;
+      }
+
+      Builder setWhere(List<String> where) {
+        this.where = ImmutableList.copyOf(where);
+        return this;
+      }
+
       ConversionOptions build() {
         return new ConversionOptions(
             this.csvSeparator,
             this.pretty,
             this.indentYaml,
             this.minimizeYamlQuotes,
-            this.deduplicateKeys);
+            this.deduplicateKeys,
+            this.parallel,
+            this.bufferSize,
+            this.yamlDocuments,
+            this.expandKeys,
+            this.csvHeaderSample,
+            this.typedCsv,
+            this.csvColumnTypes,
+            this.csvAlwaysQuote,
+            this.flatten,
+            this.unflatten,
+            this.select,
+            this.where,
+            // Parsed once here, so that invalid paths and predicates fail before anything is read.
+            RecordProjection.of(this.select, this.where),
+            Optional.empty());
+      }
+    }
+  }
+
+  /** Standard input and output, which an input or output named {@value #NAME} stands for. */
+  record StandardStreams(InputStream in, OutputStream out) {
+    static final String NAME = "-";
+
+    /** Standard streams of the process, unbuffered, so that their bytes are not copied twice. */
+    static final StandardStreams SYSTEM = new StandardStreams(
+        new FileInputStream(FileDescriptor.in), new FileOutputStream(FileDescriptor.out));
+
+    static boolean isStandardStream(File file) {
+      return file.getPath().equals(NAME);
+    }
+  }
+
+  /**
+   * Reads CSV records from a stream. Jackson takes input without a header line as malformed, so
+   * empty input is read as no records before it gets to parse it.
+   */
+  private static RecordReader csvRecordReader(char separator, ConversionOptions options) {
+    return (in, sink) -> {
+      var peekable = in.markSupported() ? in : new PushbackInputStream(in);
+      if (isEmpty(peekable)) {
+        peekable.close();
+        return;
+      }
+      readCsvRecords((CsvParser) csvReader(separator).createParser(peekable), sink, options);
+    };
+  }
+
+  /** Returns whether a stream, which supports marks or else pushback, ends before its first byte. */
+  private static boolean isEmpty(InputStream in) throws IOException {
+    if (in instanceof PushbackInputStream pushback) {
+      var first = pushback.read();
+      if (first >= 0) {
+        pushback.unread(first);
+      }
+      return first < 0;
+    }
+    in.mark(1);
+    var first = in.read();
+    in.reset();
+    return first < 0;
+  }
+
+  private static ChunkedRecordReader chunkedCsvRecordReader(
+      char separator, ConversionOptions options) {
+    return newChunkedReader(
+        true,
+        Optional.of(separator),
+        (chunk, sink) ->
+            readCsvRecords((CsvParser) csvReader(separator).createParser(chunk), sink, options),
+        csvRecordReader(separator, options));
+  }
+
+  /** TSV is CSV with a fixed separator, so both share readers keyed by separator. */
+  private static ObjectReader csvReader(char separator) {
+    return READERS.computeIfAbsent(
+        new CacheKey(FileType.CSV, separator),
+        key -> CSV_MAPPER.reader(CSV_SCHEMA.withColumnSeparator(separator)));
+  }
+
+  private static ChunkedRecordReader newChunkedReader(
+      boolean header,
+      Optional<Character> separator,
+      ChunkedRecordReader.ChunkParser parser,
+      RecordReader sequential) {
+    var pool = ForkJoinPool.commonPool();
+    return new ChunkedRecordReader(
+        pool, pool.getParallelism(), PARALLEL_CHUNK_SIZE, header, separator, parser, sequential);
+  }
+
+  /**
+   * Builds each row as an {@link ObjectNode} straight from the CSV tokens. Column names are taken
+   * from the header once and shared by every row. Typed cells are built as the nodes of their
+   * column type rather than as text nodes that would have to be converted later.
+   */
+  private static void readCsvRecords(CsvParser parser, RecordSink sink, ConversionOptions options)
+      throws IOException {
+    try (parser) {
+      var factory = JsonNodeFactory.instance;
+      String[] columns = null;
+      TypedCsvColumns typed = null;
+      while (parser.nextToken() == START_OBJECT) {
+        if (columns == null) {
+          columns = parser.getSchema().getColumnNames().toArray(String[]::new);
+          if (options.readsTypedCsv()) {
+            typed = new TypedCsvColumns(columns, options.csvColumnTypes());
+          }
+        }
+        var record = factory.objectNode();
+        for (var i = 0; parser.nextToken() == FIELD_NAME; i++) {
+          var name = i < columns.length ? columns[i] : parser.currentName();
+          parser.nextToken();
+          if (typed == null) {
+            record.put(name, parser.getText());
+          } else {
+            record.set(name, typed.node(i, parser.getText()));
+          }
+        }
+        sink.accept(record);
+      }
+    }
+  }
+
+  /**
+   * Returns the options with the column types of a typed CSV input decided from its first rows.
+   * Chunks of a file parsed in parallel then type their cells alike, instead of each deciding from
+   * its own first rows.
+   */
+  private static ConversionOptions withCsvColumnTypes(
+      File input, char separator, ConversionOptions options) throws IOException {
+    try (var in = newInputStream(input, options);
+        var parser = (CsvParser) csvReader(separator).createParser(in)) {
+      TypedCsvColumns typed = null;
+      for (var row = 0; row < TYPED_CSV_SAMPLE && parser.nextToken() == START_OBJECT; row++) {
+        if (typed == null) {
+          typed = new TypedCsvColumns(
+              parser.getSchema().getColumnNames().toArray(String[]::new), options.csvColumnTypes());
+        }
+        for (var i = 0; parser.nextToken() == FIELD_NAME; i++) {
+          parser.nextToken();
+          typed.typeOf(i, parser.getText());
+        }
+      }
+      return typed == null ? options : options.withCsvColumnTypes(typed.types());
+    }
+  }
+
+  /**
+   * Writes a tree of records. When the header is to be inferred from every record, it is inferred
+   * from the tree up front, as the records are all at hand, instead of holding them back as a
+   * sample.
+   */
+  private static Writer csvTreeWriter(char separator, ConversionOptions options) {
+    return (out, jsonNode) -> {
+      var treeOptions = options;
+      if (infersCsvHeaderFromAll(options)) {
+        var inference = new CsvSchemaInference();
+        forEachRecord(jsonNode, inference);
+        treeOptions = options.withCsvSchema(inference.schema());
+      }
+      recordTreeWriter(csvRecordWriter(separator, treeOptions)).write(out, jsonNode);
+    };
+  }
+
+  /** Whether the CSV header is the union of the fields of every record, none of them given. */
+  private static boolean infersCsvHeaderFromAll(ConversionOptions options) {
+    return options.csvHeaderSample() == 0 && options.csvSchema().isEmpty();
+  }
+
+  /**
+   * Writes records with the given schema, or else with the union of the fields of as many records
+   * as sampled. Sampled records are held back until the header is known. Rows are written by a
+   * {@link CsvRowWriter} rather than serialized by Jackson, which walks every record through its
+   * generic tree serializer.
+   */
+  private static RecordWriter csvRecordWriter(char separator, ConversionOptions options) {
+    return out -> new RecordSink() {
+      private final CsvSchemaInference inference = new CsvSchemaInference();
+      private final List<JsonNode> sample = new ArrayList<>();
+      private CsvRowWriter rowWriter;
+
+      @Override
+      public void accept(JsonNode record) throws IOException {
+        if (rowWriter == null && options.csvSchema().isPresent()) {
+          start(options.csvSchema().get());
+        }
+        if (rowWriter == null) {
+          sample.add(record);
+          inference.accept(record);
+          if (sample.size() == options.csvHeaderSample()) {
+            writeSample();
+          }
+          return;
+        }
+        rowWriter.write(record);
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (rowWriter == null && !sample.isEmpty()) {
+          writeSample();
+        }
+        if (rowWriter != null) {
+          rowWriter.close();
+        }
+      }
+
+      private void writeSample() throws IOException {
+        start(inference.schema());
+        for (var record : sample) {
+          rowWriter.write(record);
+        }
+        sample.clear();
+      }
+
+      private void start(CsvSchema schema) throws IOException {
+        rowWriter = new CsvRowWriter(out, schema, separator, options.csvAlwaysQuote());
+        rowWriter.writeHeader();
+      }
+    };
+  }
+
+  /**
+   * Emits the elements of a top level array as records. Any other top level value is emitted as a
+   * single document.
+   */
+  private static void readRecords(JsonParser parser, RecordSink sink) throws IOException {
+    var token = parser.nextToken();
+    if (token == START_ARRAY) {
+      while (parser.nextToken() != END_ARRAY) {
+        sink.accept(parser.readValueAsTree());
+      }
+    } else if (token != null) {
+      sink.acceptDocument(parser.readValueAsTree());
+    }
+  }
+
+  /** Emits every top level value as a record, whatever its type. */
+  private static void readJsonLines(JsonParser parser, RecordSink sink) throws IOException {
+    try (parser) {
+      while (parser.nextToken() != null) {
+        sink.accept(parser.readValueAsTree());
+      }
+    }
+  }
+
+  private static Reader treeReader(RecordReader recordReader) {
+    return in -> {
+      var tree = new TreeSink();
+      recordReader.read(in, tree);
+      return tree.result();
+    };
+  }
+
+  /** Writes the elements of an array as records, or any other value as a single document. */
+  private static Writer recordTreeWriter(RecordWriter recordWriter) {
+    return (out, jsonNode) -> {
+      try (var sink = recordWriter.open(out)) {
+        forEachRecord(jsonNode, sink);
+      }
+    };
+  }
+
+  /** Emits the elements of an array as records, or any other value as a single document. */
+  private static void forEachRecord(JsonNode jsonNode, RecordSink sink) throws IOException {
+    if (jsonNode.isArray()) {
+      for (var record : jsonNode) {
+        sink.accept(record);
+      }
+    } else {
+      sink.acceptDocument(jsonNode);
+    }
+  }
+
+  /**
+   * Writes records as the elements of an array, or a single document as it is. The array is only
+   * started with the first record, as until then the input may still turn out to be a document.
+   */
+  private static RecordSink sequenceSink(ObjectWriter writer, OutputStream out) {
+    return new RecordSink() {
+      private SequenceWriter sequenceWriter;
+      private boolean written;
+
+      @Override
+      public void accept(JsonNode record) throws IOException {
+        if (sequenceWriter == null) {
+          sequenceWriter = writer.writeValuesAsArray(out);
+        }
+        sequenceWriter.write(record);
+      }
+
+      @Override
+      public void acceptDocument(JsonNode document) throws IOException {
+        writer.writeValue(out, document);
+        written = true;
+      }
+
+      @Override
+      public void close() throws IOException {
+        if (sequenceWriter == null && !written) {
+          sequenceWriter = writer.writeValuesAsArray(out);
+        }
+        if (sequenceWriter != null) {
+          sequenceWriter.close();
+        }
+      }
+    };
+  }
+
+  /** Collects records into an array, or keeps a single document as it is. */
+  private static final class TreeSink implements RecordSink {
+    private final ArrayNode records = JsonNodeFactory.instance.arrayNode();
+    private JsonNode single;
+
+    @Override
+    public void accept(JsonNode record) {
+      records.add(record);
+    }
+
+    @Override
+    public void acceptDocument(JsonNode document) {
+      single = document;
+    }
+
+    JsonNode result() {
+      return single == null ? records : single;
+    }
+  }
+
+  /**
+   * Counts the records written into a sink and, when the stats time records, the time it takes to
+   * write them, closing included.
+   */
+  private static final class MeasuringSink implements RecordSink {
+    private final RecordSink sink;
+    private final boolean timed;
+    private long records;
+    private long writeNanos;
+
+    MeasuringSink(RecordSink sink, ConversionStats stats) {
+      this.sink = sink;
+      this.timed = stats.timesRecords();
+    }
+
+    @Override
+    public void accept(JsonNode record) throws IOException {
+      records++;
+      if (!timed) {
+        sink.accept(record);
+        return;
+      }
+      var started = System.nanoTime();
+      sink.accept(record);
+      writeNanos += System.nanoTime() - started;
+    }
+
+    @Override
+    public void acceptDocument(JsonNode document) throws IOException {
+      records++;
+      var started = System.nanoTime();
+      sink.acceptDocument(document);
+      writeNanos += System.nanoTime() - started;
+    }
+
+    @Override
+    public void close() throws IOException {
+      var started = System.nanoTime();
+      sink.close();
+      writeNanos += System.nanoTime() - started;
+    }
+  }
+
+  /**
+   * Writes records in the layout of {@link #deduplicateKeys(JsonNode)} as they arrive. Keys of the
+   * first record with any are written once, values of every record are written in their order.
+   * Fields which are already in that order, as in CSV rows, are written without looking them up.
+   */
+  private static final class DeduplicatingSink implements RecordSink {
+    private final JsonGenerator generator;
+    private String[] keys;
+    private int keylessRecords;
+    private boolean single;
+
+    DeduplicatingSink(JsonGenerator generator) {
+      this.generator = generator;
+    }
+
+    @Override
+    public void accept(JsonNode record) throws IOException {
+      if (keys == null) {
+        if (!record.fieldNames().hasNext()) {
+          // Keys are only known once a record has any, so records without wait to be written.
+          keylessRecords++;
+          return;
+        }
+        keys = ImmutableList.copyOf(record.fieldNames()).toArray(String[]::new);
+        startValues();
+      }
+
+      generator.writeStartArray();
+      var fields = record.properties().iterator();
+      var column = 0;
+      while (column < keys.length && fields.hasNext()) {
+        var field = fields.next();
+        if (!keys[column].equals(field.getKey())) {
+          break;
+        }
+        generator.writeTree(field.getValue());
+        column++;
+      }
+      for (; column < keys.length; column++) {
+        var value = record.get(keys[column]);
+        if (value == null) {
+          generator.writeNull();
+        } else {
+          generator.writeTree(value);
+        }
+      }
+      generator.writeEndArray();
+    }
+
+    @Override
+    public void acceptDocument(JsonNode document) throws IOException {
+      generator.writeTree(document);
+      single = true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      try (generator) {
+        if (single) {
+          return;
+        }
+        if (keys == null) {
+          keys = new String[0];
+          startValues();
+        }
+        generator.writeEndArray();
+        generator.writeEndObject();
+      }
+    }
+
+    private void startValues() throws IOException {
+      generator.writeStartObject();
+      generator.writeArrayFieldStart("keys");
+      for (var key : keys) {
+        generator.writeString(key);
+      }
+      generator.writeEndArray();
+      generator.writeArrayFieldStart("values");
+      for (; keylessRecords > 0; keylessRecords--) {
+        generator.writeStartArray();
+        generator.writeEndArray();
       }
     }
   }
@@ -286,15 +1156,435 @@ static JsonNode deduplicateKeys(JsonNode original) {
     return original;
   }
 
-  // TODO Just a dummy implementation for now. Consider using java.nio.
+  /**
+   * Reverses {@link #deduplicateKeys(JsonNode)} while parsing, emitting a record for every array of
+   * values as soon as it is read. Keys have to come before values, as they are written.
+   */
+  private static void readExpandedKeys(JsonParser parser, RecordSink sink) throws IOException {
+    try (parser) {
+      checkExpandable(parser.nextToken() == START_OBJECT
+          && "keys".equals(parser.nextFieldName())
+          && parser.nextToken() == START_ARRAY);
+      var keys = new ArrayList<String>();
+      while (parser.nextToken() != END_ARRAY) {
+        checkExpandable(parser.currentToken() == VALUE_STRING);
+        keys.add(parser.getText());
+      }
+      checkExpandable("values".equals(parser.nextFieldName()) && parser.nextToken() == START_ARRAY);
+
+      var factory = JsonNodeFactory.instance;
+      while (parser.nextToken() == START_ARRAY) {
+        var record = factory.objectNode();
+        for (var column = 0; parser.nextToken() != END_ARRAY; column++) {
+          checkExpandable(column < keys.size());
+          record.set(keys.get(column), parser.readValueAsTree());
+        }
+        sink.accept(record);
+      }
+      checkExpandable(parser.currentToken() == END_ARRAY && parser.nextToken() == END_OBJECT);
+    }
+  }
+
+  /** Reverses {@link #deduplicateKeys(JsonNode)} for inputs which can only be read as a tree. */
+  private static void expandKeys(JsonNode document, RecordSink sink) throws IOException {
+    var keys = document.path("keys");
+    var values = document.path("values");
+    checkExpandable(
+        document.isObject() && document.size() == 2 && keys.isArray() && values.isArray());
+    for (var key : keys) {
+      checkExpandable(key.isTextual());
+    }
+
+    var factory = JsonNodeFactory.instance;
+    for (var row : values) {
+      checkExpandable(row.isArray() && row.size() <= keys.size());
+      var record = factory.objectNode();
+      for (var column = 0; column < row.size(); column++) {
+        record.set(keys.get(column).asText(), row.get(column));
+      }
+      sink.accept(record);
+    }
+  }
+
+  private static void checkExpandable(boolean expression) {
+    checkArgument(expression, "Input is not in the layout of deduplicated keys!");
+  }
+
   static void convert(File input, File output, ConversionOptions options) throws IOException {
+    convert(input, output, options, new ConversionStats());
+  }
+
+  /**
+   * Converts a file into another, adding the measures of the conversion to the given stats, which
+   * are also recorded as a {@link ConversionEvent}.
+   */
+  static void convert(File input, File output, ConversionOptions options, ConversionStats stats)
+      throws IOException {
+    requireNonNull(input);
+    requireNonNull(output);
+    convert(
+        input,
+        fromFileExtension(Compression.fileExtension(input.getName())),
+        output,
+        fromFileExtension(Compression.fileExtension(output.getName())),
+        options,
+        stats,
+        StandardStreams.SYSTEM);
+  }
+
+  /**
+   * Converts an input of one file type into an output of another, where either may be named
+   * {@value StandardStreams#NAME} for the given standard stream. Standard input is decompressed if
+   * it starts with the magic bytes of a compression, and standard streams are streamed through
+   * buffers of {@link ConversionOptions#bufferSize()}, so that a conversion can sit in a pipeline
+   * without going through the disk. Standard output is flushed but left open.
+   */
+  static void convert(
+      File input,
+      FileType from,
+      File output,
+      FileType to,
+      ConversionOptions options,
+      ConversionStats stats,
+      StandardStreams standardStreams)
+      throws IOException {
     requireNonNull(input);
     requireNonNull(output);
+    var readsStandardInput = StandardStreams.isStandardStream(input);
+    var writesStandardOutput = StandardStreams.isStandardStream(output);
+
+    var event = new ConversionEvent();
+    event.begin();
+    if (event.isEnabled()) {
+      stats.timeRecords();
+    }
+    event.input = input.getPath();
+    event.output = output.getPath();
+
+    var fileOptions = options;
+    if (!readsStandardInput
+        && (to == FileType.CSV || to == FileType.TSV)
+        && infersCsvHeaderFromAll(options)
+        && !options.deduplicateKeys()) {
+      // The header is inferred in a first pass over the input, so that the second one can stream
+      // every record straight through. Standard input is spooled for it when it is converted.
+      var started = System.nanoTime();
+      var inference = new CsvSchemaInference();
+      readRecords(input, from, options, inference);
+      fileOptions = options.withCsvSchema(inference.schema());
+      stats.addReadNanos(System.nanoTime() - started);
+    }
+
+    // Standard streams are counted as they go, since they have no length to look up afterwards.
+    var standardInput = new CountingInputStream(standardStreams.in());
+    var standardOutput = writesStandardOutput
+        ? new CountingOutputStream(
+            NioFiles.newStandardOutputStream(standardStreams.out(), options.bufferSize()))
+        : null;
+    try (var out = writesStandardOutput ? standardOutput : newOutputStream(output, options)) {
+      var chunkedReader = readsStandardInput
+          ? Optional.<ChunkedRecordReader>empty()
+          : chunkedReader(input, from, options);
+      if (chunkedReader.isPresent()) {
+        convert(
+            transformed(sink -> chunkedReader.get().read(input, sink), options),
+            out,
+            to,
+            fileOptions,
+            stats);
+      } else {
+        try (var in = readsStandardInput
+            ? Compression.decompressing(standardInput, options.bufferSize())
+            : newInputStream(input, options)) {
+          convert(in, from, out, to, fileOptions, stats);
+        }
+      }
+    }
+    stats.addBytes(
+        readsStandardInput ? standardInput.getCount() : input.length(),
+        standardOutput != null ? standardOutput.getCount() : output.length());
+    event.commit(stats);
+  }
+
+  private static Optional<ChunkedRecordReader> chunkedReader(
+      File input, FileType from, ConversionOptions options) throws IOException {
+    var chunkedReader = from.chunkedReader(options)
+        .filter(reader -> !options.expandKeys() && reader.isWorthSplitting(input));
+    // Compressed files can not be split at record boundaries without inflating them first. Only
+    // large regular files are worth splitting, so nothing else is opened here to be detected.
+    if (chunkedReader.isEmpty() || Compression.of(input.toPath()) != Compression.NONE) {
+      return Optional.empty();
+    }
+    var typedCsv = options.readsTypedCsv() && (from == FileType.CSV || from == FileType.TSV);
+    if (!typedCsv) {
+      return chunkedReader;
+    }
+    var separator = from == FileType.TSV ? HORIZONTAL_TABULATION : options.csvSeparator();
+    return from.chunkedReader(withCsvColumnTypes(input, separator, options));
+  }
 
-    var reader = fromFileExtension(getFileExtension(input.getName())).reader(options);
-    var writer = fromFileExtension(getFileExtension(output.getName())).writer(options);
+  /** Pushes every record of an input file into a sink. */
+  private static void readRecords(
+      File input, FileType from, ConversionOptions options, RecordSink sink) throws IOException {
+    var chunkedReader = chunkedReader(input, from, options);
+    if (chunkedReader.isPresent()) {
+      transformed(records -> chunkedReader.get().read(input, records), options).forEach(sink);
+      return;
+    }
+    try (var in = newInputStream(input, options)) {
+      records(in, from, options).forEach(sink);
+    }
+  }
 
-    var data = reader.read(input);
-    writer.write(output, options.deduplicateKeys() ? deduplicateKeys(data) : data);
+  /** Opens an input file, decompressing it if it is compressed. */
+  private static InputStream newInputStream(File input, ConversionOptions options)
+      throws IOException {
+    var in = NioFiles.newInputStream(input.toPath(), options.bufferSize());
+    try {
+      return Compression.decompressing(in, input.getName(), options.bufferSize());
+    } catch (IOException | RuntimeException e) {
+      in.close();
+      throw e;
+    }
+  }
+
+  /** Opens an output file, compressing it if its name ends with a compression extension. */
+  private static OutputStream newOutputStream(File output, ConversionOptions options)
+      throws IOException {
+    var out = NioFiles.newOutputStream(output.toPath(), options.bufferSize());
+    try {
+      return Compression.fromFileName(output.getName()).compress(out);
+    } catch (IOException | RuntimeException e) {
+      out.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Returns the records of an input as they are read. File types without a record reader are read
+   * as a tree first. Records are projected, or else flattened, straight from the tokens of file
+   * types with a token reader, so that values that are not kept are never built.
+   */
+  private static RecordSource records(InputStream in, FileType from, ConversionOptions options) {
+    var tokenReader = from.tokenReader(options);
+    if (options.expandKeys()) {
+      return transformed(
+          tokenReader.isPresent()
+              ? sink -> readExpandedKeys(tokenReader.get().open(in), sink)
+              : sink -> expandKeys(from.reader(options).read(in), sink),
+          options);
+    }
+    var projection = options.projection();
+    if (projection.isPresent() && tokenReader.isPresent()) {
+      return reshaped(sink -> projection.get().read(tokenReader.get().open(in), sink), options);
+    }
+    if (options.flatten() && tokenReader.isPresent()) {
+      return sink -> new RecordFlattener().read(tokenReader.get().open(in), sink);
+    }
+    var recordReader = from.recordReader(options);
+    return transformed(
+        recordReader.isPresent()
+            ? sink -> recordReader.get().read(in, sink)
+            : sink -> forEachRecord(from.reader(options).read(in), sink),
+        options);
+  }
+
+  /**
+   * Returns the records of a source projected, then flattened or unflattened, as the options ask
+   * for. Paths and predicates name values of the records as they are read.
+   */
+  private static RecordSource transformed(RecordSource records, ConversionOptions options) {
+    var projection = options.projection();
+    return reshaped(
+        projection.isPresent()
+            ? sink -> records.forEach(projection.get().projecting(sink))
+            : records,
+        options);
+  }
+
+  /** Returns the records of a source flattened or unflattened, as the options ask for. */
+  private static RecordSource reshaped(RecordSource records, ConversionOptions options) {
+    if (options.flatten()) {
+      return sink -> records.forEach(new RecordFlattener().flattening(sink));
+    }
+    if (options.unflatten()) {
+      return sink -> records.forEach(new RecordFlattener().unflattening(sink));
+    }
+    return records;
+  }
+
+  /**
+   * Converts a stream of one file type into another. Depending on the file types, either stream may
+   * have been closed by the time this returns.
+   */
+  static void convert(
+      InputStream in, FileType from, OutputStream out, FileType to, ConversionOptions options)
+      throws IOException {
+    convert(in, from, out, to, options, new ConversionStats());
+  }
+
+  private static void convert(
+      InputStream in,
+      FileType from,
+      OutputStream out,
+      FileType to,
+      ConversionOptions options,
+      ConversionStats stats)
+      throws IOException {
+    if ((to == FileType.CSV || to == FileType.TSV)
+        && infersCsvHeaderFromAll(options)
+        && !options.deduplicateKeys()) {
+      convertSpooled(in, from, out, to, options, stats);
+      return;
+    }
+
+    // Prefer copying tokens straight from parser to generator, then streaming records one at a
+    // time, so that large inputs never have to be held in memory as a single tree.
+    if (copiesTokens(from, to, options)) {
+      var started = System.nanoTime();
+      try (var parser = from.tokenReader(options).orElseThrow().open(in);
+          var generator = to.tokenWriter(options).orElseThrow().open(out)) {
+        stats.addRecords(copyTokens(parser, generator));
+      }
+      stats.addWriteNanos(System.nanoTime() - started);
+      return;
+    }
+
+    var streamsRecords =
+        from.recordReader(options).isPresent() && recordWriter(to, options).isPresent();
+    if (options.expandKeys() || options.transformsRecords() || streamsRecords) {
+      convert(records(in, from, options), out, to, options, stats);
+      return;
+    }
+
+    var started = System.nanoTime();
+    var data = from.reader(options).read(in);
+    stats.addReadNanos(System.nanoTime() - started);
+    writeTree(data, out, to, options, stats);
+  }
+
+  /**
+   * Converts a stream into CSV with a header inferred from every record. A stream can only be read
+   * once, so it is spooled to a temporary file that the header is inferred from in a first pass,
+   * rather than holding every record in memory until the last one is read.
+   */
+  private static void convertSpooled(
+      InputStream in,
+      FileType from,
+      OutputStream out,
+      FileType to,
+      ConversionOptions options,
+      ConversionStats stats)
+      throws IOException {
+    var spool = Files.createTempFile("convert", ".spool");
+    try {
+      var started = System.nanoTime();
+      try (var spoolOut = NioFiles.newOutputStream(spool, options.bufferSize())) {
+        in.transferTo(spoolOut);
+      }
+      var inference = new CsvSchemaInference();
+      try (var spooled = NioFiles.newInputStream(spool, options.bufferSize())) {
+        records(spooled, from, options).forEach(inference);
+      }
+      stats.addReadNanos(System.nanoTime() - started);
+      try (var spooled = NioFiles.newInputStream(spool, options.bufferSize())) {
+        convert(spooled, from, out, to, options.withCsvSchema(inference.schema()), stats);
+      }
+    } finally {
+      Files.deleteIfExists(spool);
+    }
+  }
+
+  private static void convert(
+      RecordSource records,
+      OutputStream out,
+      FileType to,
+      ConversionOptions options,
+      ConversionStats stats)
+      throws IOException {
+    var started = System.nanoTime();
+    var recordWriter = recordWriter(to, options);
+    if (recordWriter.isPresent()) {
+      var sink = new MeasuringSink(recordWriter.get().open(out), stats);
+      try (sink) {
+        records.forEach(sink);
+      }
+      stats.addRecords(sink.records);
+      // Whatever time was not spent in writing records went into reading them.
+      stats.addReadNanos(System.nanoTime() - started - sink.writeNanos);
+      stats.addWriteNanos(sink.writeNanos);
+      return;
+    }
+
+    var tree = new TreeSink();
+    records.forEach(tree);
+    stats.addReadNanos(System.nanoTime() - started);
+    writeTree(tree.result(), out, to, options, stats);
+  }
+
+  private static void writeTree(
+      JsonNode data,
+      OutputStream out,
+      FileType to,
+      ConversionOptions options,
+      ConversionStats stats)
+      throws IOException {
+    var started = System.nanoTime();
+    var transformed = options.deduplicateKeys() ? deduplicateKeys(data) : data;
+    var transformedAt = System.nanoTime();
+    to.writer(options).write(out, transformed);
+    stats.addTransformNanos(transformedAt - started);
+    stats.addWriteNanos(System.nanoTime() - transformedAt);
+    stats.addRecords(data.isArray() ? data.size() : 1);
+  }
+
+  /**
+   * Returns whether a conversion copies tokens straight from a parser to a generator, which it does
+   * when both file types have one and records are written just as they are read.
+   */
+  static boolean copiesTokens(FileType from, FileType to, ConversionOptions options) {
+    return !options.deduplicateKeys()
+        && !options.expandKeys()
+        && !options.transformsRecords()
+        && from.tokenReader(options).isPresent()
+        && to.tokenWriter(options).isPresent();
+  }
+
+  /**
+   * Copies the first value of a parser into a generator, returning the number of records in it.
+   * The elements of an array are copied one by one, so that they can be counted as records.
+   */
+  private static long copyTokens(JsonParser parser, JsonGenerator generator) throws IOException {
+    var token = parser.nextToken();
+    if (token == null) {
+      return 0;
+    }
+    if (token != START_ARRAY) {
+      generator.copyCurrentStructure(parser);
+      return 1;
+    }
+    generator.writeStartArray();
+    var records = 0L;
+    for (token = parser.nextToken();
+        token != END_ARRAY && token != null;
+        token = parser.nextToken()) {
+      generator.copyCurrentStructure(parser);
+      records++;
+    }
+    generator.writeEndArray();
+    return records;
+  }
+
+  /**
+   * Returns a writer that accepts records one at a time for the given options, if the target file
+   * type supports it. Deduplicated keys are streamed through a token writer, since their layout
+   * differs from the records read.
+   */
+  private static Optional<RecordWriter> recordWriter(FileType to, ConversionOptions options) {
+    if (options.deduplicateKeys()) {
+      return to.tokenWriter(options)
+          .map(tokenWriter -> out -> new DeduplicatingSink(tokenWriter.open(out)));
+    }
+    return to.recordWriter(options);
   }
 }
@@ -3,22 +3,36 @@
 import static dev.gokhun.convert.ConversionUtil.convert;
 import static java.nio.charset.StandardCharsets.UTF_8;
 import static picocli.CommandLine.ExitCode.OK;
+import static picocli.CommandLine.ExitCode.SOFTWARE;
 import static picocli.CommandLine.Help.Ansi.ON;
 import static picocli.CommandLine.Help.defaultColorScheme;
 
+import com.google.common.collect.ImmutableList;
 import dev.gokhun.convert.ConversionUtil.ConversionOptions;
+import dev.gokhun.convert.ConversionUtil.FileType;
+import dev.gokhun.convert.ConversionUtil.StandardStreams;
 import java.io.BufferedWriter;
 import java.io.File;
 import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
 import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
 import picocli.CommandLine;
 import picocli.CommandLine.Command;
 import picocli.CommandLine.Help.ColorScheme;
 import picocli.CommandLine.IExecutionExceptionHandler;
+import picocli.CommandLine.Model.CommandSpec;
 import picocli.CommandLine.Option;
+import picocli.CommandLine.ParameterException;
 import picocli.CommandLine.ParseResult;
+import picocli.CommandLine.Spec;
 
 @Command(
     mixinStandardHelpOptions = true,
@@ -26,30 +40,31 @@
     description = "Converts one file type to another.",
     sortOptions = false,
     usageHelpWidth = 120,
-    versionProvider = VersionProvider.class)
+    versionProvider = VersionProvider.class,
+    subcommands = Convert.Serve.class)
 public final class Convert implements Callable<Integer> {
   private static final SystemManager SYSTEM_MANAGER = new DefaultSystemManager();
   private static final ColorScheme COLOR_SCHEME = defaultColorScheme(ON);
   private static final IExecutionExceptionHandler EXCEPTION_HANDLER =
       new ExecutionExceptionHandler();
+  // Built once per process, or once at build time in the startup profile of the native image, so
+  // that the command model is not derived from its annotations again on every run.
   private static final CommandLine CMD = new CommandLine(new Convert())
-      .setOut(SYSTEM_MANAGER.getOut())
-      .setErr(SYSTEM_MANAGER.getErr())
       .setExecutionExceptionHandler(EXCEPTION_HANDLER)
       .setColorScheme(COLOR_SCHEME);
 
   @Option(
       names = {"--from", "--input", "-f", "-i"},
-      required = true,
       order = 1,
-      description = "File to convert from.")
+      description = "File to convert from, or '-' for the standard input. Gzip, Zstandard and LZ4"
+          + " input is decompressed, whether named *.gz, *.zst or *.lz4 or not.")
   File input;
 
   @Option(
       names = {"--output", "--to", "-o", "-t"},
-      required = true,
       order = 2,
-      description = "File to convert into.")
+      description = "File to convert into, or '-' for the standard output. Output named *.gz,"
+          + " *.zst or *.lz4 is compressed by gzip, Zstandard or LZ4.")
   File output;
 
   @Option(
@@ -88,27 +103,417 @@ public final class Convert implements Callable<Integer> {
           + " is array. Keys are arrays and values are arrays of arrays.")
   boolean deduplicateKeys;
 
+  @Option(
+      names = "--from-type",
+      order = 8,
+      description = "File type to convert from, e.g. json, instead of the one of the input file."
+          + " Required when input is '-' for the standard input.")
+  String fromType;
+
+  @Option(
+      names = "--to-type",
+      order = 9,
+      description = "File type to convert into, e.g. json, instead of the one of the output file."
+          + " Required when output is '-' for the standard output, and in batch mode, which is"
+          + " used when input is a directory, a glob pattern or a manifest.")
+  String toType;
+
+  @Option(
+      names = "--manifest",
+      order = 10,
+      defaultValue = "false",
+      description = "Treat input as a manifest that lists one file to convert per line.")
+  boolean manifest;
+
+  @Option(
+      names = "--parallelism",
+      order = 11,
+      defaultValue = "0",
+      description = "Maximum number of files to convert at once in batch mode. Default is one"
+          + " virtual thread per file.")
+  int parallelism;
+
+  @Option(
+      names = "--parallel",
+      order = 12,
+      defaultValue = "false",
+      description =
+          "Parse large CSV, TSV and NDJSON inputs in chunks on all cores. Default is false.")
+  boolean parallel;
+
+  @Option(
+      names = "--buffer-size",
+      order = 13,
+      defaultValue = "65536",
+      description = "Size of file I/O buffers in bytes. Default is 65536.")
+  int bufferSize;
+
+  @Option(
+      names = "--yaml-documents",
+      order = 14,
+      defaultValue = "false",
+      description = "Write YAML output as a stream of documents, one per record, instead of a"
+          + " single array. Default is false.")
+  boolean yamlDocuments;
+
+  @Option(
+      names = "--expand-keys",
+      order = 15,
+      defaultValue = "false",
+      description = "Read input written with --deduplicate-keys back into one record per array of"
+          + " values. Default is false.")
+  boolean expandKeys;
+
+  @Option(
+      names = "--csv-header-sample",
+      order = 16,
+      defaultValue = "1",
+      description =
+          "Number of records whose fields make up the CSV header. Zero takes the fields of"
+              + " all records, scanning the input once before converting it. Standard input is"
+              + " spooled to a temporary file for that. Default is 1.")
+  int csvHeaderSample;
+
+  @Option(
+      names = "--typed-csv",
+      order = 17,
+      defaultValue = "false",
+      description = "Read CSV and TSV cells as numbers, booleans and nulls where their column"
+          + " allows it, instead of as text. Default is false.")
+  boolean typedCsv;
+
+  @Option(
+      names = "--csv-column-types",
+      order = 18,
+      split = ",",
+      paramLabel = "<column=type>",
+      description = "Types of CSV and TSV columns to read, one of string, number or boolean."
+          + " Other columns are typed after their first value. Implies --typed-csv.")
+  Map<String, String> csvColumnTypes = new LinkedHashMap<>();
+
+  @Option(
+      names = "--csv-always-quote",
+      order = 19,
+      defaultValue = "false",
+      description = "Quote every text cell and column name of CSV and TSV output, instead of only"
+          + " those that need quotes. Default is false.")
+  boolean csvAlwaysQuote;
+
+  @Option(
+      names = "--stats",
+      order = 20,
+      arity = "0..1",
+      fallbackValue = "text",
+      paramLabel = "<format>",
+      description = "Print where the time of the conversion went, bytes and records converted,"
+          + " peak heap and GC time to the standard error, as text or json.")
+  String stats;
+
+  @Option(
+      names = "--watch",
+      order = 21,
+      defaultValue = "false",
+      description = "Keep converting the input whenever it changes, until interrupted. Only files"
+          + " whose content changed since they were last converted are converted again, also"
+          + " across restarts. Default is false.")
+  boolean watch;
+
+  @Option(
+      names = "--cache-dir",
+      order = 22,
+      description = "Directory to cache outputs in, keyed by the content of the input, the file"
+          + " types and the options. Converting the same input the same way again copies the"
+          + " cached output instead. Standard streams are not cached.")
+  File cacheDirectory;
+
+  @Option(
+      names = "--cache-size",
+      order = 23,
+      defaultValue = "1073741824",
+      description = "Maximum size of the cache in bytes, beyond which the least recently used"
+          + " outputs are evicted. Default is 1073741824.")
+  long cacheSize;
+
+  @Option(
+      names = "--flatten",
+      order = 24,
+      defaultValue = "false",
+      description = "Flatten nested records into columns named by their path, such as user.name and"
+          + " tags[0], so that they can be written as CSV. Default is false.")
+  boolean flatten;
+
+  @Option(
+      names = "--unflatten",
+      order = 25,
+      defaultValue = "false",
+      description = "Nest columns named by their path, as written with --flatten, back into objects"
+          + " and arrays. Default is false.")
+  boolean unflatten;
+
+  @Option(
+      names = "--select",
+      order = 26,
+      split = ",",
+      paramLabel = "<path>",
+      description = "Values to keep of every record, as JSON Pointers such as /user/name or as"
+          + " column names. Values that are not kept are skipped while reading JSON, without"
+          + " being built.")
+  List<String> select = new ArrayList<>();
+
+  @Option(
+      names = "--where",
+      order = 27,
+      paramLabel = "<predicate>",
+      description = "Keep only records whose value, named as in --select, compares to a literal"
+          + " with =, !=, <, <=, > or >=, such as age>=18. May be repeated, all must match.")
+  List<String> where = new ArrayList<>();
+
+  @Spec
+  CommandSpec spec;
+
+  // Looked up on use, since the standard streams of a native image only exist at run time.
+  private final Supplier<StandardStreams> standardStreams;
+
+  public Convert() {
+    this.standardStreams = () -> StandardStreams.SYSTEM;
+  }
+
+  Convert(StandardStreams standardStreams) {
+    this.standardStreams = () -> standardStreams;
+  }
+
   @Override
   public Integer call() {
+    checkRequiredOptions();
+    var options = ConversionOptions.builder()
+        .setCsvSeparator(csvSeparator)
+        .setPretty(pretty)
+        .setIndentYaml(indentYaml)
+        .setMinimizeYamlQuotes(minimizeYamlQuotes)
+        .setDeduplicateKeys(deduplicateKeys)
+        .setParallel(parallel)
+        .setBufferSize(bufferSize)
+        .setYamlDocuments(yamlDocuments)
+        .setExpandKeys(expandKeys)
+        .setCsvHeaderSample(csvHeaderSample)
+        .setTypedCsv(typedCsv)
+        .setCsvColumnTypes(TypedCsvColumns.columnTypes(csvColumnTypes))
+        .setCsvAlwaysQuote(csvAlwaysQuote)
+        .setFlatten(flatten)
+        .setUnflatten(unflatten)
+        .setSelect(select)
+        .setWhere(where)
+        .build();
+    var statsFormat = statsFormat();
+    var conversionStats =
+        statsFormat.isPresent() ? ConversionStats.reporting() : new ConversionStats();
+    int status;
     try {
-      convert(
-          input,
-          output,
-          ConversionOptions.builder()
-              .setCsvSeparator(csvSeparator)
-              .setPretty(pretty)
-              .setIndentYaml(indentYaml)
-              .setMinimizeYamlQuotes(minimizeYamlQuotes)
-              .setDeduplicateKeys(deduplicateKeys)
-              .build());
+      var cache = cacheDirectory == null
+          ? ConversionCache.disabled()
+          : ConversionCache.open(cacheDirectory.toPath(), cacheSize);
+      if (watch) {
+        status = watch(options, conversionStats, cache);
+      } else if (!StandardStreams.isStandardStream(input)
+          && BatchConversion.isBatch(input, manifest)) {
+        status = convertBatch(options, conversionStats, cache);
+      } else {
+        var from = fileType(input, fromType, "--from-type=<fromType>");
+        var to = fileType(output, toType, "--to-type=<toType>");
+        cache.convert(
+            input,
+            from,
+            output,
+            to,
+            options,
+            conversionStats,
+            () ->
+                convert(input, from, output, to, options, conversionStats, standardStreams.get()));
+        if (!StandardStreams.isStandardStream(output)) {
+          printCacheCounts(cache);
+        }
+        status = OK;
+      }
     } catch (IllegalArgumentException | IOException e) {
       throw new ConvertAppException(e);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new ConvertAppException(e);
+    }
+    if (statsFormat.isPresent()) {
+      var err = spec.commandLine().getErr();
+      err.println(conversionStats.format(statsFormat.get()));
+      err.flush();
+    }
+    return status;
+  }
+
+  private Optional<ConversionStats.Format> statsFormat() {
+    try {
+      return Optional.ofNullable(stats).map(ConversionStats.Format::of);
+    } catch (IllegalArgumentException e) {
+      throw new ParameterException(spec.commandLine(), e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Checks the options that are required for a conversion. They can not be declared as required,
+   * since picocli would then demand them for subcommands as well.
+   */
+  private void checkRequiredOptions() {
+    var missing = new ArrayList<String>();
+    if (input == null) {
+      missing.add("'--input=<input>'");
+    }
+    if (output == null) {
+      missing.add("'--output=<output>'");
+    }
+    if (!missing.isEmpty()) {
+      throw new ParameterException(
+          spec.commandLine(),
+          "Missing required option%s: %s"
+              .formatted(missing.size() == 1 ? "" : "s", String.join(", ", missing)));
+    }
+  }
+
+  /**
+   * Returns the given file type, or else the one of the file name. Standard streams have no name to
+   * tell it from, so that it must be given for them.
+   */
+  private FileType fileType(File file, String type, String option) {
+    if (type != null) {
+      return FileType.fromFileExtension(type);
+    }
+    if (StandardStreams.isStandardStream(file)) {
+      throw new ParameterException(
+          spec.commandLine(),
+          "Missing required option for '%s': '%s'".formatted(StandardStreams.NAME, option));
+    }
+    return FileType.fromFileExtension(Compression.fileExtension(file.getName()));
+  }
+
+  private int convertBatch(
+      ConversionOptions options, ConversionStats conversionStats, ConversionCache cache)
+      throws IOException, InterruptedException {
+    var status = printResults(BatchConversion.convert(
+        input, manifest, output, toType, options, parallelism, conversionStats, cache));
+    printCacheCounts(cache);
+    return status;
+  }
+
+  /** Converts the input whenever it changes, in rounds that are printed as batches are. */
+  private int watch(
+      ConversionOptions options, ConversionStats conversionStats, ConversionCache cache)
+      throws IOException, InterruptedException {
+    if (StandardStreams.isStandardStream(input) || StandardStreams.isStandardStream(output)) {
+      throw new ParameterException(spec.commandLine(), "Standard streams can not be watched!");
+    }
+    try (var watchConversion = BatchConversion.isBatch(input, manifest)
+        ? WatchConversion.batch(
+            input,
+            manifest,
+            output,
+            toType,
+            options,
+            parallelism,
+            conversionStats,
+            cache,
+            WatchConversion.DEBOUNCE)
+        : WatchConversion.file(
+            input, output, options, conversionStats, cache, WatchConversion.DEBOUNCE)) {
+      var out = spec.commandLine().getOut();
+      out.println("Watching %s for changes.".formatted(input));
+      out.flush();
+      while (!Thread.currentThread().isInterrupted()) {
+        var results = watchConversion.convertChanged();
+        if (!results.isEmpty()) {
+          printResults(results);
+          printCacheCounts(cache);
+        }
+        watchConversion.awaitChanges();
+      }
     }
     return OK;
   }
 
+  private int printResults(ImmutableList<BatchConversion.Result> results) {
+    var out = spec.commandLine().getOut();
+    var err = spec.commandLine().getErr();
+    var colorScheme = spec.commandLine().getColorScheme();
+    var failures = 0;
+    for (var result : results) {
+      if (result.succeeded()) {
+        out.println("%s -> %s".formatted(result.input(), result.output()));
+      } else {
+        failures++;
+        err.println(colorScheme.errorText(
+            "%s: %s".formatted(result.input(), result.error().orElseThrow())));
+      }
+    }
+    out.println("Converted %d file(s), %d failed.".formatted(results.size() - failures, failures));
+    out.flush();
+    err.flush();
+    return failures == 0 ? OK : SOFTWARE;
+  }
+
+  /** Prints how many outputs were copied from the cache and how many had to be converted. */
+  private void printCacheCounts(ConversionCache cache) {
+    if (cache.isEnabled()) {
+      var out = spec.commandLine().getOut();
+      out.println("Cache: %d hit(s), %d miss(es).".formatted(cache.hits(), cache.misses()));
+      out.flush();
+    }
+  }
+
   public static void main(String... args) {
-    SYSTEM_MANAGER.exit(CMD.execute(args));
+    SYSTEM_MANAGER.exit(
+        CMD.setOut(SYSTEM_MANAGER.getOut()).setErr(SYSTEM_MANAGER.getErr()).execute(args));
+  }
+
+  @Command(
+      name = "serve",
+      mixinStandardHelpOptions = true,
+      description = "Serves conversions over HTTP on the loopback interface, from a single warmed"
+          + " up process. Input is posted to /convert?from=<type>&to=<type>, options are given as"
+          + " further query parameters, e.g. pretty=true.",
+      sortOptions = false,
+      usageHelpWidth = 120,
+      versionProvider = VersionProvider.class)
+  static final class Serve implements Callable<Integer> {
+    @Option(
+        names = {"--port", "-p"},
+        order = 1,
+        defaultValue = "8484",
+        description = "Port to listen on. Default is 8484, zero picks a free port.")
+    int port;
+
+    @Option(
+        names = "--max-request-size",
+        order = 2,
+        defaultValue = "67108864",
+        description = "Largest request body accepted, in bytes. Default is 67108864.")
+    long maxRequestSize;
+
+    @Spec
+    CommandSpec spec;
+
+    @Override
+    public Integer call() {
+      try (var server = ConversionServer.start(port, maxRequestSize)) {
+        var out = spec.commandLine().getOut();
+        out.println("Listening on %s".formatted(server.uri()));
+        out.flush();
+        var stopped = new CountDownLatch(1);
+        Runtime.getRuntime().addShutdownHook(new Thread(stopped::countDown));
+        stopped.await();
+      } catch (IOException e) {
+        throw new ConvertAppException(e);
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new ConvertAppException(e);
+      }
+      return OK;
+    }
   }
 
   interface SystemManager {
@@ -119,25 +524,39 @@ interface SystemManager {
     void exit(int status);
   }
 
+  /**
+   * Writes to the standard streams of the process. Writers are created on first use, so that an
+   * instance built into a native image at build time does not hold on to the streams of the build.
+   */
   static final class DefaultSystemManager implements SystemManager {
-    private final PrintWriter out =
-        new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, UTF_8)));
-
-    private final PrintWriter err =
-        new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.err, UTF_8)));
+    private PrintWriter out;
+    private PrintWriter err;
 
     @Override
     public PrintWriter getOut() {
+      if (out == null) {
+        out = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.out, UTF_8)));
+      }
       return out;
     }
 
     @Override
     public PrintWriter getErr() {
+      if (err == null) {
+        err = new PrintWriter(new BufferedWriter(new OutputStreamWriter(System.err, UTF_8)));
+      }
       return err;
     }
 
+    /** Flushes whatever is left buffered before exiting, which would be lost otherwise. */
     @Override
     public void exit(int status) {
+      if (out != null) {
+        out.flush();
+      }
+      if (err != null) {
+        err.flush();
+      }
       System.exit(status);
     }
   }
@@ -147,7 +566,9 @@ static final class ExecutionExceptionHandler implements IExecutionExceptionHandl
     @Override
     public int handleExecutionException(
         Exception ex, CommandLine commandLine, ParseResult parseResult) {
-      commandLine.getErr().println(commandLine.getColorScheme().errorText(ex.getMessage()));
+      var err = commandLine.getErr();
+      err.println(commandLine.getColorScheme().errorText(ex.getMessage()));
+      err.flush();
       return commandLine.getExitCodeExceptionMapper() != null
           ? commandLine.getExitCodeExceptionMapper().getExitCode(ex)
           : commandLine.getCommandSpec().exitCodeOnExecutionException();
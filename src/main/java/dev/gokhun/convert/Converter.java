@@ -0,0 +1,337 @@
+package dev.gokhun.convert;
+
+import static com.google.common.base.Preconditions.checkNotNull;
+import static dev.gokhun.convert.ConversionUtil.FileType.fromFileExtension;
+
+import dev.gokhun.convert.ConversionUtil.ConversionOptions;
+import dev.gokhun.convert.ConversionUtil.FileType;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Converts data held in memory or streamed from elsewhere, within the calling process.
+ *
+ * <p>File types are given by name, the same way as file extensions on the command line, e.g.
+ * {@code "json"} or {@code "yml"}. A converter is immutable and safe to share between threads, so
+ * a single instance can serve any number of concurrent conversions:
+ *
+ * <pre>{@code
+ * var converter = Converter.builder().setPretty(true).build();
+ * byte[] json = converter.convert(yaml, "yaml", "json");
+ * }</pre>
+ *
+ * <p>Streams and channels passed in are never closed, they stay owned by the caller.
+ */
+public final class Converter {
+  private final ConversionOptions options;
+
+  private Converter(ConversionOptions options) {
+    this.options = options;
+  }
+
+  public static Builder builder() {
+    return new Builder();
+  }
+
+  /** Whether the given file type, e.g. {@code "json"}, is supported. */
+  public static boolean isSupported(String type) {
+    return FileType.isSupported(type);
+  }
+
+  /**
+   * Converts the input stream into the output stream, reading until the end of the input.
+   *
+   * @throws IllegalArgumentException if a file type is not supported
+   * @throws IOException if the input can not be read or the output can not be written
+   */
+  public void convert(InputStream in, String fromType, OutputStream out, String toType)
+      throws IOException {
+    checkNotNull(in);
+    checkNotNull(out);
+    var from = fromFileExtension(fromType);
+    var to = fromFileExtension(toType);
+    var shieldedOut = new NonClosingOutputStream(out);
+    ConversionUtil.convert(new NonClosingInputStream(in), from, shieldedOut, to, options);
+    shieldedOut.flush();
+  }
+
+  /**
+   * Converts the input channel into the output channel, reading until the end of the input.
+   *
+   * @throws IllegalArgumentException if a file type is not supported
+   * @throws IOException if the input can not be read or the output can not be written
+   */
+  public void convert(
+      ReadableByteChannel in, String fromType, WritableByteChannel out, String toType)
+      throws IOException {
+    checkNotNull(in);
+    checkNotNull(out);
+    var buffered = new BufferedOutputStream(Channels.newOutputStream(out), options.bufferSize());
+    convert(Channels.newInputStream(in), fromType, buffered, toType);
+    buffered.flush();
+  }
+
+  /**
+   * Converts the input bytes.
+   *
+   * @throws IllegalArgumentException if a file type is not supported
+   * @throws IOException if the input is malformed
+   */
+  public byte[] convert(byte[] input, String fromType, String toType) throws IOException {
+    var out = new ByteArrayOutputStream();
+    convert(new ByteArrayInputStream(input), fromType, out, toType);
+    return out.toByteArray();
+  }
+
+  /**
+   * Converts the remaining bytes of the input buffer, without changing its position. The returned
+   * buffer is backed by an array and positioned at its start.
+   *
+   * @throws IllegalArgumentException if a file type is not supported
+   * @throws IOException if the input is malformed
+   */
+  public ByteBuffer convert(ByteBuffer input, String fromType, String toType) throws IOException {
+    var out = new ByteBufferOutputStream();
+    convert(new ByteBufferInputStream(input.duplicate()), fromType, out, toType);
+    return out.toByteBuffer();
+  }
+
+  /** Builds converters. Defaults are the same as on the command line. */
+  public static final class Builder {
+    private final ConversionOptions.Builder options = ConversionOptions.builder()
+        .setCsvSeparator(',')
+        .setIndentYaml(true)
+        .setMinimizeYamlQuotes(true);
+
+    private Builder() {}
+
+    public Builder setCsvSeparator(char csvSeparator) {
+      options.setCsvSeparator(csvSeparator);
+      return this;
+    }
+
+    public Builder setPretty(boolean pretty) {
+      options.setPretty(pretty);
+      return this;
+    }
+
+    public Builder setIndentYaml(boolean indentYaml) {
+      options.setIndentYaml(indentYaml);
+      return this;
+    }
+
+    public Builder setMinimizeYamlQuotes(boolean minimizeYamlQuotes) {
+      options.setMinimizeYamlQuotes(minimizeYamlQuotes);
+      return this;
+    }
+
+    public Builder setDeduplicateKeys(boolean deduplicateKeys) {
+      options.setDeduplicateKeys(deduplicateKeys);
+      return this;
+    }
+
+    public Builder setYamlDocuments(boolean yamlDocuments) {
+      options.setYamlDocuments(yamlDocuments);
+      return this;
+    }
+
+    public Builder setExpandKeys(boolean expandKeys) {
+      options.setExpandKeys(expandKeys);
+      return this;
+    }
+
+    /**
+     * Sets the number of records whose fields make up the CSV header. Zero takes the fields of all
+     * records, for which the input is spooled to a temporary file and read twice.
+     */
+    public Builder setCsvHeaderSample(int csvHeaderSample) {
+      options.setCsvHeaderSample(csvHeaderSample);
+      return this;
+    }
+
+    /**
+     * Sets whether CSV and TSV cells are read as numbers, booleans and nulls where their column
+     * allows it. The type of each column is decided from its first value that is not empty.
+     */
+    public Builder setTypedCsv(boolean typedCsv) {
+      options.setTypedCsv(typedCsv);
+      return this;
+    }
+
+    /**
+     * Sets the types of CSV and TSV columns to read, by column name. Types are one of {@code
+     * string}, {@code number} or {@code boolean}. Setting any implies typed CSV reading.
+     *
+     * @throws IllegalArgumentException if a type is not supported
+     */
+    public Builder setCsvColumnTypes(Map<String, String> csvColumnTypes) {
+      options.setCsvColumnTypes(TypedCsvColumns.columnTypes(csvColumnTypes));
+      return this;
+    }
+
+    /**
+     * Sets whether every text cell and column name of CSV and TSV output is quoted, rather than
+     * only those that need quotes to read back the same.
+     */
+    public Builder setCsvAlwaysQuote(boolean csvAlwaysQuote) {
+      options.setCsvAlwaysQuote(csvAlwaysQuote);
+      return this;
+    }
+
+    /**
+     * Sets whether nested records are flattened into fields named by their path, such as {@code
+     * user.name} and {@code tags[0]}.
+     */
+    public Builder setFlatten(boolean flatten) {
+      options.setFlatten(flatten);
+      return this;
+    }
+
+    /** Sets whether fields named by their path are nested back into objects and arrays. */
+    public Builder setUnflatten(boolean unflatten) {
+      options.setUnflatten(unflatten);
+      return this;
+    }
+
+    /**
+     * Sets the values to keep of every record, as JSON Pointers such as {@code /user/name} or as
+     * field names. Values that are not kept are skipped while reading JSON, without being built.
+     *
+     * @throws IllegalArgumentException if a JSON Pointer is not valid
+     */
+    public Builder setSelect(List<String> select) {
+      options.setSelect(select);
+      return this;
+    }
+
+    /**
+     * Sets the predicates that every record has to match to be kept, such as {@code age>=18}.
+     * Values are named as for {@link #setSelect(List)} and compared to a literal with one of
+     * {@code =}, {@code !=}, {@code <}, {@code <=}, {@code >} or {@code >=}.
+     *
+     * @throws IllegalArgumentException if a predicate is not valid
+     */
+    public Builder setWhere(List<String> where) {
+      options.setWhere(where);
+      return this;
+    }
+
+    public Builder setBufferSize(int bufferSize) {
+      options.setBufferSize(bufferSize);
+      return this;
+    }
+
+    /**
+     * Builds a converter with the options set so far.
+     *
+     * @throws IllegalArgumentException if an option is not valid
+     */
+    public Converter build() {
+      return new Converter(options.build());
+    }
+  }
+
+  /** Keeps the caller's stream open when a reader closes its input. */
+  private static final class NonClosingInputStream extends InputStream {
+    private final InputStream in;
+
+    NonClosingInputStream(InputStream in) {
+      this.in = in;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return in.read();
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      return in.read(bytes, offset, length);
+    }
+
+    @Override
+    public int available() throws IOException {
+      return in.available();
+    }
+
+    @Override
+    public void close() {}
+  }
+
+  /** Keeps the caller's stream open when a writer closes its output, flushing it instead. */
+  private static final class NonClosingOutputStream extends OutputStream {
+    private final OutputStream out;
+
+    NonClosingOutputStream(OutputStream out) {
+      this.out = out;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      out.write(b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      out.write(bytes, offset, length);
+    }
+
+    @Override
+    public void flush() throws IOException {
+      out.flush();
+    }
+
+    @Override
+    public void close() throws IOException {
+      out.flush();
+    }
+  }
+
+  private static final class ByteBufferInputStream extends InputStream {
+    private final ByteBuffer buffer;
+
+    ByteBufferInputStream(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    @Override
+    public int read() {
+      return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) {
+      if (length == 0) {
+        return 0;
+      }
+      if (!buffer.hasRemaining()) {
+        return -1;
+      }
+      var count = Math.min(length, buffer.remaining());
+      buffer.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return buffer.remaining();
+    }
+  }
+
+  /** Hands out its buffer without copying it. */
+  private static final class ByteBufferOutputStream extends ByteArrayOutputStream {
+    ByteBuffer toByteBuffer() {
+      return ByteBuffer.wrap(buf, 0, count);
+    }
+  }
+}
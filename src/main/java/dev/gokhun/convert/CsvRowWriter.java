@@ -0,0 +1,281 @@
+package dev.gokhun.convert;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Iterators;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes flat records as CSV rows. Column names are resolved from the schema once, and every cell
+ * is encoded as UTF-8 straight into a byte buffer that is reused for all rows, so that writing a
+ * row allocates nothing but the text of fractional and big numbers. Cells are only quoted when
+ * they have to be: when they are empty strings, which would read back as nulls otherwise, contain
+ * the separator, a quote or a line break, or start or end with whitespace. Every text cell and
+ * column name may be quoted instead, as Jackson quotes strings when told to always quote them.
+ *
+ * <p>Binary values are written as base64 text and arrays of scalars as a single cell, their
+ * elements separated by the array element separator of the schema, as Jackson writes them.
+ * Objects, and arrays of anything but scalars, can not be written into a cell.
+ */
+final class CsvRowWriter implements Closeable {
+  private static final int BUFFER_SIZE = 16 << 10;
+  /** Longest UTF-8 encoding of a single code point. */
+  private static final int MAX_CHAR_BYTES = 4;
+  private static final byte QUOTE = '"';
+  private static final byte LINE_FEED = '\n';
+  private static final byte[] TRUE = {'t', 'r', 'u', 'e'};
+  private static final byte[] FALSE = {'f', 'a', 'l', 's', 'e'};
+  /** Most bytes a long is written with, 19 digits and a sign. */
+  private static final int MAX_LONG_BYTES = 20;
+
+  private final OutputStream out;
+  private final String[] columns;
+  private final char separator;
+  private final byte[] separatorBytes;
+  private final String arrayElementSeparator;
+  private final boolean alwaysQuote;
+  private final byte[] buffer = new byte[BUFFER_SIZE];
+  /** Cell of an array, joined before it is written, so that it is quoted as a whole. */
+  private final StringBuilder arrayCell = new StringBuilder();
+  private int position;
+
+  CsvRowWriter(OutputStream out, CsvSchema schema, char separator, boolean alwaysQuote) {
+    checkArgument(schema.size() > 0, "CSV output needs at least one column!");
+    this.out = out;
+    this.columns = new String[schema.size()];
+    for (var i = 0; i < columns.length; i++) {
+      columns[i] = schema.columnName(i);
+    }
+    this.separator = separator;
+    this.separatorBytes = String.valueOf(separator).getBytes(UTF_8);
+    this.arrayElementSeparator = schema.getArrayElementSeparator();
+    this.alwaysQuote = alwaysQuote;
+  }
+
+  /** Writes the column names as the header row. */
+  void writeHeader() throws IOException {
+    for (var i = 0; i < columns.length; i++) {
+      if (i > 0) {
+        writeSeparator();
+      }
+      writeText(columns[i]);
+    }
+    writeByte(LINE_FEED);
+  }
+
+  /**
+   * Writes a record as a row, its fields looked up by column name. Arrays are written as rows of
+   * their elements in order.
+   *
+   * @throws IllegalArgumentException if the record has a field that is not a column, or a value
+   *     which can not be written into a cell
+   */
+  void write(JsonNode record) throws IOException {
+    if (record.isArray()) {
+      for (var i = 0; i < record.size(); i++) {
+        if (i > 0) {
+          writeSeparator();
+        }
+        writeCell(i, record.get(i));
+      }
+      writeByte(LINE_FEED);
+      return;
+    }
+    checkArgument(record.isObject(), "CSV rows must be objects or arrays! [%s]", record);
+    var found = 0;
+    for (var i = 0; i < columns.length; i++) {
+      if (i > 0) {
+        writeSeparator();
+      }
+      var value = record.get(columns[i]);
+      if (value != null) {
+        found++;
+        writeCell(i, value);
+      }
+    }
+    writeByte(LINE_FEED);
+    if (found < record.size()) {
+      throw unrecognizedColumn(record);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    try (out) {
+      flushBuffer();
+    }
+  }
+
+  private void writeCell(int column, JsonNode value) throws IOException {
+    switch (value.getNodeType()) {
+      case STRING -> writeText(value.textValue());
+      case NUMBER -> {
+        if (value.isIntegralNumber() && value.canConvertToLong()) {
+          writeLong(value.longValue());
+        } else {
+          writeRaw(value.asText());
+        }
+      }
+      case BOOLEAN -> writeRaw(value.booleanValue() ? TRUE : FALSE);
+      // Base64 in the default variant of Jackson, which is what it writes binary values with.
+      case BINARY -> writeText(value.asText());
+      case NULL, MISSING -> {}
+      case ARRAY -> writeArray(column, value);
+      default -> throw notScalar(column);
+    }
+  }
+
+  private void writeArray(int column, JsonNode array) throws IOException {
+    arrayCell.setLength(0);
+    for (var i = 0; i < array.size(); i++) {
+      var element = array.get(i);
+      if (!element.isValueNode()) {
+        throw notScalar(column);
+      }
+      if (i > 0) {
+        arrayCell.append(arrayElementSeparator);
+      }
+      if (!element.isNull()) {
+        arrayCell.append(element.asText());
+      }
+    }
+    writeText(arrayCell);
+  }
+
+  /** Writes text, quoted if it has to be or if all text is. */
+  private void writeText(CharSequence text) throws IOException {
+    if (!alwaysQuote && !needsQuotes(text)) {
+      writeChars(text, false);
+      return;
+    }
+    writeByte(QUOTE);
+    writeChars(text, true);
+    writeByte(QUOTE);
+  }
+
+  private boolean needsQuotes(CharSequence text) {
+    var length = text.length();
+    if (length == 0 || text.charAt(0) <= ' ' || text.charAt(length - 1) <= ' ') {
+      return true;
+    }
+    for (var i = 0; i < length; i++) {
+      var c = text.charAt(i);
+      if (c == separator || c == QUOTE || c == '\r' || c == '\n') {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /** Encodes text as UTF-8, doubling quotes if it is quoted. */
+  private void writeChars(CharSequence text, boolean quoted) throws IOException {
+    var length = text.length();
+    for (var i = 0; i < length; i++) {
+      if (position > buffer.length - MAX_CHAR_BYTES) {
+        flushBuffer();
+      }
+      var c = text.charAt(i);
+      if (c < 0x80) {
+        if (quoted && c == QUOTE) {
+          buffer[position++] = QUOTE;
+        }
+        buffer[position++] = (byte) c;
+      } else if (c < 0x800) {
+        buffer[position++] = (byte) (0xC0 | (c >> 6));
+        buffer[position++] = (byte) (0x80 | (c & 0x3F));
+      } else if (Character.isHighSurrogate(c)
+          && i + 1 < length
+          && Character.isLowSurrogate(text.charAt(i + 1))) {
+        var codePoint = Character.toCodePoint(c, text.charAt(++i));
+        buffer[position++] = (byte) (0xF0 | (codePoint >> 18));
+        buffer[position++] = (byte) (0x80 | ((codePoint >> 12) & 0x3F));
+        buffer[position++] = (byte) (0x80 | ((codePoint >> 6) & 0x3F));
+        buffer[position++] = (byte) (0x80 | (codePoint & 0x3F));
+      } else if (Character.isSurrogate(c)) {
+        // An unpaired surrogate can not be encoded, so it is replaced as a String encoder would.
+        buffer[position++] = '?';
+      } else {
+        buffer[position++] = (byte) (0xE0 | (c >> 12));
+        buffer[position++] = (byte) (0x80 | ((c >> 6) & 0x3F));
+        buffer[position++] = (byte) (0x80 | (c & 0x3F));
+      }
+    }
+  }
+
+  /** Writes text that never needs quotes, such as the digits of a number. */
+  private void writeRaw(String text) throws IOException {
+    writeChars(text, false);
+  }
+
+  private void writeRaw(byte[] bytes) throws IOException {
+    if (position > buffer.length - bytes.length) {
+      flushBuffer();
+    }
+    System.arraycopy(bytes, 0, buffer, position, bytes.length);
+    position += bytes.length;
+  }
+
+  /** Writes the digits of a long, from the last one backwards, without building a String. */
+  private void writeLong(long value) throws IOException {
+    if (value == Long.MIN_VALUE) {
+      // Has no positive counterpart to write the digits of.
+      writeRaw(Long.toString(value));
+      return;
+    }
+    if (position > buffer.length - MAX_LONG_BYTES) {
+      flushBuffer();
+    }
+    if (value < 0) {
+      buffer[position++] = '-';
+    }
+    var remaining = Math.abs(value);
+    var end = position + digits(remaining);
+    for (var i = end - 1; i >= position; i--) {
+      buffer[i] = (byte) ('0' + remaining % 10);
+      remaining /= 10;
+    }
+    position = end;
+  }
+
+  private static int digits(long value) {
+    var digits = 1;
+    for (var limit = 10L; digits < 19 && value >= limit; limit *= 10) {
+      digits++;
+    }
+    return digits;
+  }
+
+  private void writeSeparator() throws IOException {
+    writeRaw(separatorBytes);
+  }
+
+  private void writeByte(byte b) throws IOException {
+    if (position == buffer.length) {
+      flushBuffer();
+    }
+    buffer[position++] = b;
+  }
+
+  private void flushBuffer() throws IOException {
+    out.write(buffer, 0, position);
+    position = 0;
+  }
+
+  private IllegalArgumentException notScalar(int column) {
+    return new IllegalArgumentException(
+        "CSV cells can only hold scalars and arrays of scalars! [%s]"
+            .formatted(column < columns.length ? columns[column] : column));
+  }
+
+  private IllegalArgumentException unrecognizedColumn(JsonNode record) {
+    var known = ImmutableSet.copyOf(columns);
+    return new IllegalArgumentException("Unrecognized CSV column! [%s]"
+        .formatted(Iterators.find(record.fieldNames(), name -> !known.contains(name))));
+  }
+}
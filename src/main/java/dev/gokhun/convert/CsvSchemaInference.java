@@ -0,0 +1,30 @@
+package dev.gokhun.convert;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import dev.gokhun.convert.ConversionUtil.RecordSink;
+import java.util.LinkedHashSet;
+import java.util.Set;
+
+/**
+ * Infers a CSV schema from records. Columns are the union of the fields of every record, in the
+ * order they are first seen. Only names are inferred, as rows are written from the text of their
+ * values whatever their type. Records are not kept, so any number of them can be inferred from.
+ */
+final class CsvSchemaInference implements RecordSink {
+  private final Set<String> columns = new LinkedHashSet<>();
+
+  @Override
+  public void accept(JsonNode record) {
+    for (var field : record.properties()) {
+      columns.add(field.getKey());
+    }
+  }
+
+  /** Returns the schema inferred so far, without a header or separator set. */
+  CsvSchema schema() {
+    var builder = CsvSchema.builder();
+    columns.forEach(builder::addColumn);
+    return builder.build();
+  }
+}
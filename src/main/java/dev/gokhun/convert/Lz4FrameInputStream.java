@@ -0,0 +1,268 @@
+package dev.gokhun.convert;
+
+import static dev.gokhun.convert.XxHash32.intAt;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Reads LZ4 frames, as the {@code lz4} command line tool and its library write them, one after the
+ * other until the end of the stream. Skippable frames are skipped and checksums, where a frame has
+ * any, are checked.
+ *
+ * <p>Blocks are decoded here rather than by aircompressor, whose decoder only takes a block on its
+ * own, since blocks of a frame may refer back to up to 64 KiB of the output of the blocks before.
+ * That output is kept in front of the block being decoded.
+ */
+final class Lz4FrameInputStream extends InputStream {
+  private static final int MAGIC = 0x184D2204;
+  private static final int SKIPPABLE_MAGIC = 0x184D2A50;
+  private static final int HISTORY = 64 << 10;
+  private static final int MIN_MATCH = 4;
+  private static final int UNCOMPRESSED = 0x8000_0000;
+
+  private final InputStream in;
+  private final byte[] header = new byte[15];
+  private byte[] window = new byte[0];
+  private byte[] source = new byte[0];
+  private boolean independentBlocks;
+  private boolean blockChecksums;
+  private XxHash32 checksum;
+  private int maxBlockSize;
+  private int position;
+  private int end;
+  private boolean inFrame;
+  private boolean finished;
+  private boolean closed;
+
+  Lz4FrameInputStream(InputStream in) {
+    this.in = in;
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!fill()) {
+      return -1;
+    }
+    return window[position++] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] bytes, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    if (!fill()) {
+      return -1;
+    }
+    var count = Math.min(length, end - position);
+    System.arraycopy(window, position, bytes, offset, count);
+    position += count;
+    return count;
+  }
+
+  @Override
+  public int available() {
+    return end - position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (!closed) {
+      closed = true;
+      in.close();
+    }
+  }
+
+  /** Decodes blocks until there is output left to read, or returns false at the end. */
+  private boolean fill() throws IOException {
+    if (closed) {
+      throw new IOException("Stream closed!");
+    }
+    while (position == end) {
+      if (finished) {
+        return false;
+      }
+      if (!inFrame) {
+        finished = !readFrameHeader();
+      } else {
+        readBlock();
+      }
+    }
+    return true;
+  }
+
+  /** Reads the header of the next frame past any skippable ones, or returns false at the end. */
+  private boolean readFrameHeader() throws IOException {
+    while (true) {
+      var read = in.readNBytes(header, 0, 4);
+      if (read == 0) {
+        return false;
+      }
+      if (read < 4) {
+        throw truncated();
+      }
+      var magic = intAt(header, 0);
+      if ((magic & 0xFFFF_FFF0) == SKIPPABLE_MAGIC) {
+        readFully(header, 0, 4);
+        in.skipNBytes(Integer.toUnsignedLong(intAt(header, 0)));
+        continue;
+      }
+      if (magic != MAGIC) {
+        throw malformed("magic");
+      }
+      readFully(header, 0, 2);
+      var flags = header[0];
+      if ((flags & 0b1100_0010) != 0b0100_0000 || (header[1] & 0b1000_1111) != 0) {
+        throw malformed("frame descriptor");
+      }
+      if ((flags & 0b0000_0001) != 0) {
+        throw malformed("dictionary");
+      }
+      var descriptorLength = (flags & 0b0000_1000) != 0 ? 10 : 2;
+      readFully(header, 2, descriptorLength - 1);
+      if ((header[descriptorLength] & 0xFF)
+          != ((XxHash32.hash(header, 0, descriptorLength) >>> 8) & 0xFF)) {
+        throw malformed("header checksum");
+      }
+      var blockSizeId = (header[1] >> 4) & 0b111;
+      if (blockSizeId < 4) {
+        throw malformed("block size");
+      }
+      independentBlocks = (flags & 0b0010_0000) != 0;
+      blockChecksums = (flags & 0b0001_0000) != 0;
+      checksum = (flags & 0b0000_0100) != 0 ? new XxHash32() : null;
+      maxBlockSize = 1 << (8 + 2 * blockSizeId);
+      if (source.length < maxBlockSize) {
+        source = new byte[maxBlockSize];
+        window = new byte[HISTORY + maxBlockSize];
+      }
+      position = 0;
+      end = 0;
+      inFrame = true;
+      return true;
+    }
+  }
+
+  private void readBlock() throws IOException {
+    readFully(header, 0, 4);
+    var size = intAt(header, 0);
+    if (size == 0) {
+      // The end mark of the frame, which a checksum of its content may follow.
+      if (checksum != null) {
+        readFully(header, 0, 4);
+        if (intAt(header, 0) != checksum.value()) {
+          throw malformed("content checksum");
+        }
+      }
+      inFrame = false;
+      return;
+    }
+    var length = size & ~UNCOMPRESSED;
+    if (length > maxBlockSize) {
+      throw malformed("block size");
+    }
+    if (independentBlocks) {
+      end = 0;
+    } else if (end + maxBlockSize > window.length) {
+      var kept = Math.min(end, HISTORY);
+      System.arraycopy(window, end - kept, window, 0, kept);
+      end = kept;
+    }
+    var start = end;
+    // Blocks that are stored uncompressed are read into the window as they are.
+    var stored = (size & UNCOMPRESSED) != 0;
+    var target = stored ? window : source;
+    var offset = stored ? start : 0;
+    readFully(target, offset, length);
+    if (blockChecksums) {
+      readFully(header, 0, 4);
+      if (intAt(header, 0) != XxHash32.hash(target, offset, length)) {
+        throw malformed("block checksum");
+      }
+    }
+    end = stored ? start + length : decode(length, start);
+    if (checksum != null) {
+      checksum.update(window, start, end - start);
+    }
+    position = start;
+  }
+
+  /**
+   * Decodes a compressed block from the source into the window at the given offset, returning where
+   * its output ends. Every sequence is a run of literals followed by a match, which copies output
+   * from an offset before it. The last sequence only has literals.
+   */
+  private int decode(int length, int offset) throws IOException {
+    var from = 0;
+    var to = offset;
+    var limit = offset + maxBlockSize;
+    while (true) {
+      var token = source[from++] & 0xFF;
+      var literals = token >>> 4;
+      if (literals == 15) {
+        int next;
+        do {
+          if (from == length) {
+            throw malformed("block");
+          }
+          next = source[from++] & 0xFF;
+          literals += next;
+        } while (next == 255);
+      }
+      if (literals > length - from || literals > limit - to) {
+        throw malformed("block");
+      }
+      System.arraycopy(source, from, window, to, literals);
+      from += literals;
+      to += literals;
+      if (from == length) {
+        return to;
+      }
+      if (length - from < 2) {
+        throw malformed("block");
+      }
+      var distance = (source[from] & 0xFF) | (source[from + 1] & 0xFF) << 8;
+      from += 2;
+      var match = token & 0b1111;
+      if (match == 15) {
+        int next;
+        do {
+          if (from == length) {
+            throw malformed("block");
+          }
+          next = source[from++] & 0xFF;
+          match += next;
+        } while (next == 255);
+      }
+      match += MIN_MATCH;
+      if (distance == 0 || distance > to || match > limit - to) {
+        throw malformed("block");
+      }
+      if (distance >= match) {
+        System.arraycopy(window, to - distance, window, to, match);
+      } else {
+        // The match overlaps its own output, which repeats the bytes at the distance.
+        for (var i = 0; i < match; i++) {
+          window[to + i] = window[to - distance + i];
+        }
+      }
+      to += match;
+    }
+  }
+
+  private void readFully(byte[] bytes, int offset, int length) throws IOException {
+    if (in.readNBytes(bytes, offset, length) < length) {
+      throw truncated();
+    }
+  }
+
+  private static EOFException truncated() {
+    return new EOFException("Unexpected end of LZ4 input!");
+  }
+
+  private static IOException malformed(String part) {
+    return new IOException("Malformed LZ4 input! [%s]".formatted(part));
+  }
+}
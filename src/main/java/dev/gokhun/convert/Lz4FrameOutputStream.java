@@ -0,0 +1,111 @@
+package dev.gokhun.convert;
+
+import io.airlift.compress.lz4.Lz4Compressor;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * Writes an LZ4 frame, which the {@code lz4} command line tool and its library read: a header,
+ * blocks of up to 4 MiB that are compressed independently of each other, and a checksum of the
+ * content. Blocks that do not get any smaller are stored as they are.
+ */
+final class Lz4FrameOutputStream extends OutputStream {
+  static final int BLOCK_SIZE = 4 << 20;
+  private static final int MAGIC = 0x184D2204;
+  /** Version 1, independent blocks, no block checksums and a checksum of the content. */
+  private static final int FLAGS = 0b0110_0100;
+  /** Blocks of up to 4 MiB. */
+  private static final int BLOCK_DESCRIPTOR = 0b0111_0000;
+  private static final int UNCOMPRESSED = 0x8000_0000;
+
+  private final OutputStream out;
+  private final Lz4Compressor compressor = new Lz4Compressor();
+  private final XxHash32 checksum = new XxHash32();
+  private final byte[] block = new byte[BLOCK_SIZE];
+  private final byte[] compressed = new byte[compressor.maxCompressedLength(BLOCK_SIZE)];
+  private int length;
+  private boolean started;
+  private boolean closed;
+
+  Lz4FrameOutputStream(OutputStream out) {
+    this.out = out;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (length == block.length) {
+      writeBlock();
+    }
+    block[length++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int count) throws IOException {
+    var from = offset;
+    var remaining = count;
+    while (remaining > 0) {
+      if (length == block.length) {
+        writeBlock();
+      }
+      var copied = Math.min(remaining, block.length - length);
+      System.arraycopy(bytes, from, block, length, copied);
+      length += copied;
+      from += copied;
+      remaining -= copied;
+    }
+  }
+
+  /** Flushes the blocks written so far. The block being filled is only written once full. */
+  @Override
+  public void flush() throws IOException {
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try (out) {
+      if (length > 0) {
+        writeBlock();
+      }
+      start();
+      // The end mark, which is an empty block.
+      writeInt(0);
+      writeInt(checksum.value());
+    }
+  }
+
+  private void start() throws IOException {
+    if (!started) {
+      started = true;
+      writeInt(MAGIC);
+      var descriptor = new byte[] {FLAGS, BLOCK_DESCRIPTOR};
+      out.write(descriptor);
+      out.write(XxHash32.hash(descriptor, 0, descriptor.length) >>> 8);
+    }
+  }
+
+  private void writeBlock() throws IOException {
+    start();
+    checksum.update(block, 0, length);
+    var compressedLength =
+        compressor.compress(block, 0, length, compressed, 0, compressed.length);
+    if (compressedLength < length) {
+      writeInt(compressedLength);
+      out.write(compressed, 0, compressedLength);
+    } else {
+      writeInt(length | UNCOMPRESSED);
+      out.write(block, 0, length);
+    }
+    length = 0;
+  }
+
+  private void writeInt(int value) throws IOException {
+    out.write(
+        new byte[] {(byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24)
+        });
+  }
+}
@@ -0,0 +1,196 @@
+package dev.gokhun.convert;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+/** File streams on top of NIO channels. */
+final class NioFiles {
+  static final int DEFAULT_BUFFER_SIZE = 64 << 10;
+  private static final long MAPPING_THRESHOLD = 16L << 20;
+  private static final long MAPPED_SEGMENT_SIZE = 1L << 30;
+
+  private NioFiles() {}
+
+  /**
+   * Opens a file for reading. Large regular files are memory mapped, one segment at a time, so
+   * reading them needs no system calls or copies into an intermediate buffer. Anything else is
+   * read through a buffer of the given size.
+   */
+  static InputStream newInputStream(Path path, int bufferSize) throws IOException {
+    return newInputStream(path, bufferSize, MAPPING_THRESHOLD, MAPPED_SEGMENT_SIZE);
+  }
+
+  /**
+   * Opens a file for reading, memory mapping it in segments of {@code segmentSize} bytes if it has
+   * at least {@code mappingThreshold} bytes.
+   */
+  static InputStream newInputStream(
+      Path path, int bufferSize, long mappingThreshold, long segmentSize) throws IOException {
+    var channel = FileChannel.open(path, READ);
+    try {
+      var size = channel.size();
+      return size >= mappingThreshold
+          ? new MappedInputStream(channel, size, segmentSize)
+          : new BufferedInputStream(Channels.newInputStream(channel), bufferSize);
+    } catch (IOException e) {
+      channel.close();
+      throw e;
+    }
+  }
+
+  /** Opens a file for writing, replacing any existing content. */
+  static OutputStream newOutputStream(Path path, int bufferSize) throws IOException {
+    return new ChannelOutputStream(
+        FileChannel.open(path, CREATE, TRUNCATE_EXISTING, WRITE), bufferSize, true);
+  }
+
+  /**
+   * Opens a standard stream for writing through a direct buffer of the given size. File streams,
+   * such as standard output, are written straight to their channel. Closing the returned stream
+   * flushes it, but leaves the standard stream open.
+   */
+  static OutputStream newStandardOutputStream(OutputStream out, int bufferSize) {
+    var channel =
+        out instanceof FileOutputStream file ? file.getChannel() : Channels.newChannel(out);
+    return new ChannelOutputStream(channel, bufferSize, false);
+  }
+
+  private static final class MappedInputStream extends InputStream {
+    private final FileChannel channel;
+    private final long size;
+    private final long segmentSize;
+    private long mapped;
+    private MappedByteBuffer segment;
+
+    MappedInputStream(FileChannel channel, long size, long segmentSize) {
+      this.channel = channel;
+      this.size = size;
+      this.segmentSize = segmentSize;
+    }
+
+    @Override
+    public int read() throws IOException {
+      return nextSegment() ? segment.get() & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] bytes, int offset, int length) throws IOException {
+      if (length == 0) {
+        return 0;
+      }
+      if (!nextSegment()) {
+        return -1;
+      }
+      var count = Math.min(length, segment.remaining());
+      segment.get(bytes, offset, count);
+      return count;
+    }
+
+    @Override
+    public int available() {
+      return segment == null ? 0 : segment.remaining();
+    }
+
+    @Override
+    public void close() throws IOException {
+      channel.close();
+    }
+
+    /** Maps the next segment once the current one is exhausted, returns false at end of file. */
+    private boolean nextSegment() throws IOException {
+      if (segment != null && segment.hasRemaining()) {
+        return true;
+      }
+      if (mapped >= size) {
+        return false;
+      }
+      var length = Math.min(segmentSize, size - mapped);
+      segment = channel.map(READ_ONLY, mapped, length);
+      mapped += length;
+      return true;
+    }
+  }
+
+  /**
+   * Buffers writes in a direct buffer, so that the channel does not have to copy every write into
+   * a temporary direct buffer of its own.
+   */
+  private static final class ChannelOutputStream extends OutputStream {
+    private final WritableByteChannel channel;
+    private final ByteBuffer buffer;
+    private final boolean closesChannel;
+    private boolean closed;
+
+    ChannelOutputStream(WritableByteChannel channel, int bufferSize, boolean closesChannel) {
+      this.channel = channel;
+      this.buffer = ByteBuffer.allocateDirect(bufferSize);
+      this.closesChannel = closesChannel;
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+      if (!buffer.hasRemaining()) {
+        drain();
+      }
+      buffer.put((byte) b);
+    }
+
+    @Override
+    public void write(byte[] bytes, int offset, int length) throws IOException {
+      if (length > buffer.remaining()) {
+        drain();
+      }
+      if (length > buffer.capacity()) {
+        var source = ByteBuffer.wrap(bytes, offset, length);
+        while (source.hasRemaining()) {
+          channel.write(source);
+        }
+      } else {
+        buffer.put(bytes, offset, length);
+      }
+    }
+
+    @Override
+    public void flush() throws IOException {
+      drain();
+    }
+
+    @Override
+    public void close() throws IOException {
+      if (closed) {
+        return;
+      }
+      closed = true;
+      if (!closesChannel) {
+        drain();
+      } else if (channel.isOpen()) {
+        try (channel) {
+          drain();
+        }
+      }
+    }
+
+    private void drain() throws IOException {
+      buffer.flip();
+      while (buffer.hasRemaining()) {
+        channel.write(buffer);
+      }
+      buffer.clear();
+    }
+  }
+}
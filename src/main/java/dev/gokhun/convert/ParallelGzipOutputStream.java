@@ -0,0 +1,143 @@
+package dev.gokhun.convert;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/**
+ * Writes gzip by compressing blocks of the output on all cores. Every block is compressed into a
+ * gzip member of its own and members are written in order, which is a valid gzip stream that any
+ * gzip reader decompresses as a whole. Blocks do not share a dictionary, which costs a little
+ * compression ratio at the size of a block.
+ *
+ * <p>At most two blocks per core are compressed or waiting to be written at once, so output that
+ * is produced faster than it can be compressed holds the writer back.
+ */
+final class ParallelGzipOutputStream extends OutputStream {
+  static final int BLOCK_SIZE = 1 << 20;
+  private static final byte[] HEADER = {0x1F, (byte) 0x8B, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, -1};
+
+  private final OutputStream out;
+  private final ForkJoinPool pool = ForkJoinPool.commonPool();
+  private final int maxPending = Math.max(2, 2 * pool.getParallelism());
+  private final Deque<Future<byte[]>> pending = new ArrayDeque<>();
+  private byte[] block = new byte[BLOCK_SIZE];
+  private int length;
+  private boolean submitted;
+  private boolean closed;
+
+  ParallelGzipOutputStream(OutputStream out) {
+    this.out = out;
+  }
+
+  @Override
+  public void write(int b) throws IOException {
+    if (length == block.length) {
+      submit();
+    }
+    block[length++] = (byte) b;
+  }
+
+  @Override
+  public void write(byte[] bytes, int offset, int count) throws IOException {
+    var from = offset;
+    var remaining = count;
+    while (remaining > 0) {
+      if (length == block.length) {
+        submit();
+      }
+      var copied = Math.min(remaining, block.length - length);
+      System.arraycopy(bytes, from, block, length, copied);
+      length += copied;
+      from += copied;
+      remaining -= copied;
+    }
+  }
+
+  /** Writes the blocks compressed so far. The block being filled is only compressed once full. */
+  @Override
+  public void flush() throws IOException {
+    while (!pending.isEmpty() && pending.peek().isDone()) {
+      writeNext();
+    }
+    out.flush();
+  }
+
+  @Override
+  public void close() throws IOException {
+    if (closed) {
+      return;
+    }
+    closed = true;
+    try (out) {
+      // Empty output is still written as a member, since a gzip stream can not be empty.
+      if (length > 0 || !submitted) {
+        submit();
+      }
+      while (!pending.isEmpty()) {
+        writeNext();
+      }
+    } finally {
+      pending.forEach(future -> future.cancel(true));
+    }
+  }
+
+  private void submit() throws IOException {
+    var full = block;
+    var fullLength = length;
+    pending.add(pool.submit(() -> member(full, fullLength)));
+    submitted = true;
+    block = new byte[BLOCK_SIZE];
+    length = 0;
+    while (pending.size() >= maxPending) {
+      writeNext();
+    }
+  }
+
+  private void writeNext() throws IOException {
+    try {
+      out.write(pending.remove().get());
+    } catch (ExecutionException e) {
+      throw new IOException(e.getCause().getMessage(), e.getCause());
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while compressing output!");
+    }
+  }
+
+  /** Compresses a block into a gzip member: header, raw deflate data, CRC-32 and length. */
+  private static byte[] member(byte[] bytes, int length) {
+    var crc = new CRC32();
+    crc.update(bytes, 0, length);
+    var member = new ByteArrayOutputStream(length / 2 + HEADER.length + 8);
+    member.writeBytes(HEADER);
+    var deflater = new Deflater(Deflater.DEFAULT_COMPRESSION, true);
+    try {
+      deflater.setInput(bytes, 0, length);
+      deflater.finish();
+      var buffer = new byte[64 << 10];
+      while (!deflater.finished()) {
+        member.write(buffer, 0, deflater.deflate(buffer));
+      }
+    } finally {
+      deflater.end();
+    }
+    writeIntLittleEndian(member, (int) crc.getValue());
+    writeIntLittleEndian(member, length);
+    return member.toByteArray();
+  }
+
+  private static void writeIntLittleEndian(ByteArrayOutputStream out, int value) {
+    out.writeBytes(
+        new byte[] {(byte) value, (byte) (value >>> 8), (byte) (value >>> 16), (byte) (value >>> 24)
+        });
+  }
+}
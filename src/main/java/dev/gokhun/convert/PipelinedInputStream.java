@@ -0,0 +1,138 @@
+package dev.gokhun.convert;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Reads a stream ahead on a thread of its own, handing chunks of it over through a bounded queue.
+ * The work behind every read of the source, such as inflating it, then overlaps with the work of
+ * the reader instead of stalling it. Chunks are recycled, so that reading ahead allocates nothing
+ * once the queue is full.
+ */
+final class PipelinedInputStream extends InputStream {
+  /** Chunks read ahead at most, besides the one being read and the one being filled. */
+  private static final int DEPTH = 4;
+  /**
+   * Time to wait for the reader to stop when closed. A reader blocked on a source that ignores
+   * interrupts, such as standard input, is left behind to stop once its read returns.
+   */
+  private static final Duration CLOSE_TIMEOUT = Duration.ofSeconds(1);
+
+  private static final Chunk END = new Chunk(new byte[0], 0);
+
+  private record Chunk(byte[] bytes, int length) {}
+
+  private final BlockingQueue<Chunk> filled = new ArrayBlockingQueue<>(DEPTH);
+  private final BlockingQueue<byte[]> empty = new ArrayBlockingQueue<>(DEPTH + 2);
+  private final Thread reader;
+  private volatile Throwable failure;
+  private Chunk chunk;
+  private int position;
+
+  PipelinedInputStream(InputStream source, int chunkSize) {
+    this.reader = Thread.ofPlatform()
+        .name("convert-read-ahead")
+        .daemon()
+        .start(() -> readAhead(source, chunkSize));
+  }
+
+  @Override
+  public int read() throws IOException {
+    if (!nextChunk()) {
+      return -1;
+    }
+    return chunk.bytes()[position++] & 0xFF;
+  }
+
+  @Override
+  public int read(byte[] bytes, int offset, int length) throws IOException {
+    if (length == 0) {
+      return 0;
+    }
+    if (!nextChunk()) {
+      return -1;
+    }
+    var count = Math.min(length, chunk.length() - position);
+    System.arraycopy(chunk.bytes(), position, bytes, offset, count);
+    position += count;
+    return count;
+  }
+
+  @Override
+  public int available() {
+    return chunk == null || chunk == END ? 0 : chunk.length() - position;
+  }
+
+  @Override
+  public void close() throws IOException {
+    // The reader closes the source once it stops, whether at its end or interrupted.
+    reader.interrupt();
+    try {
+      reader.join(CLOSE_TIMEOUT);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while closing input!");
+    }
+  }
+
+  /** Takes the next chunk once the current one is read, returns false at end of stream. */
+  private boolean nextChunk() throws IOException {
+    if (chunk == END) {
+      return false;
+    }
+    if (chunk != null && position < chunk.length()) {
+      return true;
+    }
+    if (chunk != null) {
+      empty.offer(chunk.bytes());
+    }
+    try {
+      chunk = filled.take();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException("Interrupted while reading input!");
+    }
+    position = 0;
+    if (chunk == END) {
+      if (failure != null) {
+        throw new IOException(failure.getMessage(), failure);
+      }
+      return false;
+    }
+    return true;
+  }
+
+  private void readAhead(InputStream source, int chunkSize) {
+    try (source) {
+      var count = chunkSize;
+      while (count == chunkSize) {
+        var bytes = empty.poll();
+        if (bytes == null) {
+          bytes = new byte[chunkSize];
+        }
+        count = source.readNBytes(bytes, 0, chunkSize);
+        if (count > 0) {
+          filled.put(new Chunk(bytes, count));
+        }
+      }
+    } catch (InterruptedException e) {
+      // Closed before the end of the source, so no one is waiting for the rest of it, and the put
+      // below returns at once.
+      Thread.currentThread().interrupt();
+    } catch (Throwable e) {
+      // Anything the source throws is handed over, so that the reader fails instead of waiting.
+      failure = e;
+    } finally {
+      try {
+        filled.put(END);
+      } catch (InterruptedException e) {
+        // Closed right at the end of the source.
+        Thread.currentThread().interrupt();
+      }
+    }
+  }
+}
@@ -0,0 +1,360 @@
+package dev.gokhun.convert;
+
+import static com.fasterxml.jackson.core.JsonToken.END_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.END_OBJECT;
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.START_OBJECT;
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.gokhun.convert.ConversionUtil.RecordSink;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Flattens nested records into flat ones, and back again. Fields of nested objects become columns
+ * named by their dotted path, such as {@code user.name}, and elements of arrays by their indexed
+ * path, such as {@code tags[0]}. Empty objects and arrays have no fields to become columns of, so
+ * they are flattened into nulls.
+ *
+ * <p>Paths are kept in a table, so that the name of a column is built once for the first record
+ * that has it and looked up for every later one. Records are flattened either from trees or
+ * straight from parser tokens, in which case nested values are never built at all. A flattener
+ * holds the tables of a single conversion and is not thread safe.
+ */
+final class RecordFlattener {
+  /** Most paths kept in a table, beyond which names are built every time rather than kept. */
+  private static final int MAX_PATHS = 1 << 16;
+  /** Most elements an unflattened array is padded with nulls up to, to reach an index. */
+  private static final int MAX_INDEX_GAP = 1 << 10;
+
+  private final JsonNodeFactory factory = JsonNodeFactory.instance;
+  private final Path root = new Path("");
+  private final Map<String, Segment[]> segments = new HashMap<>();
+  private int paths;
+
+  /**
+   * Returns a sink that flattens every record and document into the given sink. Values which are
+   * not objects are passed on as they are.
+   */
+  RecordSink flattening(RecordSink sink) {
+    return new RecordSink() {
+      @Override
+      public void accept(JsonNode record) throws IOException {
+        sink.accept(flatten(record));
+      }
+
+      @Override
+      public void acceptDocument(JsonNode document) throws IOException {
+        sink.acceptDocument(flatten(document));
+      }
+
+      @Override
+      public void close() throws IOException {
+        sink.close();
+      }
+    };
+  }
+
+  /** Returns a sink that unflattens every record and document into the given sink. */
+  RecordSink unflattening(RecordSink sink) {
+    return new RecordSink() {
+      @Override
+      public void accept(JsonNode record) throws IOException {
+        sink.accept(unflatten(record));
+      }
+
+      @Override
+      public void acceptDocument(JsonNode document) throws IOException {
+        sink.acceptDocument(unflatten(document));
+      }
+
+      @Override
+      public void close() throws IOException {
+        sink.close();
+      }
+    };
+  }
+
+  /**
+   * Emits the elements of a top level array as flat records, or any other top level value as a
+   * single document, flattening them straight from the tokens of the parser.
+   */
+  void read(JsonParser parser, RecordSink sink) throws IOException {
+    try (parser) {
+      var token = parser.nextToken();
+      if (token == START_ARRAY) {
+        while (parser.nextToken() != END_ARRAY) {
+          sink.accept(readRecord(parser));
+        }
+      } else if (token != null) {
+        sink.acceptDocument(readRecord(parser));
+      }
+    }
+  }
+
+  /** Returns a record with the fields of its nested objects and arrays flattened. */
+  JsonNode flatten(JsonNode record) {
+    if (!record.isObject()) {
+      return record;
+    }
+    var flat = factory.objectNode();
+    for (var field : record.properties()) {
+      flatten(root.field(field.getKey()), field.getValue(), flat);
+    }
+    return flat;
+  }
+
+  /**
+   * Returns a record with its flattened fields nested again. Fields whose names are not paths are
+   * kept as they are.
+   *
+   * @throws IllegalArgumentException if paths of the record conflict, such as {@code a} and {@code
+   *     a.b}
+   */
+  JsonNode unflatten(JsonNode record) {
+    if (!record.isObject()) {
+      return record;
+    }
+    var nested = factory.objectNode();
+    for (var field : record.properties()) {
+      var path = segments(field.getKey());
+      JsonNode parent = nested;
+      for (var i = 0; i < path.length - 1; i++) {
+        parent = path[i].child(parent, path[i + 1].index() >= 0, field.getKey());
+      }
+      path[path.length - 1].set(parent, field.getValue(), field.getKey());
+    }
+    return nested;
+  }
+
+  private JsonNode readRecord(JsonParser parser) throws IOException {
+    if (parser.currentToken() != START_OBJECT) {
+      return parser.readValueAsTree();
+    }
+    var flat = factory.objectNode();
+    readFields(parser, root, flat);
+    return flat;
+  }
+
+  private void readValue(JsonParser parser, Path path, ObjectNode flat) throws IOException {
+    switch (parser.currentToken()) {
+      case START_OBJECT -> {
+        if (parser.nextToken() == END_OBJECT) {
+          flat.putNull(path.name);
+        } else {
+          readFields(parser, path, flat);
+        }
+      }
+      case START_ARRAY -> {
+        if (parser.nextToken() == END_ARRAY) {
+          flat.putNull(path.name);
+          return;
+        }
+        for (var index = 0; parser.currentToken() != END_ARRAY; index++) {
+          readValue(parser, path.element(index), flat);
+          parser.nextToken();
+        }
+      }
+      case VALUE_STRING -> flat.put(path.name, parser.getText());
+      case VALUE_TRUE -> flat.put(path.name, true);
+      case VALUE_FALSE -> flat.put(path.name, false);
+      case VALUE_NULL -> flat.putNull(path.name);
+      default -> flat.set(path.name, parser.readValueAsTree());
+    }
+  }
+
+  /** Reads the fields of an object, from either its start or its first field name on. */
+  private void readFields(JsonParser parser, Path path, ObjectNode flat) throws IOException {
+    var token = parser.currentToken() == FIELD_NAME ? FIELD_NAME : parser.nextToken();
+    for (; token == FIELD_NAME; token = parser.nextToken()) {
+      var field = path.field(parser.currentName());
+      parser.nextToken();
+      readValue(parser, field, flat);
+    }
+  }
+
+  private void flatten(Path path, JsonNode value, ObjectNode flat) {
+    if (value.isContainerNode() && value.isEmpty()) {
+      flat.putNull(path.name);
+    } else if (value.isObject()) {
+      for (var field : value.properties()) {
+        flatten(path.field(field.getKey()), field.getValue(), flat);
+      }
+    } else if (value.isArray()) {
+      for (var index = 0; index < value.size(); index++) {
+        flatten(path.element(index), value.get(index), flat);
+      }
+    } else {
+      flat.set(path.name, value);
+    }
+  }
+
+  /** Returns the segments of a flattened field name, parsed once per name. */
+  private Segment[] segments(String name) {
+    var parsed = segments.get(name);
+    if (parsed == null) {
+      parsed = Segment.parse(name);
+      if (segments.size() < MAX_PATHS) {
+        segments.put(name, parsed);
+      }
+    }
+    return parsed;
+  }
+
+  /** A path into a record, with the paths of its fields and elements kept as they are seen. */
+  private final class Path {
+    private final String name;
+    private Map<String, Path> fields;
+    private List<Path> elements;
+
+    Path(String name) {
+      this.name = name;
+    }
+
+    Path field(String key) {
+      if (fields == null) {
+        fields = new HashMap<>();
+      }
+      var field = fields.get(key);
+      if (field == null) {
+        field = new Path(this == root ? key : name + '.' + key);
+        if (paths < MAX_PATHS) {
+          fields.put(key, field);
+          paths++;
+        }
+      }
+      return field;
+    }
+
+    Path element(int index) {
+      if (elements == null) {
+        elements = new ArrayList<>();
+      }
+      if (index < elements.size()) {
+        return elements.get(index);
+      }
+      var element = new Path(name + '[' + index + ']');
+      if (index == elements.size() && paths < MAX_PATHS) {
+        elements.add(element);
+        paths++;
+      }
+      return element;
+    }
+  }
+
+  /** A field name or an array index of a flattened path. */
+  private record Segment(String key, int index) {
+    /**
+     * Parses a dotted and indexed path. Names which are not such paths, such as ones with empty
+     * segments or starting with an index, are taken as a single field name.
+     */
+    static Segment[] parse(String name) {
+      var parsed = new ArrayList<Segment>();
+      var i = 0;
+      while (i < name.length()) {
+        if (name.charAt(i) == '[') {
+          var end = name.indexOf(']', i);
+          var index = end < 0 ? -1 : parseIndex(name, i + 1, end);
+          if (index < 0 || parsed.isEmpty()) {
+            return literal(name);
+          }
+          parsed.add(new Segment(null, index));
+          i = end + 1;
+          continue;
+        }
+        if (!parsed.isEmpty()) {
+          // Every field but the first follows a dot.
+          if (name.charAt(i) != '.') {
+            return literal(name);
+          }
+          i++;
+        }
+        var end = i;
+        while (end < name.length() && name.charAt(end) != '.' && name.charAt(end) != '[') {
+          end++;
+        }
+        if (end == i) {
+          return literal(name);
+        }
+        parsed.add(new Segment(name.substring(i, end), -1));
+        i = end;
+      }
+      return parsed.isEmpty() ? literal(name) : parsed.toArray(Segment[]::new);
+    }
+
+    private static Segment[] literal(String name) {
+      return new Segment[] {new Segment(name, -1)};
+    }
+
+    private static int parseIndex(String name, int start, int end) {
+      // Nine digits always fit an int.
+      if (start == end || end - start > 9) {
+        return -1;
+      }
+      var index = 0;
+      for (var i = start; i < end; i++) {
+        var c = name.charAt(i);
+        if (c < '0' || c > '9') {
+          return -1;
+        }
+        index = index * 10 + c - '0';
+      }
+      return index;
+    }
+
+    /**
+     * Returns the container this segment names in its parent, adding it if it is missing or
+     * blank.
+     */
+    JsonNode child(JsonNode parent, boolean array, String field) {
+      var child = index < 0 ? parent.get(key) : parent.get(index);
+      if (child == null || isBlank(child)) {
+        child = array ? JsonNodeFactory.instance.arrayNode() : JsonNodeFactory.instance.objectNode();
+        set(parent, child, field);
+      }
+      checkArgument(
+          array ? child.isArray() : child.isObject(), "Conflicting flattened paths! [%s]", field);
+      return child;
+    }
+
+    /**
+     * Sets the value this segment names in its parent. A blank value does not replace a container,
+     * as empty objects and arrays are flattened into a column of their own next to the ones of
+     * their fields in other records.
+     */
+    void set(JsonNode parent, JsonNode value, String field) {
+      if (index < 0) {
+        checkArgument(parent.isObject(), "Conflicting flattened paths! [%s]", field);
+        var existing = parent.get(key);
+        if (existing != null && existing.isContainerNode()) {
+          checkArgument(isBlank(value), "Conflicting flattened paths! [%s]", field);
+          return;
+        }
+        ((ObjectNode) parent).set(key, value);
+        return;
+      }
+      checkArgument(parent.isArray(), "Conflicting flattened paths! [%s]", field);
+      var array = (ArrayNode) parent;
+      checkArgument(
+          index - array.size() <= MAX_INDEX_GAP, "Flattened array index is too large! [%s]", field);
+      while (array.size() <= index) {
+        array.addNull();
+      }
+      array.set(index, value);
+    }
+
+    /** Returns whether a value is null, or empty text as null cells of CSV input read. */
+    private static boolean isBlank(JsonNode value) {
+      return value.isNull() || (value.isTextual() && value.textValue().isEmpty());
+    }
+  }
+}
@@ -0,0 +1,376 @@
+package dev.gokhun.convert;
+
+import static com.fasterxml.jackson.core.JsonToken.END_ARRAY;
+import static com.fasterxml.jackson.core.JsonToken.FIELD_NAME;
+import static com.fasterxml.jackson.core.JsonToken.START_ARRAY;
+import static com.google.common.base.Preconditions.checkArgument;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonPointer;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.google.common.collect.ImmutableList;
+import dev.gokhun.convert.ConversionUtil.RecordSink;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.OptionalInt;
+
+/**
+ * Keeps only the selected values of the records that match every predicate. Values are selected by
+ * JSON Pointer, such as {@code /user/name}, or by field name, such as {@code name}, which selects a
+ * top level field. Predicates compare a value, named the same way, against a literal, as in {@code
+ * age>=18} or {@code /user/name=Ada}.
+ *
+ * <p>Records are projected either from trees or straight from parser tokens, in which case values
+ * that are neither selected nor compared are skipped without being built. Selected values keep the
+ * order they are read in. A projection holds no state of its own and can be shared.
+ */
+final class RecordProjection {
+  private final Path selected;
+  /** Values read from tokens, the selected ones and the ones that predicates compare. */
+  private final Path read;
+  private final ImmutableList<Predicate> predicates;
+  private final JsonNodeFactory factory = JsonNodeFactory.instance;
+
+  private RecordProjection(List<String> select, List<String> where) {
+    this.predicates = where.stream().map(Predicate::parse).collect(ImmutableList.toImmutableList());
+    var selectedPaths = select.stream()
+        .map(RecordProjection::pointer)
+        .collect(ImmutableList.toImmutableList());
+    this.selected = Path.of(selectedPaths);
+    this.read = predicates.isEmpty() || selected.whole
+        ? selected
+        : Path.of(ImmutableList.<JsonPointer>builder()
+            .addAll(selectedPaths)
+            .addAll(predicates.stream().map(Predicate::path).iterator())
+            .build());
+  }
+
+  /**
+   * Returns the projection of the given selection and predicates, or nothing if there are neither.
+   *
+   * @throws IllegalArgumentException if a path or a predicate is not valid
+   */
+  static Optional<RecordProjection> of(List<String> select, List<String> where) {
+    return select.isEmpty() && where.isEmpty()
+        ? Optional.empty()
+        : Optional.of(new RecordProjection(select, where));
+  }
+
+  /** Returns a sink that projects every record and document into the given sink. */
+  RecordSink projecting(RecordSink sink) {
+    return new RecordSink() {
+      @Override
+      public void accept(JsonNode record) throws IOException {
+        var projected = project(record);
+        if (projected != null) {
+          sink.accept(projected);
+        }
+      }
+
+      @Override
+      public void acceptDocument(JsonNode document) throws IOException {
+        var projected = project(document);
+        if (projected != null) {
+          sink.acceptDocument(projected);
+        }
+      }
+
+      @Override
+      public void close() throws IOException {
+        sink.close();
+      }
+    };
+  }
+
+  /**
+   * Emits the elements of a top level array as projected records, or any other top level value as
+   * a single document, skipping the tokens of values that are neither selected nor compared.
+   */
+  void read(JsonParser parser, RecordSink sink) throws IOException {
+    try (parser) {
+      var token = parser.nextToken();
+      if (token == START_ARRAY) {
+        while (parser.nextToken() != END_ARRAY) {
+          var record = readRecord(parser);
+          if (record != null) {
+            sink.accept(record);
+          }
+        }
+      } else if (token != null) {
+        var document = readRecord(parser);
+        if (document != null) {
+          sink.acceptDocument(document);
+        }
+      }
+    }
+  }
+
+  /** Returns the selected values of a record, or null if it does not match every predicate. */
+  JsonNode project(JsonNode record) {
+    if (!matches(record)) {
+      return null;
+    }
+    return orEmpty(prune(record, selected));
+  }
+
+  private JsonNode readRecord(JsonParser parser) throws IOException {
+    var record = orEmpty(prune(parser, read));
+    if (!matches(record)) {
+      return null;
+    }
+    // Values that were only read to be compared are dropped again.
+    return read == selected ? record : orEmpty(prune(record, selected));
+  }
+
+  private boolean matches(JsonNode record) {
+    for (var predicate : predicates) {
+      if (!predicate.test(record)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /** Reads the parts of the current value that a path has, or null if it has none of them. */
+  private JsonNode prune(JsonParser parser, Path path) throws IOException {
+    if (path.whole) {
+      return parser.readValueAsTree();
+    }
+    switch (parser.currentToken()) {
+      case START_OBJECT -> {
+        ObjectNode pruned = null;
+        for (var token = parser.nextToken(); token == FIELD_NAME; token = parser.nextToken()) {
+          var name = parser.currentName();
+          var child = path.children.get(name);
+          parser.nextToken();
+          if (child == null) {
+            parser.skipChildren();
+            continue;
+          }
+          var value = prune(parser, child);
+          if (value != null) {
+            pruned = pruned == null ? factory.objectNode() : pruned;
+            pruned.set(name, value);
+          }
+        }
+        return pruned;
+      }
+      case START_ARRAY -> {
+        ArrayNode pruned = null;
+        for (var index = 0; parser.nextToken() != END_ARRAY; index++) {
+          var child = path.children.get(Integer.toString(index));
+          if (child == null) {
+            parser.skipChildren();
+            continue;
+          }
+          var value = prune(parser, child);
+          if (value != null) {
+            pruned = add(pruned == null ? factory.arrayNode() : pruned, index, value);
+          }
+        }
+        return pruned;
+      }
+      default -> {
+        // A scalar where a path goes on has none of its parts.
+        return null;
+      }
+    }
+  }
+
+  /** Returns the parts of a value that a path has, or null if it has none of them. */
+  private JsonNode prune(JsonNode value, Path path) {
+    if (path.whole) {
+      return value;
+    }
+    if (value.isObject()) {
+      ObjectNode pruned = null;
+      for (var field : value.properties()) {
+        var child = path.children.get(field.getKey());
+        var prunedValue = child == null ? null : prune(field.getValue(), child);
+        if (prunedValue != null) {
+          pruned = pruned == null ? factory.objectNode() : pruned;
+          pruned.set(field.getKey(), prunedValue);
+        }
+      }
+      return pruned;
+    }
+    if (value.isArray()) {
+      ArrayNode pruned = null;
+      for (var index = 0; index < value.size(); index++) {
+        var child = path.children.get(Integer.toString(index));
+        var prunedValue = child == null ? null : prune(value.get(index), child);
+        if (prunedValue != null) {
+          pruned = add(pruned == null ? factory.arrayNode() : pruned, index, prunedValue);
+        }
+      }
+      return pruned;
+    }
+    return null;
+  }
+
+  /**
+   * Adds an element at its index, with the elements before it that were not kept as nulls, so that
+   * pointers into the array still lead to the same elements.
+   */
+  private static ArrayNode add(ArrayNode array, int index, JsonNode element) {
+    while (array.size() < index) {
+      array.addNull();
+    }
+    return array.add(element);
+  }
+
+  /** Records which have none of the selected values are kept as empty ones. */
+  private JsonNode orEmpty(JsonNode record) {
+    return record == null ? factory.objectNode() : record;
+  }
+
+  /** Parses a JSON Pointer, or takes anything else as the name of a top level field. */
+  private static JsonPointer pointer(String path) {
+    return JsonPointer.compile(
+        path.startsWith("/") ? path : "/" + path.replace("~", "~0").replace("/", "~1"));
+  }
+
+  /**
+   * A tree of the paths into a record that are kept. A path either keeps the whole value it leads
+   * to, or only the parts of it that its children lead to, by field name or array index.
+   */
+  private static final class Path {
+    private final Map<String, Path> children = new HashMap<>();
+    private boolean whole;
+
+    /** Returns the paths of the given pointers, keeping whole records if there are none. */
+    static Path of(List<JsonPointer> pointers) {
+      var root = new Path();
+      root.whole = pointers.isEmpty();
+      for (var pointer : pointers) {
+        var path = root;
+        for (var rest = pointer; !rest.matches() && !path.whole; rest = rest.tail()) {
+          path = path.children.computeIfAbsent(rest.getMatchingProperty(), key -> new Path());
+        }
+        path.whole = true;
+      }
+      return root;
+    }
+  }
+
+  /** Compares the value at a path of a record against a literal. */
+  private record Predicate(JsonPointer path, Operator operator, JsonNode literal) {
+    /**
+     * Parses a predicate, such as {@code age>=18}. Literals are numbers, {@code true}, {@code
+     * false}, {@code null}, or text, which may be quoted to keep its surrounding whitespace.
+     */
+    static Predicate parse(String predicate) {
+      var start = 0;
+      while (start < predicate.length() && "=!<>".indexOf(predicate.charAt(start)) < 0) {
+        start++;
+      }
+      var field = predicate.substring(0, start).strip();
+      checkArgument(
+          !field.isEmpty() && start < predicate.length(), "Invalid predicate! [%s]", predicate);
+      var equals = start + 1 < predicate.length() && predicate.charAt(start + 1) == '=';
+      var operator = switch (predicate.charAt(start)) {
+        case '<' -> equals ? Operator.LESS_OR_EQUAL : Operator.LESS;
+        case '>' -> equals ? Operator.GREATER_OR_EQUAL : Operator.GREATER;
+        case '!' -> equals ? Operator.NOT_EQUAL : null;
+        default -> Operator.EQUAL;
+      };
+      checkArgument(operator != null, "Invalid predicate! [%s]", predicate);
+      var value = predicate.substring(start + (equals ? 2 : 1)).strip();
+      return new Predicate(pointer(field), operator, literal(value));
+    }
+
+    private static JsonNode literal(String value) {
+      var factory = JsonNodeFactory.instance;
+      if (value.length() >= 2
+          && (value.charAt(0) == '"' || value.charAt(0) == '\'')
+          && value.charAt(value.length() - 1) == value.charAt(0)) {
+        return factory.textNode(value.substring(1, value.length() - 1));
+      }
+      return switch (value) {
+        case "null" -> factory.nullNode();
+        case "true", "false" -> factory.booleanNode(Boolean.parseBoolean(value));
+        default -> {
+          var number = decimal(value);
+          yield number == null ? factory.textNode(value) : factory.numberNode(number);
+        }
+      };
+    }
+
+    boolean test(JsonNode record) {
+      var value = record.at(path);
+      if (literal.isNull()) {
+        var isNull = value.isMissingNode() || value.isNull();
+        return operator == Operator.EQUAL ? isNull : operator == Operator.NOT_EQUAL && !isNull;
+      }
+      var comparison = compare(value);
+      if (comparison.isEmpty()) {
+        // Values that can not be compared, such as missing ones, only ever differ.
+        return operator == Operator.NOT_EQUAL;
+      }
+      return operator.accepts(comparison.getAsInt());
+    }
+
+    /**
+     * Compares a value against the literal: numerically if the literal is a number, which text that
+     * is one is read as, such as the cells of CSV input, or else as text.
+     */
+    private OptionalInt compare(JsonNode value) {
+      if (literal.isNumber()) {
+        BigDecimal number = null;
+        if (value.isNumber()) {
+          // Infinities and NaN have no decimal value.
+          number = value.isFloatingPointNumber() && !Double.isFinite(value.doubleValue())
+              ? null
+              : value.decimalValue();
+        } else if (value.isTextual()) {
+          number = decimal(value.textValue().strip());
+        }
+        return number == null
+            ? OptionalInt.empty()
+            : OptionalInt.of(number.compareTo(literal.decimalValue()));
+      }
+      if (!value.isValueNode() || value.isNull()) {
+        return OptionalInt.empty();
+      }
+      return OptionalInt.of(value.asText().compareTo(literal.asText()));
+    }
+
+    private static BigDecimal decimal(String value) {
+      if (value.isEmpty()) {
+        return null;
+      }
+      try {
+        return new BigDecimal(value);
+      } catch (NumberFormatException e) {
+        return null;
+      }
+    }
+  }
+
+  private enum Operator {
+    EQUAL,
+    NOT_EQUAL,
+    LESS,
+    LESS_OR_EQUAL,
+    GREATER,
+    GREATER_OR_EQUAL;
+
+    boolean accepts(int comparison) {
+      return switch (this) {
+        case EQUAL -> comparison == 0;
+        case NOT_EQUAL -> comparison != 0;
+        case LESS -> comparison < 0;
+        case LESS_OR_EQUAL -> comparison <= 0;
+        case GREATER -> comparison > 0;
+        case GREATER_OR_EQUAL -> comparison >= 0;
+      };
+    }
+  }
+}
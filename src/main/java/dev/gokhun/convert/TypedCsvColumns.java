@@ -0,0 +1,207 @@
+package dev.gokhun.convert;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.BigIntegerNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema.ColumnType;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.Maps;
+import java.math.BigInteger;
+import java.util.BitSet;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Types the cells of CSV rows as numbers, booleans and nulls instead of text. The type of a column
+ * is decided once, either from the types given for it or from its first cell that is not empty,
+ * and every later cell is only checked against that type. Cells that do not fit the type of their
+ * column are kept as text, and empty cells are nulls unless their column is given as a string.
+ *
+ * <p>Cells are checked character by character, so text never costs a failed parse.
+ */
+final class TypedCsvColumns {
+  /** Longest run of digits that always fits a long. */
+  private static final int MAX_LONG_DIGITS = 18;
+
+  private final String[] names;
+  private final ColumnType[] types;
+  /** Columns given as strings, whose empty cells are empty strings rather than nulls. */
+  private final BitSet givenStrings = new BitSet();
+
+  TypedCsvColumns(String[] names, Map<String, ColumnType> givenTypes) {
+    this.names = names;
+    this.types = new ColumnType[names.length];
+    for (var i = 0; i < names.length; i++) {
+      types[i] = givenTypes.get(names[i]);
+      givenStrings.set(i, types[i] == ColumnType.STRING);
+    }
+  }
+
+  /** Returns column types from their names, as accepted on the command line, by column name. */
+  static ImmutableMap<String, ColumnType> columnTypes(Map<String, String> typeNames) {
+    return ImmutableMap.copyOf(Maps.transformValues(typeNames, TypedCsvColumns::columnType));
+  }
+
+  private static ColumnType columnType(String name) {
+    return switch (name.toLowerCase(Locale.ENGLISH)) {
+      case "string" -> ColumnType.STRING;
+      case "number" -> ColumnType.NUMBER;
+      case "boolean" -> ColumnType.BOOLEAN;
+      default ->
+        throw new IllegalArgumentException("Unsupported CSV column type! [%s]".formatted(name));
+    };
+  }
+
+  /** Returns the node of a cell in the given column, deciding the column type if it is not yet. */
+  JsonNode node(int column, String cell) {
+    var type = typeOf(column, cell);
+    if (type == null) {
+      return NullNode.getInstance();
+    }
+    return switch (type) {
+      case NUMBER -> {
+        var number = number(cell);
+        yield number == null ? TextNode.valueOf(cell) : number;
+      }
+      case BOOLEAN -> booleanNode(cell);
+      default -> TextNode.valueOf(cell);
+    };
+  }
+
+  /**
+   * Returns the type of a column, deciding it from the given cell if it is not yet, or null when
+   * the cell is empty and the column is not given as a string.
+   */
+  ColumnType typeOf(int column, String cell) {
+    if (column >= types.length) {
+      // Cells past the header have no column to be typed after.
+      return ColumnType.STRING;
+    }
+    if (cell.isEmpty()) {
+      return givenStrings.get(column) ? ColumnType.STRING : null;
+    }
+    var type = types[column];
+    if (type == null) {
+      type = detect(cell);
+      types[column] = type;
+    }
+    return type;
+  }
+
+  /** Returns the types of the columns decided so far. */
+  ImmutableMap<String, ColumnType> types() {
+    var decided = ImmutableMap.<String, ColumnType>builder();
+    for (var i = 0; i < names.length; i++) {
+      if (types[i] != null) {
+        decided.put(names[i], types[i]);
+      }
+    }
+    return decided.buildKeepingLast();
+  }
+
+  private static ColumnType detect(String cell) {
+    if (isNumber(cell)) {
+      return ColumnType.NUMBER;
+    }
+    return "true".equals(cell) || "false".equals(cell) ? ColumnType.BOOLEAN : ColumnType.STRING;
+  }
+
+  private static JsonNode booleanNode(String cell) {
+    return switch (cell) {
+      case "true" -> BooleanNode.TRUE;
+      case "false" -> BooleanNode.FALSE;
+      default -> TextNode.valueOf(cell);
+    };
+  }
+
+  /**
+   * Returns the number written in a cell, or null if it is not written as a JSON number. Integers
+   * are accumulated from their digits and only other numbers go through a parse.
+   */
+  private static JsonNode number(String cell) {
+    if (!isNumber(cell)) {
+      return null;
+    }
+    var negative = cell.charAt(0) == '-';
+    var start = negative ? 1 : 0;
+    var length = cell.length();
+    var integer = true;
+    for (var i = start; i < length && integer; i++) {
+      integer = isDigit(cell.charAt(i));
+    }
+    if (!integer) {
+      return DoubleNode.valueOf(Double.parseDouble(cell));
+    }
+    if (length - start > MAX_LONG_DIGITS) {
+      return BigIntegerNode.valueOf(new BigInteger(cell));
+    }
+    var value = 0L;
+    for (var i = start; i < length; i++) {
+      value = value * 10 + cell.charAt(i) - '0';
+    }
+    if (negative) {
+      value = -value;
+    }
+    return value == (int) value ? IntNode.valueOf((int) value) : LongNode.valueOf(value);
+  }
+
+  /**
+   * Checks a cell against the JSON number grammar. Leading zeros and plus signs are not part of
+   * it, so codes such as {@code 007} stay text.
+   */
+  private static boolean isNumber(String cell) {
+    var length = cell.length();
+    var i = 0;
+    if (i < length && cell.charAt(i) == '-') {
+      i++;
+    }
+    if (i == length) {
+      return false;
+    }
+    if (cell.charAt(i) == '0') {
+      i++;
+    } else {
+      var digits = i;
+      i = skipDigits(cell, i);
+      if (i == digits) {
+        return false;
+      }
+    }
+    if (i < length && cell.charAt(i) == '.') {
+      var digits = i + 1;
+      i = skipDigits(cell, digits);
+      if (i == digits) {
+        return false;
+      }
+    }
+    if (i < length && (cell.charAt(i) == 'e' || cell.charAt(i) == 'E')) {
+      i++;
+      if (i < length && (cell.charAt(i) == '+' || cell.charAt(i) == '-')) {
+        i++;
+      }
+      var digits = i;
+      i = skipDigits(cell, i);
+      if (i == digits) {
+        return false;
+      }
+    }
+    return i == length;
+  }
+
+  private static int skipDigits(String cell, int from) {
+    var i = from;
+    while (i < cell.length() && isDigit(cell.charAt(i))) {
+      i++;
+    }
+    return i;
+  }
+
+  private static boolean isDigit(char c) {
+    return c >= '0' && c <= '9';
+  }
+}
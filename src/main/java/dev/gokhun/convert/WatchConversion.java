@@ -0,0 +1,313 @@
+package dev.gokhun.convert;
+
+import static com.google.common.base.Preconditions.checkArgument;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_CREATE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_DELETE;
+import static java.nio.file.StandardWatchEventKinds.ENTRY_MODIFY;
+import static java.util.concurrent.TimeUnit.NANOSECONDS;
+
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.hash.Hashing;
+import com.google.common.io.MoreFiles;
+import dev.gokhun.convert.BatchConversion.Result;
+import dev.gokhun.convert.ConversionCache.FileState;
+import dev.gokhun.convert.ConversionUtil.ConversionOptions;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Converts inputs again whenever they change, watching their directories with a {@link
+ * WatchService}.
+ *
+ * <p>Every round converts only the inputs whose content changed since they were last converted,
+ * told apart by their SHA-256 hash. Hashes are kept in a manifest next to the outputs, so that a
+ * restarted watch skips the inputs that did not change in the meantime, as long as the options
+ * that outputs depend on are the same. Within a process, inputs whose size and modification time
+ * did not change are not hashed again either. Bursts of events, such as an editor saving a file in
+ * several writes, are gathered into a single round once they settle down.
+ */
+final class WatchConversion implements Closeable {
+  static final Duration DEBOUNCE = Duration.ofMillis(200);
+  static final String MANIFEST_NAME = ".convert-watch";
+  private static final String MANIFEST_HEADER = "# convert --watch ";
+  private static final String MANIFEST_SEPARATOR = "  ";
+
+  private final Targets targets;
+  private final Optional<Path> root;
+  private final ConversionOptions options;
+  private final int parallelism;
+  private final ConversionStats stats;
+  private final ConversionCache cache;
+  private final Path manifest;
+  private final String fingerprint;
+  private final Duration debounce;
+  private final WatchService watchService;
+  private final Set<Path> watched = new HashSet<>();
+  private final Map<File, String> hashes;
+  private final Map<File, FileState> states = new HashMap<>();
+  private final Set<Path> touched = new HashSet<>();
+
+  /** Resolves inputs to their outputs again on every round, so that new inputs are picked up. */
+  private interface Targets {
+    ImmutableMap<File, File> resolve() throws IOException;
+  }
+
+  private WatchConversion(
+      Targets targets,
+      Optional<Path> root,
+      ConversionOptions options,
+      int parallelism,
+      ConversionStats stats,
+      ConversionCache cache,
+      Path manifest,
+      Duration debounce)
+      throws IOException {
+    this.targets = targets;
+    this.root = root;
+    this.options = options;
+    this.parallelism = parallelism;
+    this.stats = stats;
+    this.cache = cache;
+    this.manifest = manifest;
+    // Outputs depend on the options as much as on the inputs, so other options start afresh. Those
+    // that only change how fast outputs are written keep the manifest, as they keep cache entries.
+    var optionsHasher = Hashing.sha256().newHasher();
+    ConversionCache.putOptions(optionsHasher, options);
+    this.fingerprint = optionsHasher.hash().toString();
+    this.debounce = debounce;
+    this.hashes = readManifest();
+    this.watchService = manifest.getFileSystem().newWatchService();
+    if (root.isPresent()) {
+      watchTree(root.get());
+    }
+  }
+
+  /**
+   * Watches the inputs of a batch, a directory, a glob pattern or a manifest, converting them into
+   * {@code outputDirectory} as {@link BatchConversion} does.
+   */
+  static WatchConversion batch(
+      File input,
+      boolean manifest,
+      File outputDirectory,
+      String toType,
+      ConversionOptions options,
+      int parallelism,
+      ConversionStats stats,
+      ConversionCache cache,
+      Duration debounce)
+      throws IOException {
+    var root = BatchConversion.root(input, manifest);
+    // Outputs within the watched tree would be picked up as inputs in turn.
+    checkArgument(
+        root.isEmpty()
+            || !outputDirectory
+                .getAbsoluteFile()
+                .toPath()
+                .normalize()
+                .startsWith(root.get().toAbsolutePath().normalize()),
+        "Output directory must not be within the watched input! [%s]",
+        outputDirectory);
+    var manifestPath = outputDirectory.toPath().resolve(MANIFEST_NAME);
+    var conversion = new WatchConversion(
+        () -> BatchConversion.targets(input, manifest, outputDirectory, toType),
+        root,
+        options,
+        parallelism,
+        stats,
+        cache,
+        manifestPath,
+        debounce);
+    if (manifest) {
+      // Changes to the manifest itself add or remove inputs.
+      conversion.watch(input.getAbsoluteFile().toPath().getParent());
+    }
+    return conversion;
+  }
+
+  /** Watches a single input, converting it into {@code output}. */
+  static WatchConversion file(
+      File input,
+      File output,
+      ConversionOptions options,
+      ConversionStats stats,
+      ConversionCache cache,
+      Duration debounce)
+      throws IOException {
+    var outputPath = output.getAbsoluteFile().toPath();
+    return new WatchConversion(
+        () -> ImmutableMap.of(input, output),
+        Optional.empty(),
+        options,
+        1,
+        stats,
+        cache,
+        outputPath.resolveSibling("." + outputPath.getFileName() + MANIFEST_NAME),
+        debounce);
+  }
+
+  /**
+   * Converts the inputs that changed since the last round, or since they were last converted
+   * before a restart. Results are returned in input order, and only for the inputs converted.
+   */
+  ImmutableList<Result> convertChanged() throws IOException, InterruptedException {
+    var current = targets.resolve();
+    var changed = ImmutableMap.<File, File>builder();
+    var changedHashes = new HashMap<File, String>();
+    for (var entry : current.entrySet()) {
+      var input = entry.getKey();
+      var target = entry.getValue();
+      watch(input.getAbsoluteFile().toPath().getParent());
+      var found = FileState.of(input);
+      if (found.isEmpty()) {
+        // Deleted since the inputs were resolved, which the next round notices.
+        continue;
+      }
+      var state = found.get();
+      var previous = states.put(input, state);
+      var converted = hashes.containsKey(input);
+      // Failed inputs wait for a change, converted ones are only converted again if their output
+      // went missing. Files named by an event are hashed regardless, since a quick rewrite may
+      // keep both size and modification time within the resolution of the file system.
+      if (state.equals(previous)
+          && !touched.contains(absolute(input.toPath()))
+          && (!converted || target.exists())) {
+        continue;
+      }
+      var hash = MoreFiles.asByteSource(input.toPath()).hash(Hashing.sha256()).toString();
+      if (hash.equals(hashes.get(input)) && target.exists()) {
+        continue;
+      }
+      changed.put(input, target);
+      changedHashes.put(input, hash);
+    }
+
+    touched.clear();
+    var results =
+        BatchConversion.convert(changed.buildOrThrow(), options, parallelism, stats, cache);
+    var manifestChanged = hashes.keySet().retainAll(current.keySet());
+    states.keySet().retainAll(current.keySet());
+    for (var result : results) {
+      var input = result.input();
+      if (!FileState.of(input).equals(Optional.ofNullable(states.get(input)))) {
+        // Written to after it was hashed, so it may have been converted from other content than
+        // that of its hash. It is hashed and converted again in the next round instead.
+        hashes.remove(input);
+        states.remove(input);
+      } else if (result.succeeded()) {
+        hashes.put(input, changedHashes.get(input));
+      } else {
+        hashes.remove(input);
+      }
+      manifestChanged = true;
+    }
+    if (manifestChanged) {
+      writeManifest();
+    }
+    return results;
+  }
+
+  /**
+   * Blocks until an input may have changed. Returns once no further events came in for the
+   * debounce time, so that a burst of events makes for a single round.
+   */
+  void awaitChanges() throws IOException, InterruptedException {
+    var key = watchService.take();
+    while (key != null) {
+      handle(key);
+      key = watchService.poll(debounce.toNanos(), NANOSECONDS);
+    }
+  }
+
+  @Override
+  public void close() throws IOException {
+    watchService.close();
+  }
+
+  private void handle(WatchKey key) throws IOException {
+    for (var event : key.pollEvents()) {
+      if (!(key.watchable() instanceof Path directory && event.context() instanceof Path name)) {
+        continue;
+      }
+      var path = directory.resolve(name);
+      touched.add(absolute(path));
+      // Directories created within the watched tree are watched as well, along with their files.
+      if (root.isPresent() && event.kind() == ENTRY_CREATE && Files.isDirectory(path)) {
+        watchTree(path);
+      }
+    }
+    key.reset();
+  }
+
+  private static Path absolute(Path path) {
+    return path.toAbsolutePath().normalize();
+  }
+
+  private void watchTree(Path directory) throws IOException {
+    try (var paths = Files.walk(directory)) {
+      for (var path : paths.filter(Files::isDirectory).toList()) {
+        watch(path);
+      }
+    }
+  }
+
+  private void watch(Path directory) throws IOException {
+    if (watched.add(directory)) {
+      directory.register(watchService, ENTRY_CREATE, ENTRY_MODIFY, ENTRY_DELETE);
+    }
+  }
+
+  /**
+   * Reads the hashes of inputs as last converted, one {@code <hash>  <input>} line per input, as
+   * {@code sha256sum} writes them. A manifest written with other options is ignored.
+   */
+  private Map<File, String> readManifest() throws IOException {
+    var manifestHashes = new HashMap<File, String>();
+    if (!Files.isRegularFile(manifest)) {
+      return manifestHashes;
+    }
+    var lines = Files.readAllLines(manifest, UTF_8);
+    if (lines.isEmpty() || !lines.getFirst().equals(MANIFEST_HEADER + fingerprint)) {
+      return manifestHashes;
+    }
+    for (var line : lines.subList(1, lines.size())) {
+      var separator = line.indexOf(MANIFEST_SEPARATOR);
+      if (separator > 0) {
+        manifestHashes.put(
+            new File(line.substring(separator + MANIFEST_SEPARATOR.length())),
+            line.substring(0, separator));
+      }
+    }
+    return manifestHashes;
+  }
+
+  /** Replaces the manifest at once, so that an interrupted watch never leaves half of it. */
+  private void writeManifest() throws IOException {
+    var content = new StringBuilder(MANIFEST_HEADER).append(fingerprint).append('\n');
+    new TreeMap<>(hashes).forEach((input, hash) -> content
+        .append(hash)
+        .append(MANIFEST_SEPARATOR)
+        .append(input.getPath())
+        .append('\n'));
+    Files.createDirectories(manifest.toAbsolutePath().getParent());
+    var temporary = manifest.resolveSibling(manifest.getFileName() + ".tmp");
+    Files.writeString(temporary, content, UTF_8);
+    Files.move(temporary, manifest, REPLACE_EXISTING, ATOMIC_MOVE);
+  }
+}
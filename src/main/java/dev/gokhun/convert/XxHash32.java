@@ -0,0 +1,92 @@
+package dev.gokhun.convert;
+
+/**
+ * The 32 bit xxHash of a stream of bytes with a seed of zero, which LZ4 frames are checked with.
+ * Bytes are hashed in stripes of sixteen, so up to fifteen of them are held until more arrive.
+ */
+final class XxHash32 {
+  private static final int PRIME1 = 0x9E3779B1;
+  private static final int PRIME2 = 0x85EBCA77;
+  private static final int PRIME3 = 0xC2B2AE3D;
+  private static final int PRIME4 = 0x27D4EB2F;
+  private static final int PRIME5 = 0x165667B1;
+  private static final int STRIPE = 16;
+
+  private final byte[] pending = new byte[STRIPE];
+  private int pendingLength;
+  private long length;
+  private int v1 = PRIME1 + PRIME2;
+  private int v2 = PRIME2;
+  private int v3 = 0;
+  private int v4 = -PRIME1;
+
+  /** Returns the hash of a range of bytes. */
+  static int hash(byte[] bytes, int offset, int count) {
+    var hash = new XxHash32();
+    hash.update(bytes, offset, count);
+    return hash.value();
+  }
+
+  void update(byte[] bytes, int offset, int count) {
+    length += count;
+    var from = offset;
+    var end = offset + count;
+    if (pendingLength > 0) {
+      var copied = Math.min(end - from, STRIPE - pendingLength);
+      System.arraycopy(bytes, from, pending, pendingLength, copied);
+      pendingLength += copied;
+      from += copied;
+      if (pendingLength < STRIPE) {
+        return;
+      }
+      stripe(pending, 0);
+      pendingLength = 0;
+    }
+    for (; from <= end - STRIPE; from += STRIPE) {
+      stripe(bytes, from);
+    }
+    System.arraycopy(bytes, from, pending, 0, end - from);
+    pendingLength = end - from;
+  }
+
+  int value() {
+    var hash = length >= STRIPE
+        ? Integer.rotateLeft(v1, 1)
+            + Integer.rotateLeft(v2, 7)
+            + Integer.rotateLeft(v3, 12)
+            + Integer.rotateLeft(v4, 18)
+        : PRIME5;
+    hash += (int) length;
+    var at = 0;
+    for (; at + 4 <= pendingLength; at += 4) {
+      hash = Integer.rotateLeft(hash + intAt(pending, at) * PRIME3, 17) * PRIME4;
+    }
+    for (; at < pendingLength; at++) {
+      hash = Integer.rotateLeft(hash + (pending[at] & 0xFF) * PRIME5, 11) * PRIME1;
+    }
+    hash ^= hash >>> 15;
+    hash *= PRIME2;
+    hash ^= hash >>> 13;
+    hash *= PRIME3;
+    return hash ^ (hash >>> 16);
+  }
+
+  private void stripe(byte[] bytes, int offset) {
+    v1 = round(v1, intAt(bytes, offset));
+    v2 = round(v2, intAt(bytes, offset + 4));
+    v3 = round(v3, intAt(bytes, offset + 8));
+    v4 = round(v4, intAt(bytes, offset + 12));
+  }
+
+  private static int round(int accumulator, int input) {
+    return Integer.rotateLeft(accumulator + input * PRIME2, 13) * PRIME1;
+  }
+
+  /** Reads a little endian int, which is how LZ4 frames store their sizes and checksums too. */
+  static int intAt(byte[] bytes, int offset) {
+    return (bytes[offset] & 0xFF)
+        | (bytes[offset + 1] & 0xFF) << 8
+        | (bytes[offset + 2] & 0xFF) << 16
+        | (bytes[offset + 3] & 0xFF) << 24;
+  }
+}
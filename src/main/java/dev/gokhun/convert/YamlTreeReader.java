@@ -0,0 +1,243 @@
+package dev.gokhun.convert;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import dev.gokhun.convert.ConversionUtil.RecordSink;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigInteger;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+import org.yaml.snakeyaml.LoaderOptions;
+import org.yaml.snakeyaml.constructor.SafeConstructor;
+import org.yaml.snakeyaml.error.Mark;
+import org.yaml.snakeyaml.error.YAMLException;
+import org.yaml.snakeyaml.events.AliasEvent;
+import org.yaml.snakeyaml.events.Event;
+import org.yaml.snakeyaml.events.MappingStartEvent;
+import org.yaml.snakeyaml.events.NodeEvent;
+import org.yaml.snakeyaml.events.ScalarEvent;
+import org.yaml.snakeyaml.events.SequenceStartEvent;
+import org.yaml.snakeyaml.nodes.NodeId;
+import org.yaml.snakeyaml.nodes.ScalarNode;
+import org.yaml.snakeyaml.nodes.Tag;
+import org.yaml.snakeyaml.parser.Parser;
+import org.yaml.snakeyaml.parser.ParserImpl;
+import org.yaml.snakeyaml.reader.StreamReader;
+import org.yaml.snakeyaml.reader.UnicodeReader;
+import org.yaml.snakeyaml.resolver.Resolver;
+
+/**
+ * Builds JSON trees straight from YAML parser events, without composing a YAML node graph or
+ * constructing Java objects first. Scalars are resolved by SnakeYAML, so they keep the types they
+ * had when documents were loaded through it. Anchors, aliases and merge keys are resolved the same
+ * way as well: explicit keys win over merged ones, earlier merged mappings win over later ones, and
+ * keys keep the position they first appeared at.
+ *
+ * <p>The limits of {@link LoaderOptions} that SnakeYAML's composer enforces are enforced here as
+ * well: aliases to sequences and mappings are counted across the stream, so that documents whose
+ * aliases expand exponentially are rejected, and so is nesting deeper than the limit, which would
+ * otherwise overflow the stack of the recursive readers.
+ */
+final class YamlTreeReader {
+  private final LoaderOptions loaderOptions = new LoaderOptions();
+  private final Parser parser;
+  private final Resolver resolver = new Resolver();
+  private final ScalarConstructor constructor = new ScalarConstructor();
+  private final JsonNodeFactory factory = JsonNodeFactory.instance;
+  private final Map<String, JsonNode> anchors = new HashMap<>();
+  private int collectionAliases;
+  private int depth;
+
+  YamlTreeReader(InputStream in) {
+    this.parser = new ParserImpl(new StreamReader(new UnicodeReader(in)), loaderOptions);
+  }
+
+  /**
+   * Emits the elements of a top level sequence in the first document, or else every document, as
+   * records. A single document which is not a sequence is emitted as a document instead.
+   */
+  void read(RecordSink sink) throws IOException {
+    // Stream start
+    parser.getEvent();
+    JsonNode pending = null;
+    var documents = 0;
+    var streamedSequence = false;
+    while (!parser.checkEvent(Event.ID.StreamEnd)) {
+      // Document start, anchors are scoped to the document that defines them.
+      var documentStart = parser.getEvent();
+      if (streamedSequence) {
+        // Its elements were already emitted as records, which later documents would be mixed into.
+        throw error(
+            "a top level sequence can not be followed by other documents",
+            documentStart.getStartMark());
+      }
+      anchors.clear();
+      documents++;
+      if (pending != null) {
+        sink.accept(pending);
+        pending = null;
+      }
+      if (documents == 1 && parser.peekEvent() instanceof SequenceStartEvent start) {
+        // Top level sequences are streamed element by element and never built as a whole, so
+        // aliases to them are not supported.
+        parser.getEvent();
+        if (start.getAnchor() != null) {
+          throw error("top level sequences can not be aliased", start.getStartMark());
+        }
+        enterCollection();
+        while (!parser.checkEvent(Event.ID.SequenceEnd)) {
+          sink.accept(readValue());
+        }
+        parser.getEvent();
+        depth--;
+        streamedSequence = true;
+      } else if (documents == 1) {
+        pending = readValue();
+      } else {
+        sink.accept(readValue());
+      }
+      // Document end
+      parser.getEvent();
+    }
+    if (pending != null) {
+      sink.acceptDocument(pending);
+    }
+  }
+
+  /** Reads the value starting at the next event. */
+  private JsonNode readValue() {
+    var event = parser.getEvent();
+    if (event instanceof AliasEvent alias) {
+      var value = anchors.get(alias.getAnchor());
+      if (value == null) {
+        throw error("found undefined alias " + alias.getAnchor(), alias.getStartMark());
+      }
+      if (value.isContainerNode()
+          && ++collectionAliases > loaderOptions.getMaxAliasesForCollections()) {
+        throw new YAMLException("Number of aliases for non-scalar nodes exceeds the specified max="
+            + loaderOptions.getMaxAliasesForCollections());
+      }
+      // Every alias gets a tree of its own, so that changing one occurrence leaves others intact.
+      return value.deepCopy();
+    }
+    var value =
+        switch (event) {
+          case ScalarEvent scalar -> toNode(construct(scalar));
+          case SequenceStartEvent ignored -> readArray();
+          case MappingStartEvent ignored -> readObject();
+          default -> throw error("unexpected event " + event.getEventId(), event.getStartMark());
+        };
+    if (((NodeEvent) event).getAnchor() != null) {
+      anchors.put(((NodeEvent) event).getAnchor(), value);
+    }
+    return value;
+  }
+
+  private JsonNode readObject() {
+    enterCollection();
+    var object = factory.objectNode();
+    while (!parser.checkEvent(Event.ID.MappingEnd)) {
+      if (parser.peekEvent() instanceof ScalarEvent key && tag(key).equals(Tag.MERGE)) {
+        parser.getEvent();
+        merge(object, readValue(), key);
+      } else {
+        var key = readValue();
+        object.set(key.isValueNode() ? key.asText() : key.toString(), readValue());
+      }
+    }
+    parser.getEvent();
+    depth--;
+    return object;
+  }
+
+  private JsonNode readArray() {
+    enterCollection();
+    var array = factory.arrayNode();
+    while (!parser.checkEvent(Event.ID.SequenceEnd)) {
+      array.add(readValue());
+    }
+    parser.getEvent();
+    depth--;
+    return array;
+  }
+
+  private void enterCollection() {
+    if (++depth > loaderOptions.getNestingDepthLimit()) {
+      throw new YAMLException("Nesting Depth exceeded max " + loaderOptions.getNestingDepthLimit());
+    }
+  }
+
+  private void merge(ObjectNode object, JsonNode merged, ScalarEvent key) {
+    if (merged.isObject()) {
+      for (var field : merged.properties()) {
+        if (!object.has(field.getKey())) {
+          object.set(field.getKey(), field.getValue().deepCopy());
+        }
+      }
+    } else if (merged.isArray()) {
+      for (var element : merged) {
+        if (!element.isObject()) {
+          throw error("expected a mapping for merging", key.getStartMark());
+        }
+        merge(object, element, key);
+      }
+    } else {
+      throw error("expected a mapping or list of mappings for merging", key.getStartMark());
+    }
+  }
+
+  private Tag tag(ScalarEvent scalar) {
+    return scalar.getTag() == null || scalar.getTag().equals("!")
+        ? resolver.resolve(
+            NodeId.scalar, scalar.getValue(), scalar.getImplicit().canOmitTagInPlainScalar())
+        : new Tag(scalar.getTag());
+  }
+
+  private Object construct(ScalarEvent scalar) {
+    var tag = tag(scalar);
+    if (tag.equals(Tag.STR)) {
+      return scalar.getValue();
+    }
+    return constructor.construct(new ScalarNode(
+        tag,
+        scalar.getValue(),
+        scalar.getStartMark(),
+        scalar.getEndMark(),
+        scalar.getScalarStyle()));
+  }
+
+  private JsonNode toNode(Object value) {
+    return switch (value) {
+      case null -> factory.nullNode();
+      case String text -> factory.textNode(text);
+      case Boolean bool -> factory.booleanNode(bool);
+      case Integer number -> factory.numberNode(number);
+      case Long number -> factory.numberNode(number);
+      case BigInteger number -> factory.numberNode(number);
+      case Double number -> factory.numberNode(number);
+      case byte[] bytes -> factory.binaryNode(bytes);
+      // Jackson writes dates as epoch milliseconds by default.
+      case Date date -> factory.numberNode(date.getTime());
+      default -> factory.pojoNode(value);
+    };
+  }
+
+  /** Fails the same way as SnakeYAML does when it composes a document. */
+  private static YAMLException error(String problem, Mark mark) {
+    return new YAMLException(problem + "\n" + mark);
+  }
+
+  /** Exposes the scalar constructors of SnakeYAML without its per document object cache. */
+  private static final class ScalarConstructor extends SafeConstructor {
+    ScalarConstructor() {
+      super(new LoaderOptions());
+    }
+
+    Object construct(ScalarNode node) {
+      return getConstructor(node).construct(node);
+    }
+  }
+}
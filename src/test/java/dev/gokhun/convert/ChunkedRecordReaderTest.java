@@ -0,0 +1,176 @@
+package dev.gokhun.convert;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.Stream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.MethodSource;
+
+final class ChunkedRecordReaderTest {
+  private static final CsvMapper MAPPER = new CsvMapper();
+  private static final JsonMapper JSON_MAPPER = new JsonMapper();
+  private static final CsvSchema SCHEMA = CsvSchema.emptySchema().withHeader();
+
+  @TempDir
+  File directory;
+
+  @DisplayName("Should read the same records in the same order as a sequential reader")
+  @MethodSource("chunkSizeProvider")
+  @ParameterizedTest
+  void read1(int chunkSize) throws IOException {
+    var file = new File(directory, "input.csv");
+    var content = new StringBuilder("id,text,quote\n");
+    for (var i = 0; i < 200; i++) {
+      content.append(i).append(",\"multi\nline, ").append(i).append("\",\"say \"\"hi\"\"\"\r\n");
+      content.append(i).append(",plain,\n");
+    }
+    Files.writeString(file.toPath(), content, UTF_8);
+
+    assertThat(read(file, chunkSize, false)).containsExactlyElementsOf(sequential(file));
+  }
+
+  @DisplayName("Should split unquoted records on every line break")
+  @MethodSource("chunkSizeProvider")
+  @ParameterizedTest
+  void read2(int chunkSize) throws IOException {
+    var file = new File(directory, "input.ndjson");
+    var content = new StringBuilder();
+    for (var i = 0; i < 200; i++) {
+      content.append("{\"id\":").append(i).append(",\"text\":\"a \\\"quoted\\\" line\"}\n");
+    }
+    Files.writeString(file.toPath(), content, UTF_8);
+
+    var records = new ArrayList<JsonNode>();
+    new ChunkedRecordReader(
+            ForkJoinPool.commonPool(),
+            4,
+            chunkSize,
+            false,
+            Optional.empty(),
+            (chunk, sink) -> {
+              try (MappingIterator<JsonNode> it =
+                  JSON_MAPPER.readerFor(JsonNode.class).readValues(chunk)) {
+                while (it.hasNextValue()) {
+                  sink.accept(it.next());
+                }
+              }
+            },
+            (in, sink) -> {
+              throw new AssertionError("Should not read sequentially!");
+            })
+        .read(file, records::add);
+
+    try (MappingIterator<JsonNode> it = JSON_MAPPER.readerFor(JsonNode.class).readValues(file)) {
+      assertThat(records).containsExactlyElementsOf(it.readAll());
+    }
+  }
+
+  @DisplayName("Should read sequentially when a quote in an unquoted field leaves quotes unclear")
+  @MethodSource("chunkSizeProvider")
+  @ParameterizedTest
+  void read3(int chunkSize) throws IOException {
+    var file = new File(directory, "input.csv");
+    var content = new StringBuilder("id,text,quote\n");
+    for (var i = 0; i < 200; i++) {
+      content.append(i).append(",a 5\" pipe,b\n");
+      content.append(i).append(",\"multi\nline\",\"say \"\"hi\"\"\"\n");
+    }
+    Files.writeString(file.toPath(), content, UTF_8);
+
+    assertThat(read(file, chunkSize, true)).containsExactlyElementsOf(sequential(file));
+  }
+
+  @DisplayName("Should read sequentially when records are much longer than a chunk")
+  @Test
+  void read4() throws IOException {
+    var file = new File(directory, "input.csv");
+    var content = new StringBuilder("id,text\n");
+    for (var i = 0; i < 4; i++) {
+      content.append(i).append(",\"").append("long\n".repeat(50_000)).append("\"\n");
+      content.append(i).append(",short\n");
+    }
+    Files.writeString(file.toPath(), content, UTF_8);
+
+    assertThat(read(file, 64, true)).containsExactlyElementsOf(sequential(file));
+  }
+
+  @DisplayName("Should reject separators that quoted fields can not be told apart by")
+  @Test
+  void chunkedRecordReader1() {
+    assertThatThrownBy(() -> new ChunkedRecordReader(
+            ForkJoinPool.commonPool(),
+            4,
+            64,
+            true,
+            Optional.of('§'),
+            (chunk, sink) -> {},
+            (in, sink) -> {}))
+        .isInstanceOf(IllegalArgumentException.class)
+        .hasMessage("Separator of quoted fields must be a single byte other than a quote! [§]");
+  }
+
+  /**
+   * Reads a CSV file in chunks of the given size, checking whether it was read sequentially as
+   * expected.
+   */
+  private static List<JsonNode> read(File file, int chunkSize, boolean sequentially)
+      throws IOException {
+    var records = new ArrayList<JsonNode>();
+    var readSequentially = new AtomicBoolean();
+    new ChunkedRecordReader(
+            ForkJoinPool.commonPool(),
+            4,
+            chunkSize,
+            true,
+            Optional.of(','),
+            (chunk, sink) -> {
+              try (MappingIterator<JsonNode> it =
+                  MAPPER.readerFor(JsonNode.class).with(SCHEMA).readValues(chunk)) {
+                while (it.hasNextValue()) {
+                  sink.accept(it.next());
+                }
+              }
+            },
+            (in, sink) -> {
+              readSequentially.set(true);
+              try (MappingIterator<JsonNode> it =
+                  MAPPER.readerFor(JsonNode.class).with(SCHEMA).readValues(in)) {
+                while (it.hasNextValue()) {
+                  sink.accept(it.next());
+                }
+              }
+            })
+        .read(file, records::add);
+    assertThat(readSequentially.get()).isEqualTo(sequentially);
+    return records;
+  }
+
+  private static List<JsonNode> sequential(File file) throws IOException {
+    try (MappingIterator<JsonNode> it =
+        MAPPER.readerFor(JsonNode.class).with(SCHEMA).readValues(file)) {
+      return it.readAll();
+    }
+  }
+
+  private static Stream<Integer> chunkSizeProvider() {
+    return Stream.of(1, 7, 64, 1024, 1 << 20);
+  }
+}
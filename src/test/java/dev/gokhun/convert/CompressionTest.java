@@ -0,0 +1,304 @@
+package dev.gokhun.convert;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIOException;
+
+import com.google.common.util.concurrent.Uninterruptibles;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.Timeout;
+import org.junit.jupiter.api.io.TempDir;
+
+final class CompressionTest {
+  @TempDir
+  File directory;
+
+  @DisplayName("Should detect compression from compound extensions and magic bytes")
+  @Test
+  void detect1() throws IOException {
+    var gzipped = new File(directory, "data.csv");
+    Files.write(gzipped.toPath(), gzip("a,b\n1,2\n".getBytes(UTF_8)));
+    var plain = new File(directory, "plain.csv");
+    Files.writeString(plain.toPath(), "a,b\n1,2\n", UTF_8);
+
+    assertThat(Compression.fromFileName("data.csv.gz")).isEqualTo(Compression.GZIP);
+    assertThat(Compression.fromFileName("data.json.ZST")).isEqualTo(Compression.ZSTD);
+    assertThat(Compression.fromFileName("data.json.lz4")).isEqualTo(Compression.LZ4);
+    assertThat(Compression.fromFileName("data.csv")).isEqualTo(Compression.NONE);
+    assertThat(Compression.fileExtension("data.csv.gz")).isEqualTo("csv");
+    assertThat(Compression.fileExtension("data.tsv")).isEqualTo("tsv");
+    assertThat(Compression.of(gzipped.toPath())).isEqualTo(Compression.GZIP);
+    assertThat(Compression.of(plain.toPath())).isEqualTo(Compression.NONE);
+  }
+
+  @DisplayName("Should detect compression on the stream that is read, marked or not")
+  @Test
+  void detect2() throws IOException {
+    var csv = "a,b\n1,2\n".getBytes(UTF_8);
+    var gzipped = gzip(csv);
+
+    try (var in = Compression.decompressing(new ByteArrayInputStream(gzipped), "data.csv", 8)) {
+      assertThat(in.readAllBytes()).isEqualTo(csv);
+    }
+    // Channel streams, like those of named pipes, can not be marked and are read only once.
+    try (var in = Compression.decompressing(
+        Channels.newInputStream(Channels.newChannel(new ByteArrayInputStream(gzipped))),
+        "data.csv",
+        8)) {
+      assertThat(in.readAllBytes()).isEqualTo(csv);
+    }
+    try (var in = Compression.decompressing(
+        Channels.newInputStream(Channels.newChannel(new ByteArrayInputStream(csv))),
+        "data.csv",
+        8)) {
+      assertThat(in.readAllBytes()).isEqualTo(csv);
+    }
+    try (var in = Compression.decompressing(new ByteArrayInputStream(new byte[1]), "a.csv", 8)) {
+      assertThat(in.readAllBytes()).containsExactly(0);
+    }
+  }
+
+  @DisplayName("Should write gzip in blocks that read back as a whole")
+  @Test
+  void gzip1() throws IOException {
+    var bytes = new byte[ParallelGzipOutputStream.BLOCK_SIZE * 3 + 12345];
+    new Random(42).nextBytes(bytes);
+    for (var i = 0; i < bytes.length; i += 3) {
+      // Repetitions give deflate something to compress.
+      bytes[i] = 'x';
+    }
+
+    var compressed = new ByteArrayOutputStream();
+    try (var out = Compression.GZIP.compress(compressed)) {
+      out.write(bytes, 0, 100);
+      out.write(bytes[100]);
+      out.write(bytes, 101, bytes.length - 101);
+    }
+
+    try (var in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+      assertThat(in.readAllBytes()).isEqualTo(bytes);
+    }
+  }
+
+  @DisplayName("Should write empty output as valid gzip")
+  @Test
+  void gzip2() throws IOException {
+    var compressed = new ByteArrayOutputStream();
+    Compression.GZIP.compress(compressed).close();
+
+    try (var in = new GZIPInputStream(new ByteArrayInputStream(compressed.toByteArray()))) {
+      assertThat(in.readAllBytes()).isEmpty();
+    }
+  }
+
+  @DisplayName("Should inflate gzip ahead of the reader")
+  @Test
+  void gunzip1() throws IOException {
+    var bytes = new byte[5_000_000];
+    new Random(7).nextBytes(bytes);
+
+    try (var in = Compression.GZIP.decompress(new ByteArrayInputStream(gzip(bytes)), 8192)) {
+      assertThat(in.read()).isEqualTo(bytes[0] & 0xFF);
+      assertThat(in.readAllBytes()).isEqualTo(Arrays.copyOfRange(bytes, 1, bytes.length));
+      assertThat(in.read()).isEqualTo(-1);
+    }
+  }
+
+  @DisplayName("Should report failures of reading ahead to the reader")
+  @Test
+  void gunzip2() throws IOException {
+    var truncated = gzip(new byte[100_000]);
+    truncated = Arrays.copyOf(truncated, truncated.length / 2);
+
+    try (InputStream in = Compression.GZIP.decompress(new ByteArrayInputStream(truncated), 1024)) {
+      assertThatIOException().isThrownBy(in::readAllBytes);
+    }
+  }
+
+  @DisplayName("Should close without waiting for a source that ignores interrupts")
+  @Test
+  void gunzip3() throws IOException {
+    var release = new CountDownLatch(1);
+    var source = new InputStream() {
+      @Override
+      public int read() {
+        Uninterruptibles.awaitUninterruptibly(release);
+        return -1;
+      }
+    };
+
+    var closing = System.nanoTime();
+    new PipelinedInputStream(source, 1024).close();
+    release.countDown();
+
+    assertThat(Duration.ofNanos(System.nanoTime() - closing)).isLessThan(Duration.ofSeconds(10));
+  }
+
+  @DisplayName("Should hand any failure of reading ahead over to the reader instead of hanging")
+  @Test
+  @Timeout(10)
+  void gunzip4() throws IOException {
+    var source = new InputStream() {
+      private int remaining = 5000;
+
+      @Override
+      public int read() {
+        if (remaining-- == 0) {
+          throw new IllegalStateException("Corrupt block!");
+        }
+        return 'x';
+      }
+    };
+
+    try (var in = new PipelinedInputStream(source, 1024)) {
+      assertThatIOException()
+          .isThrownBy(in::readAllBytes)
+          .withMessage("Corrupt block!")
+          .withCauseInstanceOf(IllegalStateException.class);
+    }
+  }
+
+  @DisplayName("Should compress and decompress Zstandard, detected from its magic bytes")
+  @Test
+  void zstd1() throws IOException {
+    var bytes = compressible(3_000_000);
+
+    assertThat(roundTrip(Compression.ZSTD, bytes)).isEqualTo(bytes);
+    assertThat(roundTrip(Compression.ZSTD, new byte[0])).isEmpty();
+  }
+
+  @DisplayName("Should report malformed Zstandard to the reader")
+  @Test
+  void zstd2() throws IOException {
+    var compressed = compress(Compression.ZSTD, compressible(100_000));
+    compressed[compressed.length / 2] ^= 0x55;
+
+    try (var in = Compression.decompressing(new ByteArrayInputStream(compressed), 1024)) {
+      assertThatIOException().isThrownBy(in::readAllBytes);
+    }
+  }
+
+  @DisplayName("Should compress and decompress LZ4 frames, detected from their magic bytes")
+  @Test
+  void lz41() throws IOException {
+    var bytes = compressible(Lz4FrameOutputStream.BLOCK_SIZE * 2 + 12345);
+    var random = new byte[100_000];
+    new Random(3).nextBytes(random);
+
+    assertThat(roundTrip(Compression.LZ4, bytes)).isEqualTo(bytes);
+    // Blocks that do not compress are stored as they are.
+    assertThat(roundTrip(Compression.LZ4, random)).isEqualTo(random);
+    assertThat(roundTrip(Compression.LZ4, new byte[0])).isEmpty();
+    // An empty frame with the checksum of no content, as the lz4 command line tool writes it.
+    assertThat(compress(Compression.LZ4, new byte[0]))
+        .containsExactly(
+            0x04, 0x22, 0x4D, 0x18, 0x64, 0x70, 0xB9, 0, 0, 0, 0, 0x05, 0x5D, 0xCC, 0x02);
+  }
+
+  @DisplayName("Should read LZ4 frames in a row, with blocks that refer to the ones before")
+  @Test
+  void lz42() throws IOException {
+    var frames = new ByteArrayOutputStream();
+    // Version 1, linked blocks of up to 64 KiB and no checksums.
+    var descriptor = new byte[] {0x40, 0x40};
+    var frame = new ByteArrayOutputStream();
+    frame.writeBytes(new byte[] {0x04, 0x22, 0x4D, 0x18});
+    frame.writeBytes(descriptor);
+    frame.write(XxHash32.hash(descriptor, 0, descriptor.length) >>> 8);
+    // A block stored as it is, then one that copies it and ends with a literal.
+    frame.writeBytes(new byte[] {4, 0, 0, (byte) 0x80, 'a', 'b', 'c', 'd'});
+    frame.writeBytes(new byte[] {5, 0, 0, 0, 0x00, 4, 0, 0x10, 'e'});
+    frame.writeBytes(new byte[] {0, 0, 0, 0});
+    frames.writeBytes(frame.toByteArray());
+    // A skippable frame of three bytes.
+    frames.writeBytes(new byte[] {0x5A, 0x2A, 0x4D, 0x18, 3, 0, 0, 0, 1, 2, 3});
+    frames.writeBytes(frame.toByteArray());
+
+    try (var in = Compression.decompressing(new ByteArrayInputStream(frames.toByteArray()), 8)) {
+      assertThat(in.readAllBytes()).asString(UTF_8).isEqualTo("abcdabcdeabcdabcde");
+    }
+  }
+
+  @DisplayName("Should report malformed and truncated LZ4 to the reader")
+  @Test
+  void lz43() throws IOException {
+    var compressed = compress(Compression.LZ4, compressible(100_000));
+    var corrupt = compressed.clone();
+    corrupt[corrupt.length / 2] ^= 0x55;
+    var truncated = Arrays.copyOf(compressed, compressed.length - 3);
+
+    try (var in = Compression.decompressing(new ByteArrayInputStream(corrupt), 1024)) {
+      assertThatIOException().isThrownBy(in::readAllBytes).withMessageStartingWith("Malformed LZ4");
+    }
+    try (var in = Compression.decompressing(new ByteArrayInputStream(truncated), 1024)) {
+      assertThatIOException()
+          .isThrownBy(in::readAllBytes)
+          .withMessage("Unexpected end of LZ4 input!");
+    }
+  }
+
+  @DisplayName("Should hash streams of bytes as xxHash32 does, however they are split")
+  @Test
+  void xxHash1() {
+    var abc = "abc".getBytes(UTF_8);
+    var bytes = compressible(1000);
+    var hash = new XxHash32();
+    hash.update(bytes, 0, 7);
+    hash.update(bytes, 7, 30);
+    hash.update(bytes, 37, bytes.length - 37);
+
+    assertThat(XxHash32.hash(new byte[0], 0, 0)).isEqualTo(0x02CC5D05);
+    assertThat(XxHash32.hash(abc, 0, abc.length)).isEqualTo(0x32D153FF);
+    assertThat(hash.value()).isEqualTo(XxHash32.hash(bytes, 0, bytes.length));
+  }
+
+  private static byte[] compressible(int length) {
+    var bytes = new byte[length];
+    new Random(length).nextBytes(bytes);
+    for (var i = 0; i < bytes.length; i += 3) {
+      bytes[i] = 'x';
+      if (i + 1 < bytes.length) {
+        bytes[i + 1] = 'y';
+      }
+    }
+    return bytes;
+  }
+
+  private static byte[] compress(Compression compression, byte[] bytes) throws IOException {
+    var out = new ByteArrayOutputStream();
+    try (var compressing = compression.compress(out)) {
+      compressing.write(bytes);
+    }
+    return out.toByteArray();
+  }
+
+  /** Compresses bytes and decompresses them back, as compression detected on a stream. */
+  private static byte[] roundTrip(Compression compression, byte[] bytes) throws IOException {
+    var compressed = compress(compression, bytes);
+    try (var in = Compression.decompressing(new ByteArrayInputStream(compressed), 1024)) {
+      return in.readAllBytes();
+    }
+  }
+
+  private static byte[] gzip(byte[] bytes) throws IOException {
+    var out = new ByteArrayOutputStream();
+    try (var gzip = new GZIPOutputStream(out)) {
+      gzip.write(bytes);
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,237 @@
+package dev.gokhun.convert;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatExceptionOfType;
+
+import dev.gokhun.convert.ConversionUtil.ConversionOptions;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class ConversionCacheTest {
+  private static final ConversionOptions OPTIONS =
+      ConversionOptions.builder().setCsvSeparator(',').build();
+
+  @TempDir
+  Path cacheDirectory;
+
+  @TempDir
+  File directory;
+
+  private final AtomicInteger conversions = new AtomicInteger();
+
+  @DisplayName("Should copy the cached output of the same input instead of converting it")
+  @Test
+  void cache1() throws IOException {
+    var cache = ConversionCache.open(cacheDirectory, 1 << 20);
+    var input = write("a.json", "{\"a\":1}");
+    var first = new File(directory, "first.yaml");
+    var second = new File(directory, "second.yaml");
+
+    convert(cache, input, first, OPTIONS);
+    convert(cache, input, second, OPTIONS);
+
+    assertThat(conversions).hasValue(1);
+    assertThat(cache.hits()).isEqualTo(1);
+    assertThat(cache.misses()).isEqualTo(1);
+    assertThat(second).hasSameTextualContentAs(first);
+  }
+
+  @DisplayName("Should convert again when the input, the types or the options differ")
+  @Test
+  void cache2() throws IOException {
+    var cache = ConversionCache.open(cacheDirectory, 1 << 20);
+    var input = write("a.json", "{\"a\":1}");
+
+    convert(cache, input, new File(directory, "a.yaml"), OPTIONS);
+    convert(cache, input, new File(directory, "a.toml"), OPTIONS);
+    convert(
+        cache,
+        input,
+        new File(directory, "pretty.yaml"),
+        ConversionOptions.builder().setCsvSeparator(',').setPretty(true).build());
+    write("a.json", "{\"a\":2}");
+    convert(cache, input, new File(directory, "b.yaml"), OPTIONS);
+
+    assertThat(conversions).hasValue(4);
+    assertThat(cache.hits()).isZero();
+    assertThat(new File(directory, "b.yaml")).content(UTF_8).contains("a: 2");
+  }
+
+  @DisplayName("Should keep cached outputs across processes")
+  @Test
+  void cache3() throws IOException {
+    var input = write("a.json", "{\"a\":1}");
+    convert(
+        ConversionCache.open(cacheDirectory, 1 << 20),
+        input,
+        new File(directory, "a.yaml"),
+        OPTIONS);
+
+    var cache = ConversionCache.open(cacheDirectory, 1 << 20);
+    convert(cache, input, new File(directory, "b.yaml"), OPTIONS);
+
+    assertThat(conversions).hasValue(1);
+    assertThat(cache.hits()).isEqualTo(1);
+  }
+
+  @DisplayName("Should evict the least recently used outputs beyond the size of the cache")
+  @Test
+  void cache4() throws IOException {
+    var a = write("a.json", "{\"a\":1}");
+    var b = write("b.json", "{\"b\":1}");
+    var c = write("c.json", "{\"c\":1}");
+    var outputSize = convertedSize(a);
+    // Room for two outputs, so that the third one evicts the least recently used.
+    var cache = ConversionCache.open(cacheDirectory, 2 * outputSize + 1);
+
+    convert(cache, a, new File(directory, "a.yaml"), OPTIONS);
+    convert(cache, b, new File(directory, "b.yaml"), OPTIONS);
+    convert(cache, a, new File(directory, "a.yaml"), OPTIONS);
+    convert(cache, c, new File(directory, "c.yaml"), OPTIONS);
+    convert(cache, a, new File(directory, "a.yaml"), OPTIONS);
+    convert(cache, b, new File(directory, "b.yaml"), OPTIONS);
+
+    assertThat(cache.hits()).isEqualTo(2);
+    assertThat(cache.misses()).isEqualTo(4);
+  }
+
+  @DisplayName("Should convert every time when disabled")
+  @Test
+  void cache5() throws IOException {
+    var cache = ConversionCache.disabled();
+    var input = write("a.json", "{\"a\":1}");
+
+    convert(cache, input, new File(directory, "a.yaml"), OPTIONS);
+    convert(cache, input, new File(directory, "a.yaml"), OPTIONS);
+
+    assertThat(conversions).hasValue(2);
+    assertThat(cache.isEnabled()).isFalse();
+    assertThat(cacheDirectory).isEmptyDirectory();
+  }
+
+  @DisplayName("Should share outputs between options that only change how fast they are written")
+  @Test
+  void cache6() throws IOException {
+    var cache = ConversionCache.open(cacheDirectory, 1 << 20);
+    var input = write("a.json", "{\"a\":1}");
+
+    convert(cache, input, new File(directory, "a.yaml"), OPTIONS);
+    convert(
+        cache,
+        input,
+        new File(directory, "b.yaml"),
+        ConversionOptions.builder()
+            .setCsvSeparator(',')
+            .setBufferSize(512)
+            .setParallel(true)
+            .build());
+
+    assertThat(conversions).hasValue(1);
+    assertThat(cache.hits()).isEqualTo(1);
+  }
+
+  @DisplayName("Should delete temporary files left behind once they are stale")
+  @Test
+  void cache7() throws IOException {
+    var stale = cacheDirectory.resolve("0123.tmp");
+    var fresh = cacheDirectory.resolve("4567.tmp");
+    Files.writeString(stale, "stale", UTF_8);
+    Files.writeString(fresh, "fresh", UTF_8);
+    Files.setLastModifiedTime(stale, FileTime.from(Instant.now().minus(Duration.ofDays(1))));
+
+    ConversionCache.open(cacheDirectory, 1 << 20);
+
+    assertThat(stale).doesNotExist();
+    assertThat(fresh).exists();
+  }
+
+  @DisplayName("Should fail on a missing output directory instead of taking it as an eviction")
+  @Test
+  void cache8() throws IOException {
+    var cache = ConversionCache.open(cacheDirectory, 1 << 20);
+    var input = write("a.json", "{\"a\":1}");
+    convert(cache, input, new File(directory, "a.yaml"), OPTIONS);
+
+    assertThatExceptionOfType(NoSuchFileException.class)
+        .isThrownBy(() -> convert(cache, input, new File(directory, "missing/a.yaml"), OPTIONS));
+    convert(cache, input, new File(directory, "b.yaml"), OPTIONS);
+
+    assertThat(conversions).hasValue(1);
+    assertThat(cache.hits()).isEqualTo(1);
+  }
+
+  @DisplayName("Should not cache an output when the input is written to while it is converted")
+  @Test
+  void cache9() throws IOException {
+    var cache = ConversionCache.open(cacheDirectory, 1 << 20);
+    var input = write("a.json", "{\"a\":1}");
+    var modified = Files.getLastModifiedTime(input.toPath());
+    var first = new File(directory, "first.yaml");
+    var second = new File(directory, "second.yaml");
+
+    var expected = new File(directory, "expected.yaml");
+    ConversionUtil.convert(input, expected, OPTIONS);
+
+    cache.convert(input, first, OPTIONS, new ConversionStats(), () -> {
+      conversions.incrementAndGet();
+      write("a.json", "{\"a\":22}");
+      ConversionUtil.convert(input, first, OPTIONS);
+    });
+    write("a.json", "{\"a\":1}");
+    Files.setLastModifiedTime(input.toPath(), modified);
+    convert(cache, input, second, OPTIONS);
+
+    assertThat(conversions).hasValue(2);
+    assertThat(cache.hits()).isZero();
+    assertThat(second).hasSameTextualContentAs(expected);
+  }
+
+  @DisplayName("Should add the bytes of a cache hit to the stats")
+  @Test
+  void cache10() throws IOException {
+    var cache = ConversionCache.open(cacheDirectory, 1 << 20);
+    var input = write("a.json", "{\"a\":1}");
+    var output = new File(directory, "a.yaml");
+    convert(cache, input, new File(directory, "first.yaml"), OPTIONS);
+    var stats = new ConversionStats();
+
+    cache.convert(input, output, OPTIONS, stats, conversions::incrementAndGet);
+
+    assertThat(conversions).hasValue(1);
+    assertThat(stats.cacheHits()).isEqualTo(1);
+    assertThat(stats.bytesIn()).isEqualTo(input.length());
+    assertThat(stats.bytesOut()).isEqualTo(output.length());
+    assertThat(stats.records()).isZero();
+  }
+
+  private void convert(ConversionCache cache, File input, File output, ConversionOptions options)
+      throws IOException {
+    cache.convert(input, output, options, new ConversionStats(), () -> {
+      conversions.incrementAndGet();
+      ConversionUtil.convert(input, output, options);
+    });
+  }
+
+  private long convertedSize(File input) throws IOException {
+    var output = new File(directory, "size.yaml");
+    ConversionUtil.convert(input, output, OPTIONS);
+    return output.length();
+  }
+
+  private File write(String name, String content) throws IOException {
+    var file = new File(directory, name);
+    Files.writeString(file.toPath(), content, UTF_8);
+    return file;
+  }
+}
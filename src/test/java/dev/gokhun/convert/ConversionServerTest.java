@@ -0,0 +1,219 @@
+package dev.gokhun.convert;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+final class ConversionServerTest {
+  private static final JsonMapper MAPPER = new JsonMapper();
+  // Below the amount the server drains from unread bodies, so that rejected requests do not reset
+  // their connections before the client reads the response.
+  private static final int MAX_REQUEST_SIZE = 16 << 10;
+  private static ConversionServer server;
+  private static HttpClient client;
+
+  @BeforeAll
+  static void setUp() throws IOException {
+    server = ConversionServer.start(0, MAX_REQUEST_SIZE);
+    client = HttpClient.newHttpClient();
+  }
+
+  @AfterAll
+  static void tearDown() {
+    client.close();
+    server.close();
+  }
+
+  @DisplayName("Should convert posted input")
+  @Test
+  void convert1() throws IOException, InterruptedException {
+    var response = post("?from=yaml&to=json", resource("yaml/mini1.yaml"));
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(response.headers().firstValue("Content-Type"))
+        .hasValue("application/json; charset=utf-8");
+    assertThat(response.body()).isEqualTo(resource("json/mini1.json"));
+  }
+
+  @DisplayName("Should convert with options given as query parameters")
+  @Test
+  void convert2() throws IOException, InterruptedException {
+    var response = post("?from=json&to=json&pretty=true", resource("json/mini1.json"));
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(response.body()).isEqualTo(resource("json/pretty1.json"));
+  }
+
+  @DisplayName("Should convert concurrent requests")
+  @Test
+  void convert3() throws IOException {
+    var input = resource("csv/oscars.csv");
+    var responses = new ArrayList<CompletableFuture<HttpResponse<byte[]>>>();
+    for (var i = 0; i < 32; i++) {
+      responses.add(
+          client.sendAsync(request("?from=csv&to=tsv", input), BodyHandlers.ofByteArray()));
+    }
+
+    var expected = resource("tsv/oscars.tsv");
+    for (var response : responses) {
+      assertThat(response.join().statusCode()).isEqualTo(200);
+      assertThat(response.join().body()).isEqualTo(expected);
+    }
+  }
+
+  @DisplayName("Should take every predicate and selection given, with unencoded operators")
+  @Test
+  void convert4() throws IOException, InterruptedException {
+    var input = """
+        [{"id": 1, "name": "Ada", "age": 36, "city": "London"},
+         {"id": 2, "name": "Bob", "age": 17, "city": "Paris"},
+         {"id": 3, "name": "Cy", "age": 18, "city": "Rome"}]
+        """;
+
+    var response = post(
+        "?from=json&to=json&where=age%3E=18&where=name!=Cy&select=id&select=name,age",
+        input.getBytes(UTF_8));
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(MAPPER.readTree(response.body()))
+        .isEqualTo(MAPPER.readTree("[{\"id\": 1, \"name\": \"Ada\", \"age\": 36}]"));
+  }
+
+  @DisplayName("Should stream output in chunks as it is converted")
+  @Test
+  void convert5() throws IOException, InterruptedException {
+    var input = new StringBuilder("[");
+    for (var i = 0; i < 1000; i++) {
+      input.append(i == 0 ? "" : ",").append("{\"id\": ").append(i).append('}');
+    }
+    input.append(']');
+
+    var response = post("?from=json&to=ndjson", input.toString().getBytes(UTF_8));
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(response.headers().firstValue("Transfer-Encoding")).hasValue("chunked");
+    assertThat(response.headers().firstValue("Content-Length")).isEmpty();
+    assertThat(new String(response.body(), UTF_8).lines()).hasSize(1000);
+  }
+
+  @DisplayName("Should drop the connection when a conversion fails after output started")
+  @Test
+  void convert6() {
+    var input = new StringBuilder("[");
+    for (var i = 0; i < 1000; i++) {
+      input.append("{\"id\": ").append(i).append("},");
+    }
+    input.append('{');
+
+    assertThatThrownBy(() -> post("?from=json&to=ndjson", input.toString().getBytes(UTF_8)))
+        .isInstanceOf(IOException.class);
+  }
+
+  @DisplayName("Should quote every text cell when asked to always quote")
+  @Test
+  void convert7() throws IOException, InterruptedException {
+    var response = post("?from=csv&to=tsv&csv-always-quote=true", resource("csv/oscars.csv"));
+
+    assertThat(response.statusCode()).isEqualTo(200);
+    assertThat(response.body()).isEqualTo(resource("tsv/oscars-quoted.tsv"));
+  }
+
+  @DisplayName("Should reject bad requests")
+  @Test
+  void badRequest1() throws IOException, InterruptedException {
+    var unsupported = post("?from=xml&to=json", new byte[0]);
+    var missing = post("?from=json", new byte[0]);
+    var unknown = post("?from=json&to=yaml&colors=true", new byte[0]);
+    var repeated = post("?from=json&to=yaml&pretty=true&pretty=false", new byte[0]);
+    var malformed = post("?from=json&to=yaml", "{".getBytes(UTF_8));
+
+    assertThat(unsupported.statusCode()).isEqualTo(400);
+    assertThat(new String(unsupported.body(), UTF_8)).isEqualTo("Unsupported file type! [xml]");
+    assertThat(missing.statusCode()).isEqualTo(400);
+    assertThat(unknown.statusCode()).isEqualTo(400);
+    assertThat(new String(unknown.body(), UTF_8)).isEqualTo("Unknown option! [colors]");
+    assertThat(repeated.statusCode()).isEqualTo(400);
+    assertThat(new String(repeated.body(), UTF_8))
+        .isEqualTo("Option is given more than once! [pretty]");
+    assertThat(malformed.statusCode()).isEqualTo(400);
+  }
+
+  @DisplayName("Should reject options that are not numbers with a message of their own")
+  @Test
+  void badRequest3() throws IOException, InterruptedException {
+    var response = post("?from=json&to=csv&csv-header-sample=all", "[]".getBytes(UTF_8));
+
+    assertThat(response.statusCode()).isEqualTo(400);
+    assertThat(new String(response.body(), UTF_8))
+        .isEqualTo("Option must be a number! [csv-header-sample=all]");
+  }
+
+  @DisplayName("Should reject request bodies larger than the limit, with or without a length")
+  @Test
+  void badRequest4() throws IOException, InterruptedException {
+    var input = "{\"a\": \"%s\"}".formatted("x".repeat(MAX_REQUEST_SIZE)).getBytes(UTF_8);
+
+    var sized = post("?from=json&to=csv", input);
+    var streamed = client.send(
+        HttpRequest.newBuilder(URI.create(server.uri() + "?from=json&to=csv"))
+            .POST(BodyPublishers.ofInputStream(() -> new ByteArrayInputStream(input)))
+            .build(),
+        BodyHandlers.ofByteArray());
+
+    for (var response : List.of(sized, streamed)) {
+      assertThat(response.statusCode()).isEqualTo(413);
+      assertThat(new String(response.body(), UTF_8))
+          .isEqualTo("Request body is larger than 16384 bytes!");
+    }
+  }
+
+  @DisplayName("Should only accept posts to the conversion path")
+  @Test
+  void badRequest2() throws IOException, InterruptedException {
+    var get =
+        client.send(HttpRequest.newBuilder(server.uri()).GET().build(), BodyHandlers.ofByteArray());
+    var other = client.send(
+        HttpRequest.newBuilder(server.uri().resolve("/other"))
+            .POST(BodyPublishers.noBody())
+            .build(),
+        BodyHandlers.ofByteArray());
+
+    assertThat(get.statusCode()).isEqualTo(405);
+    assertThat(get.headers().firstValue("Allow")).hasValue("POST");
+    assertThat(other.statusCode()).isEqualTo(404);
+  }
+
+  private static HttpResponse<byte[]> post(String query, byte[] body)
+      throws IOException, InterruptedException {
+    return client.send(request(query, body), BodyHandlers.ofByteArray());
+  }
+
+  private static HttpRequest request(String query, byte[] body) {
+    return HttpRequest.newBuilder(URI.create(server.uri() + query))
+        .POST(BodyPublishers.ofByteArray(body))
+        .build();
+  }
+
+  private static byte[] resource(String name) throws IOException {
+    return Files.readAllBytes(Path.of("src/test/resources", name));
+  }
+}
@@ -6,22 +6,42 @@
 import static dev.gokhun.convert.ConversionUtil.FileType.JSON;
 import static dev.gokhun.convert.ConversionUtil.FileType.PROPERTIES;
 import static dev.gokhun.convert.ConversionUtil.FileType.TOML;
+import static dev.gokhun.convert.ConversionUtil.FileType.TSV;
 import static dev.gokhun.convert.ConversionUtil.FileType.YAML;
 import static java.lang.Character.LINE_SEPARATOR;
 import static java.lang.Character.SPACE_SEPARATOR;
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.catchThrowable;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.MappingIterator;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
 import com.google.common.collect.ImmutableSet;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Stream;
 import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 import org.junit.jupiter.params.provider.ValueSource;
 
 final class ConversionUtilTest {
+  private static final ConversionOptions OPTIONS =
+      ConversionOptions.builder().setCsvSeparator(',').build();
 
   @DisplayName("Should return correct type for file extension")
   @MethodSource("validFileExtensionProvider")
@@ -52,6 +72,199 @@ void invalidCsvSeparator1(char csvSeparator) {
             .isEqualTo("CSV separator can not be blank or whitespace!"));
   }
 
+  @DisplayName("Should write CSV records while the input is still being read")
+  @Test
+  void streamCsv1() throws IOException {
+    var rows = 100_000;
+    var out = new ByteArrayOutputStream();
+    var writtenBeforeEnd = new AtomicInteger(-1);
+    var in = new InputStream() {
+      private byte[] line = "id,name\n".getBytes(UTF_8);
+      private int position;
+      private int row;
+
+      @Override
+      public int read() {
+        if (position == line.length) {
+          if (row == rows) {
+            writtenBeforeEnd.compareAndSet(-1, out.size());
+            return -1;
+          }
+          row++;
+          line = "%d,name %d\n".formatted(row, row).getBytes(UTF_8);
+          position = 0;
+        }
+        return line[position++];
+      }
+    };
+
+    ConversionUtil.convert(in, CSV, out, JSON, OPTIONS);
+
+    // A tree of all records would only be written once the input is read to its end.
+    assertThat(writtenBeforeEnd.get()).isPositive();
+    var records = new JsonMapper().readTree(out.toByteArray());
+    assertThat(records).hasSize(rows);
+    assertThat(records.get(rows - 1).get("name").asText()).isEqualTo("name 100000");
+  }
+
+  @DisplayName("Should convert empty and header only CSV into an empty array")
+  @ParameterizedTest
+  @ValueSource(strings = {"", "id,name", "id,name\n"})
+  void streamCsv2(String csv) throws IOException {
+    var out = new ByteArrayOutputStream();
+
+    ConversionUtil.convert(new ByteArrayInputStream(csv.getBytes(UTF_8)), CSV, out, JSON, OPTIONS);
+
+    assertThat(out.toString(UTF_8)).isEqualTo("[]");
+  }
+
+  @DisplayName("Should take the CSV header from every record of a stream, without a file to rescan")
+  @Test
+  void streamCsv3() throws IOException {
+    var options = ConversionOptions.builder().setCsvSeparator(',').setCsvHeaderSample(0).build();
+    var out = new ByteArrayOutputStream();
+
+    ConversionUtil.convert(
+        new ByteArrayInputStream("[{\"a\": 1}, {\"a\": 2}, {\"b\": \"x\"}]".getBytes(UTF_8)),
+        JSON,
+        out,
+        CSV,
+        options);
+
+    assertThat(out.toString(UTF_8)).isEqualTo("a,b\n1,\n2,\n,x\n");
+  }
+
+  @DisplayName("Should read CSV cells as text, in column order, keeping the last duplicate")
+  @Test
+  void readCsv1() throws IOException {
+    var records = CSV.reader(OPTIONS).read(new ByteArrayInputStream("""
+        b,a,b,c
+        1,true,x,
+        "2, ""quoted""\",null,"line
+        break",3.5
+        """.getBytes(UTF_8)));
+
+    assertThat(records).isEqualTo(new JsonMapper().readTree("""
+        [{"b": "x", "a": "true", "c": ""},
+         {"b": "line\\nbreak", "a": "null", "c": "3.5"}]
+        """));
+    assertThat(records.get(0).fieldNames()).toIterable().containsExactly("b", "a", "c");
+  }
+
+  @DisplayName("Should read CSV into the same records as mapping rows with Jackson")
+  @MethodSource("readCsvProvider")
+  @ParameterizedTest
+  void readCsv2(FileType fileType, String csv) throws IOException {
+    var separator = fileType == CSV ? ',' : '\t';
+    JsonNode expected;
+    try (MappingIterator<LinkedHashMap<String, String>> it = new CsvMapper()
+        .readerFor(new TypeReference<LinkedHashMap<String, String>>() {})
+        .with(CsvSchema.emptySchema().withHeader().withColumnSeparator(separator))
+        .readValues(csv.getBytes(UTF_8))) {
+      var rows = JsonNodeFactory.instance.arrayNode();
+      it.readAll().forEach(row -> rows.add(new JsonMapper().valueToTree(row)));
+      expected = rows;
+    }
+
+    assertThat(fileType.reader(OPTIONS).read(new ByteArrayInputStream(csv.getBytes(UTF_8))))
+        .isEqualTo(expected);
+  }
+
+  @DisplayName("Should reject CSV rows longer than the header as mapping rows with Jackson does")
+  @Test
+  void readCsv3() {
+    var csv = "a,b\n1,2\n3,4,5\n";
+    var mapped = catchThrowable(() -> new CsvMapper()
+        .readerFor(new TypeReference<LinkedHashMap<String, String>>() {})
+        .with(CsvSchema.emptySchema().withHeader())
+        .readValues(new ByteArrayInputStream(csv.getBytes(UTF_8)))
+        .readAll());
+
+    assertThatThrownBy(
+            () -> CSV.reader(OPTIONS).read(new ByteArrayInputStream(csv.getBytes(UTF_8))))
+        .isInstanceOf(mapped.getClass())
+        .hasMessage(mapped.getMessage());
+  }
+
+  private static Stream<Arguments> readCsvProvider() {
+    return Stream.of(
+        arguments(CSV, "a,b,c\n1,2,3\n4,5,6\n"),
+        arguments(CSV, "a,b,c\n1\n2,3\n\n4,5,6"),
+        arguments(CSV, "a,a,b\n1,2,3\n4,,\n"),
+        arguments(CSV, "a,b\n\"1\n2\",\"3,\"\"4\"\"\"\n"),
+        arguments(CSV, "a,b\r\n1,2\r\n"),
+        arguments(TSV, "a\tb\tc\n1\t2\n3\t\t\"4\t5\"\n"),
+        arguments(TSV, "a\ta\n1\t2\n"));
+  }
+
+  @DisplayName("Should copy tokens only from JSON into JSON, YAML and TOML, as records are read")
+  @Test
+  void copyTokens1() {
+    var copying = ImmutableSet.of(List.of(JSON, JSON), List.of(JSON, YAML), List.of(JSON, TOML));
+    for (var from : FileType.values()) {
+      for (var to : FileType.values()) {
+        assertThat(ConversionUtil.copiesTokens(from, to, OPTIONS))
+            .as("%s to %s", from, to)
+            .isEqualTo(copying.contains(List.of(from, to)));
+      }
+    }
+    assertThat(ConversionUtil.copiesTokens(
+            JSON, JSON, ConversionOptions.builder().setCsvSeparator(',').setPretty(true).build()))
+        .isTrue();
+    assertThat(ConversionUtil.copiesTokens(
+            JSON,
+            JSON,
+            ConversionOptions.builder().setCsvSeparator(',').setDeduplicateKeys(true).build()))
+        .isFalse();
+    assertThat(ConversionUtil.copiesTokens(
+            JSON, YAML, ConversionOptions.builder().setCsvSeparator(',').setFlatten(true).build()))
+        .isFalse();
+    assertThat(ConversionUtil.copiesTokens(
+            JSON,
+            YAML,
+            ConversionOptions.builder().setCsvSeparator(',').setYamlDocuments(true).build()))
+        .isFalse();
+  }
+
+  @DisplayName("Should copy tokens into the same output as writing the tree read")
+  @MethodSource("copyTokensProvider")
+  @ParameterizedTest
+  void copyTokens2(String json, FileType to, boolean pretty) throws IOException {
+    var options = ConversionOptions.builder().setCsvSeparator(',').setPretty(pretty).build();
+    var copied = new ByteArrayOutputStream();
+    var written = new ByteArrayOutputStream();
+
+    ConversionUtil.convert(
+        new ByteArrayInputStream(json.getBytes(UTF_8)), JSON, copied, to, options);
+    to.writer(options)
+        .write(written, JSON.reader(options).read(new ByteArrayInputStream(json.getBytes(UTF_8))));
+
+    assertThat(ConversionUtil.copiesTokens(JSON, to, options)).isTrue();
+    assertThat(copied.toString(UTF_8)).isEqualTo(written.toString(UTF_8));
+  }
+
+  private static Stream<Arguments> copyTokensProvider() {
+    var records = """
+        [{"int": 1, "negative": -42, "big": 123456789012345678901234567890, "decimal": 1.10,
+          "exponent": 6.02e23, "null": null, "bool": true,
+          "text": "a \\"quoted\\" \\u00e9 line\\n"},
+         {"nested": [[1, 2], [], [[null]]], "object": {"a": {"b": [1.5, "x"]}}},
+         [], 7, "text", null]
+        """;
+    // TOML has no nulls and needs a table at the top.
+    var table = """
+        {"int": 1, "big": 12345678901234567890, "decimal": 1.10, "exponent": 6.02e23,
+         "text": "a \\"quoted\\" \\u00e9", "nested": [[1, 2], [3]], "table": {"a": {"b": true}}}
+        """;
+    return Stream.of(
+        arguments(records, JSON, false),
+        arguments(records, JSON, true),
+        arguments(records, YAML, false),
+        arguments(table, TOML, false),
+        arguments("{}", JSON, true),
+        arguments("[]", YAML, false));
+  }
+
   private static Stream<Arguments> validFileExtensionProvider() {
     return Stream.of(
         arguments(CSV, ImmutableSet.of("CSV", "csv", "cSV", "csV")),
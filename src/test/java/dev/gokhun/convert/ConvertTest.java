@@ -5,19 +5,32 @@
 import static org.assertj.core.api.Assertions.assertThat;
 import static org.junit.jupiter.params.provider.Arguments.arguments;
 import static picocli.CommandLine.ExitCode.OK;
+import static picocli.CommandLine.ExitCode.SOFTWARE;
 import static picocli.CommandLine.ExitCode.USAGE;
 
+import com.fasterxml.jackson.databind.json.JsonMapper;
 import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
+import dev.gokhun.convert.ConversionUtil.ConversionOptions;
+import dev.gokhun.convert.ConversionUtil.StandardStreams;
 import dev.gokhun.convert.Convert.ExecutionExceptionHandler;
 import dev.gokhun.convert.Convert.SystemManager;
 import java.io.BufferedWriter;
+import java.io.ByteArrayInputStream;
 import java.io.ByteArrayOutputStream;
 import java.io.File;
+import java.io.IOException;
 import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
 import org.junit.jupiter.api.DisplayName;
 import org.junit.jupiter.api.Nested;
 import org.junit.jupiter.api.Test;
@@ -25,6 +38,7 @@
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
 import picocli.CommandLine;
 import picocli.CommandLine.IExecutionExceptionHandler;
 
@@ -63,23 +77,82 @@ void help1() {
     assertThat(systemManager.getOutput()).isEmpty();
     assertThat(systemManager.getError()).isEqualToNormalizingNewlines("""
 Missing required options: '--input=<input>', '--output=<output>'
-Usage: convert [-hV] [--deduplicate-keys] [--indent-yaml] [--minimize-yaml-quotes] [--pretty] -f=<input> -o=<output>
-               [-s=<csvSeparator>]
+Usage: convert [-hV] [--csv-always-quote] [--deduplicate-keys] [--expand-keys] [--flatten] [--indent-yaml] [--manifest]
+               [--minimize-yaml-quotes] [--parallel] [--pretty] [--typed-csv] [--unflatten] [--watch]
+               [--yaml-documents] [--stats[=<format>]] [--buffer-size=<bufferSize>] [--cache-dir=<cacheDirectory>]
+               [--cache-size=<cacheSize>] [--csv-header-sample=<csvHeaderSample>] [-f=<input>] [--from-type=<fromType>]
+               [-o=<output>] [--parallelism=<parallelism>] [-s=<csvSeparator>] [--to-type=<toType>]
+               [--csv-column-types=<column=type>[,<column=type>...]]... [--select=<path>[,<path>...]]...
+               [--where=<predicate>]... [COMMAND]
 Converts one file type to another.
-  -h, --help               Show this help message and exit.
-  -V, --version            Print version information and exit.
+  -h, --help                Show this help message and exit.
+  -V, --version             Print version information and exit.
   -f, -i, --from, --input=<input>
-                           File to convert from.
+                            File to convert from, or '-' for the standard input. Gzip, Zstandard and LZ4 input is
+                              decompressed, whether named *.gz, *.zst or *.lz4 or not.
   -o, -t, --to, --output=<output>
-                           File to convert into.
+                            File to convert into, or '-' for the standard output. Output named *.gz, *.zst or *.lz4 is
+                              compressed by gzip, Zstandard or LZ4.
   -s, --csv-separator=<csvSeparator>
-                           Character(s) to separate CSV columns. Default value is ','.
-      --pretty             Prettify output if possible. Default is false and output is minimized.
-      --indent-yaml        Indents YAML array fields. Default is true.
+                            Character(s) to separate CSV columns. Default value is ','.
+      --pretty              Prettify output if possible. Default is false and output is minimized.
+      --indent-yaml         Indents YAML array fields. Default is true.
       --minimize-yaml-quotes
-                           Minimizes YAML quotes if possible. Default is true.
-      --deduplicate-keys   Think csv but as json. Only available on conversions where the initial source is array. Keys
-                             are arrays and values are arrays of arrays.
+                            Minimizes YAML quotes if possible. Default is true.
+      --deduplicate-keys    Think csv but as json. Only available on conversions where the initial source is array.
+                              Keys are arrays and values are arrays of arrays.
+      --from-type=<fromType>
+                            File type to convert from, e.g. json, instead of the one of the input file. Required when
+                              input is '-' for the standard input.
+      --to-type=<toType>    File type to convert into, e.g. json, instead of the one of the output file. Required when
+                              output is '-' for the standard output, and in batch mode, which is used when input is a
+                              directory, a glob pattern or a manifest.
+      --manifest            Treat input as a manifest that lists one file to convert per line.
+      --parallelism=<parallelism>
+                            Maximum number of files to convert at once in batch mode. Default is one virtual thread per
+                              file.
+      --parallel            Parse large CSV, TSV and NDJSON inputs in chunks on all cores. Default is false.
+      --buffer-size=<bufferSize>
+                            Size of file I/O buffers in bytes. Default is 65536.
+      --yaml-documents      Write YAML output as a stream of documents, one per record, instead of a single array.
+                              Default is false.
+      --expand-keys         Read input written with --deduplicate-keys back into one record per array of values.
+                              Default is false.
+      --csv-header-sample=<csvHeaderSample>
+                            Number of records whose fields make up the CSV header. Zero takes the fields of all
+                              records, scanning the input once before converting it. Standard input is spooled to a
+                              temporary file for that. Default is 1.
+      --typed-csv           Read CSV and TSV cells as numbers, booleans and nulls where their column allows it, instead
+                              of as text. Default is false.
+      --csv-column-types=<column=type>[,<column=type>...]
+                            Types of CSV and TSV columns to read, one of string, number or boolean. Other columns are
+                              typed after their first value. Implies --typed-csv.
+      --csv-always-quote    Quote every text cell and column name of CSV and TSV output, instead of only those that
+                              need quotes. Default is false.
+      --stats[=<format>]    Print where the time of the conversion went, bytes and records converted, peak heap and GC
+                              time to the standard error, as text or json.
+      --watch               Keep converting the input whenever it changes, until interrupted. Only files whose content
+                              changed since they were last converted are converted again, also across restarts. Default
+                              is false.
+      --cache-dir=<cacheDirectory>
+                            Directory to cache outputs in, keyed by the content of the input, the file types and the
+                              options. Converting the same input the same way again copies the cached output instead.
+                              Standard streams are not cached.
+      --cache-size=<cacheSize>
+                            Maximum size of the cache in bytes, beyond which the least recently used outputs are
+                              evicted. Default is 1073741824.
+      --flatten             Flatten nested records into columns named by their path, such as user.name and tags[0], so
+                              that they can be written as CSV. Default is false.
+      --unflatten           Nest columns named by their path, as written with --flatten, back into objects and arrays.
+                              Default is false.
+      --select=<path>[,<path>...]
+                            Values to keep of every record, as JSON Pointers such as /user/name or as column names.
+                              Values that are not kept are skipped while reading JSON, without being built.
+      --where=<predicate>   Keep only records whose value, named as in --select, compares to a literal with =, !=, <,
+                              <=, > or >=, such as age>=18. May be repeated, all must match.
+Commands:
+  serve  Serves conversions over HTTP on the loopback interface, from a single warmed up process. Input is posted to
+           /convert?from=<type>&to=<type>, options are given as further query parameters, e.g. pretty=true.
 """);
   }
 
@@ -95,6 +168,7 @@ final class ConversionTests {
       "fromPropertiesProvider",
       "fromTomlProvider",
       "fromYamlProvider",
+      "yamlAnchorsProvider",
       "minimalInputProvider"
     })
     @ParameterizedTest
@@ -149,6 +223,12 @@ private static Stream<Arguments> fromYamlProvider() {
 
       return outputs.stream().map(output -> toArguments("yaml/fromyaml.yaml", output));
     }
+
+    private static Stream<Arguments> yamlAnchorsProvider() {
+      return Stream.of(
+          toArguments("yaml/anchors.yaml", "json/fromanchors.json"),
+          toArguments("yaml/multidocument.yaml", "json/frommultidocument.json"));
+    }
   }
 
   @SuppressWarnings("ClassCanBeStatic")
@@ -192,6 +272,35 @@ void fromJson2() {
       assertThat(systemManager.getExitStatus()).isEqualTo(OK);
       assertThat(new File(output)).hasSameTextualContentAs(new File(expected));
     }
+
+    @DisplayName("Should keep options apart when converting concurrently")
+    @Test
+    void fromJson3() throws InterruptedException, ExecutionException {
+      var input = new File(getTestResourcePath("json/mini1.json"));
+      var futures = new ArrayList<Future<?>>();
+      try (var executor = Executors.newFixedThreadPool(4)) {
+        for (var i = 0; i < 32; i++) {
+          var pretty = i % 2 == 0;
+          var output = new File(outputDirectory, "actual" + i + ".json");
+          futures.add(executor.submit(() -> {
+            ConversionUtil.convert(
+                input,
+                output,
+                ConversionOptions.builder()
+                    .setCsvSeparator(',')
+                    .setPretty(pretty)
+                    .build());
+            assertThat(output)
+                .hasSameTextualContentAs(new File(
+                    getTestResourcePath(pretty ? "json/pretty1.json" : "json/mini1.json")));
+            return null;
+          }));
+        }
+      }
+      for (var future : futures) {
+        future.get();
+      }
+    }
   }
 
   @SuppressWarnings("ClassCanBeStatic")
@@ -229,7 +338,58 @@ private static Stream<Arguments> deduplicateProvider() {
       var inputs = ImmutableSet.of(
           "csv/deduplicatefrom.csv", "json/deduplicatefrom.json", "yaml/deduplicatefrom.yaml");
 
-      return inputs.stream().map(input -> toArguments(input, "json/deduplicateto.json"));
+      return Stream.concat(
+          inputs.stream().map(input -> toArguments(input, "json/deduplicateto.json")),
+          Stream.of(
+              toArguments("json/deduplicateirregular.json", "json/deduplicateirregularto.json")));
+    }
+  }
+
+  @SuppressWarnings("ClassCanBeStatic")
+  @Nested
+  final class ExpansionTests {
+    @TempDir
+    File outputDirectory;
+
+    @DisplayName("Should expand deduplicated keys correctly")
+    @MethodSource("expandProvider")
+    @ParameterizedTest
+    void expand1(String input, String output, String expected) {
+      var outputPath = outputDirectory.getAbsolutePath() + output;
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute("-i", getTestResourcePath(input), "-o", outputPath, "--expand-keys"));
+
+      assertThat(systemManager.getOutput()).isEmpty();
+      assertThat(systemManager.getError()).isEmpty();
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(new File(outputPath))
+          .hasSameTextualContentAs(new File(getTestResourcePath(expected)));
+    }
+
+    @DisplayName("Should fail on input not in the layout of deduplicated keys")
+    @Test
+    void expand2() {
+      var outputPath = outputDirectory.getAbsolutePath() + "/expand2.csv";
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i", getTestResourcePath("json/oscars.json"), "-o", outputPath, "--expand-keys"));
+
+      assertThat(systemManager.getExitStatus()).isEqualTo(SOFTWARE);
+      assertThat(systemManager.getOutput()).isEmpty();
+    }
+
+    private static Stream<Arguments> expandProvider() {
+      var inputs = ImmutableSet.of("json/deduplicateto.json", "yaml/deduplicateto.yaml");
+
+      return inputs.stream().map(input -> toArguments(input, "csv/expandkeys.csv"));
     }
   }
 
@@ -287,6 +447,82 @@ void tsv1(String input, String output, String expected, boolean dedup) {
           .hasSameTextualContentAs(new File(getTestResourcePath(expected)));
     }
 
+    @DisplayName("Should take the CSV header from the fields of sampled records")
+    @ParameterizedTest
+    @ValueSource(strings = {"0", "2"})
+    void csv2(String sample) {
+      var outputPath = outputDirectory.getAbsolutePath() + "/actual.csv";
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              getTestResourcePath("json/heterogeneous.json"),
+              "-o",
+              outputPath,
+              "--csv-header-sample",
+              sample));
+
+      assertThat(systemManager.getOutput()).isEmpty();
+      assertThat(systemManager.getError()).isEmpty();
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(new File(outputPath))
+          .hasSameTextualContentAs(new File(getTestResourcePath("csv/heterogeneous.csv")));
+    }
+
+    @DisplayName("Should read CSV cells typed after their columns")
+    @Test
+    void csv3() {
+      var outputPath = outputDirectory.getAbsolutePath() + "/actual.json";
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              getTestResourcePath("csv/typed.csv"),
+              "-o",
+              outputPath,
+              "--pretty",
+              "--csv-column-types",
+              "zip=string,code=string"));
+
+      assertThat(systemManager.getOutput()).isEmpty();
+      assertThat(systemManager.getError()).isEmpty();
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(new File(outputPath))
+          .hasSameTextualContentAs(new File(getTestResourcePath("json/typed.json")));
+    }
+
+    @DisplayName("Should quote every text cell and column name when always quoting")
+    @MethodSource("alwaysQuoteProvider")
+    @ParameterizedTest
+    void alwaysQuote1(String input, String output, String expected) {
+      var outputPath = outputDirectory.getAbsolutePath() + output;
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute("-i", getTestResourcePath(input), "-o", outputPath, "--csv-always-quote"));
+
+      assertThat(systemManager.getOutput()).isEmpty();
+      assertThat(systemManager.getError()).isEmpty();
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(new File(outputPath))
+          .hasSameTextualContentAs(new File(getTestResourcePath(expected)));
+    }
+
+    private static Stream<Arguments> alwaysQuoteProvider() {
+      return Stream.of(
+          toArguments("csv/oscars.csv", "tsv/oscars-quoted.tsv"),
+          toArguments("tsv/oscars.tsv", "csv/oscars-quoted.csv"),
+          toArguments("json/oscars.json", "csv/oscars-quoted.csv"));
+    }
+
     private static Stream<Arguments> csvProvider() {
       return ImmutableMap.of(
               "json/oscars.json", false, "json/oscars-dedup.json", true, "tsv/oscars.tsv", false)
@@ -312,6 +548,596 @@ private static Stream<Arguments> tsvProvider() {
     }
   }
 
+  @SuppressWarnings("ClassCanBeStatic")
+  @Nested
+  final class RecordStreamTests {
+    @TempDir
+    File outputDirectory;
+
+    @DisplayName("Should convert records to and from NDJSON correctly")
+    @MethodSource("ndjsonProvider")
+    @ParameterizedTest
+    void ndjson1(String input, String output, String expected) {
+      var outputPath = outputDirectory.getAbsolutePath() + output;
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute("-i", getTestResourcePath(input), "-o", outputPath));
+
+      assertThat(systemManager.getOutput()).isEmpty();
+      assertThat(systemManager.getError()).isEmpty();
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(new File(outputPath))
+          .hasSameTextualContentAs(new File(getTestResourcePath(expected)));
+    }
+
+    @DisplayName("Should write one YAML document per record")
+    @Test
+    void yamlDocuments1() {
+      var outputPath = outputDirectory.getAbsolutePath() + "/actual.yaml";
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              getTestResourcePath("ndjson/oscars.ndjson"),
+              "-o",
+              outputPath,
+              "--yaml-documents"));
+
+      assertThat(systemManager.getOutput()).isEmpty();
+      assertThat(systemManager.getError()).isEmpty();
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(new File(outputPath))
+          .hasSameTextualContentAs(new File(getTestResourcePath("yaml/oscars-documents.yaml")));
+    }
+
+    private static Stream<Arguments> ndjsonProvider() {
+      return Stream.of(
+          toArguments("csv/oscars.csv", "ndjson/oscars.ndjson"),
+          toArguments("ndjson/oscars.ndjson", "csv/oscars.csv"),
+          toArguments("ndjson/oscars.ndjson", "tsv/oscars.tsv"));
+    }
+  }
+
+  @SuppressWarnings("ClassCanBeStatic")
+  @Nested
+  final class FlatteningTests {
+    @TempDir
+    File outputDirectory;
+
+    @DisplayName("Should flatten nested records into columns named by their path")
+    @ParameterizedTest
+    @ValueSource(strings = {"json/nested.json", "yaml/nested.yaml"})
+    void flatten1(String input) {
+      var outputPath = outputDirectory.getAbsolutePath() + "/actual.csv";
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              getTestResourcePath(input),
+              "-o",
+              outputPath,
+              "--flatten",
+              "--csv-header-sample",
+              "0"));
+
+      assertThat(systemManager.getOutput()).isEmpty();
+      assertThat(systemManager.getError()).isEmpty();
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(new File(outputPath))
+          .hasSameTextualContentAs(new File(getTestResourcePath("csv/flattened.csv")));
+    }
+
+    @DisplayName("Should nest columns named by their path back into records")
+    @Test
+    void unflatten1() {
+      var outputPath = outputDirectory.getAbsolutePath() + "/actual.json";
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              getTestResourcePath("csv/flattened.csv"),
+              "-o",
+              outputPath,
+              "--unflatten",
+              "--typed-csv",
+              "--pretty"));
+
+      assertThat(systemManager.getOutput()).isEmpty();
+      assertThat(systemManager.getError()).isEmpty();
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(new File(outputPath))
+          .hasSameTextualContentAs(new File(getTestResourcePath("json/unflattened.json")));
+    }
+
+    @DisplayName("Should fail when records are both flattened and unflattened")
+    @Test
+    void flatten2() {
+      var outputPath = outputDirectory.getAbsolutePath() + "/actual.csv";
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              getTestResourcePath("json/nested.json"),
+              "-o",
+              outputPath,
+              "--flatten",
+              "--unflatten"));
+
+      assertThat(systemManager.getExitStatus()).isEqualTo(SOFTWARE);
+      assertThat(systemManager.getError())
+          .contains("Records can not be both flattened and unflattened!");
+    }
+  }
+
+  @SuppressWarnings("ClassCanBeStatic")
+  @Nested
+  final class ProjectionTests {
+    @TempDir
+    File outputDirectory;
+
+    @DisplayName("Should keep only the selected values of records matching every predicate")
+    @ParameterizedTest
+    @ValueSource(strings = {"json/nested.json", "yaml/nested.yaml"})
+    void select1(String input) {
+      var outputPath = outputDirectory.getAbsolutePath() + "/actual.csv";
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              getTestResourcePath(input),
+              "-o",
+              outputPath,
+              "--select",
+              "id,/user/name",
+              "--where",
+              "/user/langs/1=la",
+              "--flatten"));
+
+      assertThat(systemManager.getOutput()).isEmpty();
+      assertThat(systemManager.getError()).isEmpty();
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(new File(outputPath))
+          .hasSameTextualContentAs(new File(getTestResourcePath("csv/selected.csv")));
+    }
+
+    @DisplayName("Should select columns and compare cells of CSV input as numbers")
+    @Test
+    void select2() {
+      var outputPath = outputDirectory.getAbsolutePath() + "/actual.json";
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              getTestResourcePath("csv/flattened.csv"),
+              "-o",
+              outputPath,
+              "--select",
+              "user.name,note",
+              "--where",
+              "id < 2",
+              "--pretty"));
+
+      assertThat(systemManager.getOutput()).isEmpty();
+      assertThat(systemManager.getError()).isEmpty();
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(new File(outputPath))
+          .hasSameTextualContentAs(new File(getTestResourcePath("json/selected.json")));
+    }
+
+    @DisplayName("Should fail when a predicate has no operator")
+    @Test
+    void select3() {
+      var outputPath = outputDirectory.getAbsolutePath() + "/actual.json";
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              getTestResourcePath("json/nested.json"),
+              "-o",
+              outputPath,
+              "--where",
+              "id"));
+
+      assertThat(systemManager.getExitStatus()).isEqualTo(SOFTWARE);
+      assertThat(systemManager.getError()).contains("Invalid predicate! [id]");
+    }
+  }
+
+  @SuppressWarnings("ClassCanBeStatic")
+  @Nested
+  final class BatchTests {
+    @TempDir
+    File inputDirectory;
+
+    @TempDir
+    File outputDirectory;
+
+    @DisplayName("Should convert every file in a directory")
+    @Test
+    void batch1() throws IOException {
+      copyTestResource("json/mini1.json", "a/mini1.json");
+      copyTestResource("yaml/mini1.yaml", "b/mini1.yaml");
+
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              inputDirectory.getAbsolutePath(),
+              "-o",
+              outputDirectory.getAbsolutePath(),
+              "--to-type",
+              "toml",
+              "--parallelism",
+              "1"));
+
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(systemManager.getError()).isEmpty();
+      assertThat(systemManager.getOutput()).endsWith("Converted 2 file(s), 0 failed.\n");
+      assertThat(new File(outputDirectory, "a/mini1.toml"))
+          .hasSameTextualContentAs(new File(getTestResourcePath("toml/mini1.toml")));
+      assertThat(new File(outputDirectory, "b/mini1.toml"))
+          .hasSameTextualContentAs(new File(getTestResourcePath("toml/mini1.toml")));
+    }
+
+    @DisplayName("Should convert files matching a glob and report failures per file")
+    @Test
+    void batch2() throws IOException {
+      copyTestResource("json/mini1.json", "mini1.json");
+      copyTestResource("yaml/mini1.yaml", "mini1.yaml");
+      Files.writeString(inputDirectory.toPath().resolve("broken.json"), "{", UTF_8);
+
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              inputDirectory.getAbsolutePath() + File.separator + "*.json",
+              "-o",
+              outputDirectory.getAbsolutePath(),
+              "--to-type",
+              "toml"));
+
+      assertThat(systemManager.getExitStatus()).isEqualTo(SOFTWARE);
+      assertThat(systemManager.getError()).contains("broken.json");
+      assertThat(systemManager.getOutput()).endsWith("Converted 1 file(s), 1 failed.\n");
+      assertThat(new File(outputDirectory, "mini1.toml"))
+          .hasSameTextualContentAs(new File(getTestResourcePath("toml/mini1.toml")));
+      assertThat(outputDirectory.list()).containsExactly("mini1.toml");
+    }
+
+    @DisplayName("Should convert files listed in a manifest")
+    @Test
+    void batch3() throws IOException {
+      copyTestResource("csv/oscars.csv", "oscars.csv");
+      var manifest = new File(inputDirectory, "files.txt");
+      Files.writeString(manifest.toPath(), "# inputs\noscars.csv\n\n", UTF_8);
+
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              manifest.getAbsolutePath(),
+              "--manifest",
+              "-o",
+              outputDirectory.getAbsolutePath(),
+              "--to-type",
+              "tsv"));
+
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(new File(outputDirectory, "oscars.tsv"))
+          .hasSameTextualContentAs(new File(getTestResourcePath("tsv/oscars.tsv")));
+    }
+
+    @DisplayName("Should keep the directories of files listed in a manifest")
+    @Test
+    void batch5() throws IOException {
+      copyTestResource("json/mini1.json", "a/mini1.json");
+      copyTestResource("json/mini1.json", "b/mini1.json");
+      var manifest = new File(inputDirectory, "files.txt");
+      Files.writeString(manifest.toPath(), "a/mini1.json\nb/mini1.json\n", UTF_8);
+
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              manifest.getAbsolutePath(),
+              "--manifest",
+              "-o",
+              outputDirectory.getAbsolutePath(),
+              "--to-type",
+              "toml"));
+
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(systemManager.getOutput()).contains("Converted 2 file(s), 0 failed.\n");
+      assertThat(new File(outputDirectory, "a/mini1.toml"))
+          .hasSameTextualContentAs(new File(getTestResourcePath("toml/mini1.toml")));
+      assertThat(new File(outputDirectory, "b/mini1.toml"))
+          .hasSameTextualContentAs(new File(getTestResourcePath("toml/mini1.toml")));
+    }
+
+    @DisplayName("Should fail before converting anything when inputs share an output")
+    @Test
+    void batch6() throws IOException {
+      copyTestResource("json/mini1.json", "mini1.json");
+      copyTestResource("yaml/mini1.yaml", "mini1.yaml");
+
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              inputDirectory.getAbsolutePath(),
+              "-o",
+              outputDirectory.getAbsolutePath(),
+              "--to-type",
+              "toml"));
+
+      assertThat(systemManager.getExitStatus()).isEqualTo(SOFTWARE);
+      assertThat(systemManager.getError())
+          .contains("Inputs would be converted into the same output!")
+          .contains("mini1.json")
+          .contains("mini1.yaml");
+      assertThat(outputDirectory.list()).isEmpty();
+    }
+
+    @DisplayName("Should fail when files listed in a manifest share an output")
+    @Test
+    void batch7() throws IOException {
+      copyTestResource("json/mini1.json", "a/mini1.json");
+      copyTestResource("json/mini1.json", "b/mini1.json");
+      var manifest = new File(inputDirectory, "a/files.txt");
+      Files.writeString(manifest.toPath(), "mini1.json\n../b/mini1.json\n", UTF_8);
+
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              manifest.getAbsolutePath(),
+              "--manifest",
+              "-o",
+              outputDirectory.getAbsolutePath(),
+              "--to-type",
+              "toml"));
+
+      assertThat(systemManager.getExitStatus()).isEqualTo(SOFTWARE);
+      assertThat(systemManager.getError())
+          .contains("Inputs would be converted into the same output!")
+          .contains("a" + File.separator + "mini1.json")
+          .contains("b" + File.separator + "mini1.json");
+      assertThat(outputDirectory.list()).isEmpty();
+    }
+
+    @DisplayName("Should copy outputs converted before from the cache")
+    @Test
+    void batch4(@TempDir File cacheDirectory) throws IOException {
+      copyTestResource("json/mini1.json", "a/mini1.json");
+      copyTestResource("json/mini1.json", "b/mini1.json");
+      String[] args = {
+        "-i",
+        inputDirectory.getAbsolutePath(),
+        "-o",
+        outputDirectory.getAbsolutePath(),
+        "--to-type",
+        "toml",
+        "--parallelism",
+        "1",
+        "--cache-dir",
+        cacheDirectory.getAbsolutePath()
+      };
+
+      var first = new MockSystemManager();
+      first.exit(new CommandLine(new Convert())
+          .setOut(first.getOut())
+          .setErr(first.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(args));
+      var second = new MockSystemManager();
+      second.exit(new CommandLine(new Convert())
+          .setOut(second.getOut())
+          .setErr(second.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(args));
+
+      assertThat(first.getExitStatus()).isEqualTo(OK);
+      assertThat(first.getOutput()).endsWith("Cache: 1 hit(s), 1 miss(es).\n");
+      assertThat(second.getExitStatus()).isEqualTo(OK);
+      assertThat(second.getOutput()).endsWith("Cache: 2 hit(s), 0 miss(es).\n");
+      assertThat(new File(outputDirectory, "b/mini1.toml"))
+          .hasSameTextualContentAs(new File(getTestResourcePath("toml/mini1.toml")));
+    }
+
+    private void copyTestResource(String resource, String target) throws IOException {
+      var path = inputDirectory.toPath().resolve(target);
+      Files.createDirectories(path.getParent());
+      Files.copy(Path.of(getTestResourcePath(resource)), path);
+    }
+  }
+
+  @SuppressWarnings("ClassCanBeStatic")
+  @Nested
+  final class StandardStreamTests {
+    @TempDir
+    File outputDirectory;
+
+    @DisplayName("Should convert from standard input to standard output")
+    @MethodSource("standardStreamProvider")
+    @ParameterizedTest
+    void standardStreams1(String input, String output, String expected) throws IOException {
+      var stdout = new ByteArrayOutputStream();
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert(new StandardStreams(
+              new ByteArrayInputStream(Files.readAllBytes(Path.of(getTestResourcePath(input)))),
+              stdout)))
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              "-",
+              "--from-type",
+              getFileExtension(input),
+              "-o",
+              "-",
+              "--to-type",
+              getFileExtension(output)));
+
+      assertThat(systemManager.getOutput()).isEmpty();
+      assertThat(systemManager.getError()).isEmpty();
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(stdout.toString(UTF_8).lines())
+          .containsExactlyElementsOf(Files.readAllLines(Path.of(getTestResourcePath(expected))));
+    }
+
+    @DisplayName("Should decompress gzip standard input")
+    @Test
+    void standardStreams2() throws IOException {
+      var gzipped = new ByteArrayOutputStream();
+      try (var gzip = new GZIPOutputStream(gzipped)) {
+        gzip.write(Files.readAllBytes(Path.of(getTestResourcePath("csv/oscars.csv"))));
+      }
+      var outputPath = outputDirectory.getAbsolutePath() + "/actual.ndjson";
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert(new StandardStreams(
+              new ByteArrayInputStream(gzipped.toByteArray()), new ByteArrayOutputStream())))
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute("-i", "-", "--from-type", "csv", "-o", outputPath));
+
+      assertThat(systemManager.getError()).isEmpty();
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(new File(outputPath))
+          .hasSameTextualContentAs(new File(getTestResourcePath("ndjson/oscars.ndjson")));
+    }
+
+    @DisplayName("Should require the file type of standard streams")
+    @Test
+    void standardStreams3() {
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute("-i", getTestResourcePath("csv/oscars.csv"), "-o", "-"));
+
+      assertThat(systemManager.getExitStatus()).isEqualTo(USAGE);
+      assertThat(systemManager.getOutput()).isEmpty();
+      assertThat(systemManager.getError())
+          .startsWith("Missing required option for '-': '--to-type=<toType>'");
+    }
+
+    private static Stream<Arguments> standardStreamProvider() {
+      return Stream.of(
+          toArguments("csv/oscars.csv", "ndjson/oscars.ndjson"),
+          toArguments("ndjson/oscars.ndjson", "csv/oscars.csv"),
+          toArguments("json/fromjson.json", "yaml/fromjson.yaml"));
+    }
+  }
+
+  @Nested
+  final class StatsTests {
+    @TempDir
+    File outputDirectory;
+
+    @DisplayName("Should print stats of the conversion as json")
+    @ParameterizedTest
+    @ValueSource(strings = {"csv/oscars.csv", "json/oscars.json", "ndjson/oscars.ndjson"})
+    void stats1(String input) throws IOException {
+      var output = new File(outputDirectory, "actual.ndjson");
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i", getTestResourcePath(input), "-o", output.getAbsolutePath(), "--stats=json"));
+
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(systemManager.getOutput()).isEmpty();
+      var stats = new JsonMapper().readTree(systemManager.getError());
+      assertThat(stats.get("records").asLong()).isEqualTo(89);
+      assertThat(stats.get("bytesIn").asLong())
+          .isEqualTo(new File(getTestResourcePath(input)).length());
+      assertThat(stats.get("bytesOut").asLong()).isEqualTo(output.length());
+      assertThat(stats.get("totalNanos").asLong())
+          .isGreaterThanOrEqualTo(stats.get("readNanos").asLong()
+              + stats.get("transformNanos").asLong()
+              + stats.get("writeNanos").asLong());
+      assertThat(stats.get("peakHeapBytes").asLong()).isPositive();
+    }
+
+    @DisplayName("Should print stats of the conversion as text")
+    @Test
+    void stats2() {
+      var systemManager = new MockSystemManager();
+      systemManager.exit(new CommandLine(new Convert())
+          .setOut(systemManager.getOut())
+          .setErr(systemManager.getErr())
+          .setExecutionExceptionHandler(EXCEPTION_HANDLER)
+          .execute(
+              "-i",
+              getTestResourcePath("json/oscars.json"),
+              "-o",
+              new File(outputDirectory, "actual.csv").getAbsolutePath(),
+              "--stats"));
+
+      assertThat(systemManager.getExitStatus()).isEqualTo(OK);
+      assertThat(systemManager.getError().lines().map(line -> line.substring(0, line.indexOf(':'))))
+          .containsExactly(
+              "Read",
+              "Transform",
+              "Write",
+              "Total",
+              "Bytes in",
+              "Bytes out",
+              "Records",
+              "Cached",
+              "Peak heap",
+              "GC time");
+      assertThat(systemManager.getError()).contains("Records:   89 (");
+    }
+  }
+
   static final class MockSystemManager implements SystemManager {
     private final ByteArrayOutputStream out = new ByteArrayOutputStream();
     private final ByteArrayOutputStream err = new ByteArrayOutputStream();
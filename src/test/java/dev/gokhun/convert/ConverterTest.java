@@ -0,0 +1,113 @@
+package dev.gokhun.convert;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+final class ConverterTest {
+  private static final Converter CONVERTER = Converter.builder().build();
+
+  @DisplayName("Should convert byte arrays")
+  @Test
+  void bytes1() throws IOException {
+    var output = CONVERTER.convert(resource("yaml/mini1.yaml"), "yaml", "json");
+
+    assertThat(output).isEqualTo(resource("json/mini1.json"));
+  }
+
+  @DisplayName("Should convert the remaining bytes of a buffer without moving it")
+  @Test
+  void byteBuffer1() throws IOException {
+    var json = resource("json/mini1.json");
+    var input = ByteBuffer.allocate(json.length + 2);
+    input.put((byte) '#').put(json).flip().position(1);
+
+    var output = CONVERTER.convert(input, "json", "toml");
+
+    assertThat(input.position()).isOne();
+    var bytes = new byte[output.remaining()];
+    output.get(bytes);
+    assertThat(bytes).isEqualTo(CONVERTER.convert(json, "json", "toml"));
+  }
+
+  @DisplayName("Should convert channels and leave them open")
+  @Test
+  void channels1() throws IOException {
+    var in = Channels.newChannel(new ByteArrayInputStream(resource("csv/oscars.csv")));
+    var bytes = new ByteArrayOutputStream();
+    var out = Channels.newChannel(bytes);
+
+    CONVERTER.convert(in, "csv", out, "tsv");
+
+    assertThat(in.isOpen()).isTrue();
+    assertThat(out.isOpen()).isTrue();
+    assertThat(bytes.toByteArray()).isEqualTo(resource("tsv/oscars.tsv"));
+  }
+
+  @DisplayName("Should convert streams and leave them open")
+  @Test
+  void streams1() throws IOException {
+    var closed = new boolean[2];
+    var in = new ByteArrayInputStream(resource("json/oscars.json")) {
+      @Override
+      public void close() {
+        closed[0] = true;
+      }
+    };
+    var out = new ByteArrayOutputStream() {
+      @Override
+      public void close() {
+        closed[1] = true;
+      }
+    };
+
+    CONVERTER.convert(in, "json", out, "csv");
+
+    assertThat(closed).containsOnly(false);
+    assertThat(out.toByteArray()).isEqualTo(resource("csv/oscars.csv"));
+  }
+
+  @DisplayName("Should convert concurrently with a shared converter")
+  @Test
+  void concurrent1() throws InterruptedException, ExecutionException, IOException {
+    var pretty = Converter.builder().setPretty(true).build();
+    var input = resource("json/mini1.json");
+    var tasks = new ArrayList<Callable<byte[]>>();
+    for (var i = 0; i < 32; i++) {
+      tasks.add(() -> pretty.convert(input, "json", "json"));
+    }
+
+    try (var executor = Executors.newFixedThreadPool(4)) {
+      for (var future : executor.invokeAll(tasks)) {
+        assertThat(future.get()).isEqualTo(resource("json/pretty1.json"));
+      }
+    }
+  }
+
+  @DisplayName("Should reject unsupported file types")
+  @Test
+  void unsupported1() {
+    assertThat(Converter.isSupported("jsonl")).isTrue();
+    assertThat(Converter.isSupported("xml")).isFalse();
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> CONVERTER.convert(new byte[0], "xml", "json"))
+        .withMessage("Unsupported file type! [xml]");
+  }
+
+  private static byte[] resource(String name) throws IOException {
+    return Files.readAllBytes(Path.of("src/test/resources", name));
+  }
+}
@@ -0,0 +1,141 @@
+package dev.gokhun.convert;
+
+import static com.fasterxml.jackson.dataformat.csv.CsvGenerator.Feature.ALWAYS_QUOTE_STRINGS;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+final class CsvRowWriterTest {
+  private static final JsonMapper MAPPER = new JsonMapper();
+  private static final CsvMapper CSV_MAPPER = new CsvMapper();
+
+  @DisplayName("Should only quote cells that need it")
+  @Test
+  void write1() throws IOException {
+    var csv = write(',', "a", "b", "c", "d", "e", """
+        [
+          {"a": "plain", "b": "x,y", "c": "say \\"hi\\"", "d": "two\\nlines", "e": " padded"},
+          {"a": "", "b": null, "c": "ünïcödé 😀", "d": "x\\ty", "e": "end "}
+        ]
+        """);
+
+    assertThat(csv)
+        .isEqualTo("a,b,c,d,e\n"
+            + "plain,\"x,y\",\"say \"\"hi\"\"\",\"two\nlines\",\" padded\"\n"
+            + "\"\",,ünïcödé 😀,x\ty,\"end \"\n");
+  }
+
+  @DisplayName("Should write scalars as Jackson does, looking fields up by column")
+  @Test
+  void write2() throws IOException {
+    var csv = write(',', "long", "double", "big", "boolean", "array", """
+        [
+          {"long": -9223372036854775808, "double": 2.0, "big": 12345678901234567890123,
+            "boolean": true, "array": [1, "a", null, 2.5]},
+          {"array": ["x y"], "boolean": false, "double": 1e-7, "long": 0,
+            "big": 9223372036854775807}
+        ]
+        """);
+
+    assertThat(csv)
+        .isEqualTo("long,double,big,boolean,array\n"
+            + "-9223372036854775808,2.0,12345678901234567890123,true,1;a;;2.5\n"
+            + "0,1.0E-7,9223372036854775807,false,x y\n");
+  }
+
+  @DisplayName("Should separate cells with the given separator")
+  @Test
+  void write3() throws IOException {
+    assertThat(write('\t', "a", "b", "[{\"a\": \"x,y\", \"b\": \"x\\ty\"}]"))
+        .isEqualTo("a\tb\nx,y\t\"x\ty\"\n");
+  }
+
+  @DisplayName("Should reject fields that are not columns and values that are not scalars")
+  @Test
+  void write4() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> write(',', "a", "[{\"a\": 1, \"b\": 2}]"))
+        .withMessage("Unrecognized CSV column! [b]");
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> write(',', "a", "[{\"a\": {\"b\": 1}}]"))
+        .withMessage("CSV cells can only hold scalars and arrays of scalars! [a]");
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> write(',', "a", "[{\"a\": [[1]]}]"))
+        .withMessage("CSV cells can only hold scalars and arrays of scalars! [a]");
+  }
+
+  @DisplayName("Should write binary values as base64 text, as Jackson does")
+  @Test
+  void write5() throws IOException {
+    var schema = schema("a", "b");
+    var records = MAPPER.createArrayNode();
+    records.addObject().put("a", new byte[] {0, 1, 2, (byte) 0xFF}).put("b", new byte[] {'x'});
+    records.addArray().add(new byte[] {'h', 'i'}).add("x");
+
+    assertThat(write(',', false, schema, records))
+        .isEqualTo("a,b\nAAEC/w==,eA==\naGk=,x\n")
+        .isEqualTo(CSV_MAPPER
+            .writerFor(JsonNode.class)
+            .with(schema.withHeader())
+            .writeValueAsString(records));
+  }
+
+  @DisplayName("Should quote every text cell and column name when always quoting, as Jackson does")
+  @Test
+  void write6() throws IOException {
+    var schema = schema("name", "born", "navy", "tags");
+    var records = MAPPER.readTree("""
+        [
+          {"name": "Ada", "born": 1815, "navy": null, "tags": ["a", "b"]},
+          {"name": "say \\"hi\\"", "born": 1.5, "navy": true, "tags": []}
+        ]
+        """);
+
+    assertThat(write(',', true, schema, records))
+        .isEqualTo("\"name\",\"born\",\"navy\",\"tags\"\n"
+            + "\"Ada\",1815,,\"a;b\"\n"
+            + "\"say \"\"hi\"\"\",1.5,true,\"\"\n")
+        .isEqualTo(CSV_MAPPER
+            .writerFor(JsonNode.class)
+            .with(schema.withHeader())
+            .with(ALWAYS_QUOTE_STRINGS)
+            .writeValueAsString(records));
+  }
+
+  private static String write(char separator, String... columnsThenRecords) throws IOException {
+    var columns = new String[columnsThenRecords.length - 1];
+    System.arraycopy(columnsThenRecords, 0, columns, 0, columns.length);
+    return write(
+        separator, false, schema(columns), MAPPER.readTree(columnsThenRecords[columns.length]));
+  }
+
+  private static String write(
+      char separator, boolean alwaysQuote, CsvSchema schema, JsonNode records)
+      throws IOException {
+    var out = new ByteArrayOutputStream();
+    try (var writer = new CsvRowWriter(out, schema, separator, alwaysQuote)) {
+      writer.writeHeader();
+      for (var record : records) {
+        writer.write(record);
+      }
+    }
+    return out.toString(UTF_8);
+  }
+
+  private static CsvSchema schema(String... columns) {
+    var builder = CsvSchema.builder();
+    for (var column : columns) {
+      builder.addColumn(column);
+    }
+    return builder.build();
+  }
+}
@@ -0,0 +1,46 @@
+package dev.gokhun.convert;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema.ColumnType;
+import java.io.IOException;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+final class CsvSchemaInferenceTest {
+  private static final JsonMapper MAPPER = new JsonMapper();
+
+  @DisplayName("Should take the union of fields in the order they are first seen")
+  @Test
+  void schema1() throws IOException {
+    var schema = infer("[{\"b\": 1, \"a\": 2}, {\"c\": 3}, {\"a\": 4, \"d\": 5, \"b\": 6}]");
+
+    assertThat(schema.getColumnNames()).containsExactly("b", "a", "c", "d");
+  }
+
+  @DisplayName("Should infer only column names, whatever the values seen for them")
+  @Test
+  void schema2() throws IOException {
+    var schema = infer("""
+        [
+          {"number": 1, "boolean": true, "text": "a", "array": [1], "null": null},
+          {"number": 2.5, "boolean": null, "text": 1, "array": true}
+        ]
+        """);
+
+    assertThat(schema.getColumnNames())
+        .containsExactly("number", "boolean", "text", "array", "null");
+    assertThat(schema).extracting(CsvSchema.Column::getType).containsOnly(ColumnType.STRING);
+  }
+
+  private static CsvSchema infer(String json) throws IOException {
+    var inference = new CsvSchemaInference();
+    for (JsonNode record : MAPPER.readTree(json)) {
+      inference.accept(record);
+    }
+    return inference.schema();
+  }
+}
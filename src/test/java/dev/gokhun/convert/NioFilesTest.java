@@ -0,0 +1,96 @@
+package dev.gokhun.convert;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Random;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+final class NioFilesTest {
+  private static final JsonMapper MAPPER = new JsonMapper();
+
+  @TempDir
+  File directory;
+
+  @DisplayName("Should read back what was written, through mapped segments of any size")
+  @ParameterizedTest
+  @ValueSource(longs = {4096, 10_000, 1 << 20})
+  void read1(long segmentSize) throws IOException {
+    var bytes = new byte[100_003];
+    new Random(42).nextBytes(bytes);
+    var path = directory.toPath().resolve("data.bin");
+    try (var out = NioFiles.newOutputStream(path, 1024)) {
+      out.write(bytes, 0, 10);
+      out.write(bytes[10]);
+      out.write(bytes, 11, bytes.length - 11);
+    }
+
+    try (var in = NioFiles.newInputStream(path, 1024, 0, segmentSize)) {
+      assertThat(readAll(in)).isEqualTo(bytes);
+    }
+  }
+
+  @DisplayName("Should parse tokens that span the boundary between mapped segments")
+  @Test
+  void read2() throws IOException {
+    var json = "{\"name\": \"" + "ünïcödé ".repeat(100) + "\", \"count\": 1234567890123}";
+    var path = directory.toPath().resolve("data.json");
+    Files.writeString(path, json, UTF_8);
+
+    // Segments of 7 bytes split field names, numbers and multi-byte characters alike.
+    try (var in = NioFiles.newInputStream(path, 1024, 0, 7)) {
+      assertThat(MAPPER.readTree(in)).isEqualTo(MAPPER.readTree(json));
+    }
+  }
+
+  @DisplayName("Should read empty files and files below the threshold without mapping them")
+  @Test
+  void read3() throws IOException {
+    var empty = directory.toPath().resolve("empty.json");
+    Files.write(empty, new byte[0]);
+    var small = directory.toPath().resolve("small.json");
+    Files.writeString(small, "[1, 2]", UTF_8);
+
+    try (var in = NioFiles.newInputStream(empty, 1024, 0, 7)) {
+      assertThat(in.read()).isEqualTo(-1);
+      assertThat(in.read(new byte[1], 0, 1)).isEqualTo(-1);
+    }
+    try (var in = NioFiles.newInputStream(small, 1024, 7, 7)) {
+      assertThat(readAll(in)).isEqualTo("[1, 2]".getBytes(UTF_8));
+    }
+  }
+
+  /** Reads single bytes and chunks of varying length in turn, as parsers do. */
+  private static byte[] readAll(InputStream in) throws IOException {
+    var out = new ByteArrayOutputStream();
+    var buffer = new byte[997];
+    var single = true;
+    while (true) {
+      if (single) {
+        var b = in.read();
+        if (b < 0) {
+          break;
+        }
+        out.write(b);
+      } else {
+        var count = in.read(buffer, 3, buffer.length - 3);
+        if (count < 0) {
+          break;
+        }
+        out.write(buffer, 3, count);
+      }
+      single = !single;
+    }
+    return out.toByteArray();
+  }
+}
@@ -0,0 +1,104 @@
+package dev.gokhun.convert;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import dev.gokhun.convert.ConversionUtil.RecordSink;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+final class RecordFlattenerTest {
+  private static final JsonMapper MAPPER = new JsonMapper();
+  private static final String NESTED = """
+      [
+        {"id": 1, "user": {"name": "Ada", "langs": ["en", "fr"]}, "tags": [{"k": true}]},
+        {"id": 2, "user": {}, "tags": [], "x.y": 2.5}
+      ]
+      """;
+  private static final String FLAT = """
+      [
+        {"id": 1, "user.name": "Ada", "user.langs[0]": "en", "user.langs[1]": "fr",
+          "tags[0].k": true},
+        {"id": 2, "user": null, "tags": null, "x.y": 2.5}
+      ]
+      """;
+
+  @DisplayName("Should flatten trees into fields named by their dotted and indexed paths")
+  @Test
+  void flatten1() throws IOException {
+    var flattener = new RecordFlattener();
+    var records = new ArrayList<JsonNode>();
+    for (var record : MAPPER.readTree(NESTED)) {
+      records.add(flattener.flatten(record));
+    }
+
+    assertThat(records).containsExactlyElementsOf(MAPPER.readTree(FLAT));
+  }
+
+  @DisplayName("Should flatten records straight from parser tokens as from trees")
+  @Test
+  void flatten2() throws IOException {
+    var sink = new ListSink();
+    new RecordFlattener().read(MAPPER.createParser(NESTED), sink);
+
+    assertThat(sink.records).containsExactlyElementsOf(MAPPER.readTree(FLAT));
+    assertThat(sink.document).isNull();
+  }
+
+  @DisplayName("Should flatten a single document and keep values which are not objects")
+  @Test
+  void flatten3() throws IOException {
+    var sink = new ListSink();
+    new RecordFlattener().read(MAPPER.createParser("{\"a\": {\"b\": [1, [2]]}}"), sink);
+
+    assertThat(sink.document).isEqualTo(MAPPER.readTree("{\"a.b[0]\": 1, \"a.b[1][0]\": 2}"));
+    assertThat(new RecordFlattener().flatten(MAPPER.readTree("[1, {\"a\": {}}]")))
+        .isEqualTo(MAPPER.readTree("[1, {\"a\": {}}]"));
+  }
+
+  @DisplayName("Should nest fields named by their path back into objects and arrays")
+  @Test
+  void unflatten1() throws IOException {
+    var flattener = new RecordFlattener();
+
+    assertThat(flattener.unflatten(MAPPER.readTree(FLAT).get(0)))
+        .isEqualTo(MAPPER.readTree(NESTED).get(0));
+    assertThat(flattener.unflatten(MAPPER.readTree(
+            "{\"a[1]\": 1, \"b..c\": 2, \"[0]\": 3, \"d[x]\": 4, \"e\": \"\", \"e.f\": 5}")))
+        .isEqualTo(MAPPER.readTree(
+            "{\"a\": [null, 1], \"b..c\": 2, \"[0]\": 3, \"d[x]\": 4, \"e\": {\"f\": 5}}"));
+  }
+
+  @DisplayName("Should reject flattened paths which conflict")
+  @Test
+  void unflatten2() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(() ->
+            new RecordFlattener().unflatten(MAPPER.readTree("{\"a\": 1, \"a.b\": 2}")))
+        .withMessage("Conflicting flattened paths! [a.b]");
+    assertThatIllegalArgumentException()
+        .isThrownBy(() ->
+            new RecordFlattener().unflatten(MAPPER.readTree("{\"a.b\": 1, \"a[0]\": 2}")))
+        .withMessage("Conflicting flattened paths! [a[0]]");
+  }
+
+  private static final class ListSink implements RecordSink {
+    private final List<JsonNode> records = new ArrayList<>();
+    private JsonNode document;
+
+    @Override
+    public void accept(JsonNode record) {
+      records.add(record);
+    }
+
+    @Override
+    public void acceptDocument(JsonNode document) {
+      this.document = document;
+    }
+  }
+}
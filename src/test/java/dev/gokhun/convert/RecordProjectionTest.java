@@ -0,0 +1,127 @@
+package dev.gokhun.convert;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import dev.gokhun.convert.ConversionUtil.RecordSink;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+final class RecordProjectionTest {
+  private static final JsonMapper MAPPER = new JsonMapper();
+  private static final String RECORDS = """
+      [
+        {"id": 1, "user": {"name": "Ada", "age": 36}, "tags": ["a", "b", "c"], "skip": {"x": [1]}},
+        {"id": 2, "user": {"name": "Grace", "age": "85"}, "tags": ["d"]},
+        {"id": 3, "user": null, "tags": [], "a/b": true}
+      ]
+      """;
+
+  @DisplayName("Should keep selected values by pointer and field name, in the order they are read")
+  @Test
+  void select1() throws IOException {
+    var projection = projection(List.of("/tags/1", "id", "/user/name", "a/b"), List.of());
+
+    assertThat(read(projection, RECORDS))
+        .containsExactlyElementsOf(MAPPER.readTree("""
+            [
+              {"id": 1, "user": {"name": "Ada"}, "tags": [null, "b"]},
+              {"id": 2, "user": {"name": "Grace"}},
+              {"id": 3, "a/b": true}
+            ]
+            """));
+    assertThat(project(projection, RECORDS)).isEqualTo(read(projection, RECORDS));
+  }
+
+  @DisplayName("Should keep records matching every predicate, comparing values not selected")
+  @Test
+  void where1() throws IOException {
+    var projection = projection(List.of("id"), List.of("/user/age >= 40", "/tags/0 != 'a'"));
+
+    assertThat(read(projection, RECORDS)).containsExactly(MAPPER.readTree("{\"id\": 2}"));
+    assertThat(project(projection, RECORDS)).containsExactly(MAPPER.readTree("{\"id\": 2}"));
+  }
+
+  @DisplayName("Should compare values as numbers, text and nulls")
+  @Test
+  void where2() throws IOException {
+    assertThat(ids(List.of("/user/name<B"))).containsExactly(1);
+    assertThat(ids(List.of("/user/age=36.0"))).containsExactly(1);
+    assertThat(ids(List.of("/user/age>1e1"))).containsExactly(1, 2);
+    assertThat(ids(List.of("/user/name=null"))).containsExactly(3);
+    assertThat(ids(List.of("/user/name!=null", "/user/age<50"))).containsExactly(1);
+    assertThat(ids(List.of("a/b=true"))).containsExactly(3);
+    assertThat(ids(List.of("/missing!=1"))).containsExactly(1, 2, 3);
+  }
+
+  @DisplayName("Should project a single document")
+  @Test
+  void select2() throws IOException {
+    var sink = new ListSink();
+    projection(List.of("/a/b"), List.of("c>0"))
+        .read(MAPPER.createParser("{\"a\": {\"b\": 1, \"x\": 2}, \"c\": 1}"), sink);
+
+    assertThat(sink.records).isEmpty();
+    assertThat(sink.document).isEqualTo(MAPPER.readTree("{\"a\": {\"b\": 1}}"));
+  }
+
+  @DisplayName("Should reject predicates without a field or an operator")
+  @Test
+  void where3() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> projection(List.of(), List.of("id")))
+        .withMessage("Invalid predicate! [id]");
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> projection(List.of(), List.of("=1")))
+        .withMessage("Invalid predicate! [=1]");
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> projection(List.of(), List.of("id!1")))
+        .withMessage("Invalid predicate! [id!1]");
+  }
+
+  private static RecordProjection projection(List<String> select, List<String> where) {
+    return RecordProjection.of(select, where).orElseThrow();
+  }
+
+  private static List<JsonNode> read(RecordProjection projection, String json)
+      throws IOException {
+    var sink = new ListSink();
+    projection.read(MAPPER.createParser(json), sink);
+    return sink.records;
+  }
+
+  private static List<JsonNode> project(RecordProjection projection, String json)
+      throws IOException {
+    var sink = new ListSink();
+    for (var record : MAPPER.readTree(json)) {
+      projection.projecting(sink).accept(record);
+    }
+    return sink.records;
+  }
+
+  private static List<Integer> ids(List<String> where) throws IOException {
+    return read(projection(List.of("id"), where), RECORDS).stream()
+        .map(record -> record.get("id").intValue())
+        .toList();
+  }
+
+  private static final class ListSink implements RecordSink {
+    private final List<JsonNode> records = new ArrayList<>();
+    private JsonNode document;
+
+    @Override
+    public void accept(JsonNode record) {
+      records.add(record);
+    }
+
+    @Override
+    public void acceptDocument(JsonNode document) {
+      this.document = document;
+    }
+  }
+}
@@ -0,0 +1,82 @@
+package dev.gokhun.convert;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+import static org.assertj.core.api.Assertions.entry;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.BigIntegerNode;
+import com.fasterxml.jackson.databind.node.BooleanNode;
+import com.fasterxml.jackson.databind.node.DoubleNode;
+import com.fasterxml.jackson.databind.node.IntNode;
+import com.fasterxml.jackson.databind.node.LongNode;
+import com.fasterxml.jackson.databind.node.NullNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+import com.fasterxml.jackson.dataformat.csv.CsvSchema.ColumnType;
+import com.google.common.collect.ImmutableMap;
+import java.math.BigInteger;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+final class TypedCsvColumnsTest {
+  @DisplayName("Should read numbers written as JSON numbers into primitive backed nodes")
+  @Test
+  void number1() {
+    assertThat(node("0")).isEqualTo(IntNode.valueOf(0));
+    assertThat(node("-42")).isEqualTo(IntNode.valueOf(-42));
+    assertThat(node("4294967296")).isEqualTo(LongNode.valueOf(4294967296L));
+    assertThat(node("12345678901234567890"))
+        .isEqualTo(BigIntegerNode.valueOf(new BigInteger("12345678901234567890")));
+    assertThat(node("2.5")).isEqualTo(DoubleNode.valueOf(2.5));
+    assertThat(node("-1E+3")).isEqualTo(DoubleNode.valueOf(-1000));
+  }
+
+  @DisplayName("Should keep cells that are not written as JSON numbers as text")
+  @Test
+  void number2() {
+    for (var cell : new String[] {"007", "+1", "1.", ".5", "1e", "-", "1-2", "0x1F"}) {
+      assertThat(node(cell)).isEqualTo(TextNode.valueOf(cell));
+    }
+  }
+
+  @DisplayName("Should type columns after their first cell that is not empty")
+  @Test
+  void columns1() {
+    var columns = new TypedCsvColumns(new String[] {"a", "b", "c"}, ImmutableMap.of());
+
+    assertThat(columns.node(0, "")).isEqualTo(NullNode.getInstance());
+    assertThat(columns.node(0, "1")).isEqualTo(IntNode.valueOf(1));
+    assertThat(columns.node(0, "x")).isEqualTo(TextNode.valueOf("x"));
+    assertThat(columns.node(1, "true")).isEqualTo(BooleanNode.TRUE);
+    assertThat(columns.node(1, "1")).isEqualTo(TextNode.valueOf("1"));
+    assertThat(columns.node(2, "x")).isEqualTo(TextNode.valueOf("x"));
+    assertThat(columns.node(2, "1")).isEqualTo(TextNode.valueOf("1"));
+    assertThat(columns.node(3, "1")).isEqualTo(TextNode.valueOf("1"));
+    assertThat(columns.types())
+        .containsExactly(
+            entry("a", ColumnType.NUMBER),
+            entry("b", ColumnType.BOOLEAN),
+            entry("c", ColumnType.STRING));
+  }
+
+  @DisplayName("Should type columns after the types given for them")
+  @Test
+  void columns2() {
+    var columns = new TypedCsvColumns(
+        new String[] {"a", "b"},
+        TypedCsvColumns.columnTypes(ImmutableMap.of("a", "string", "b", "Number")));
+
+    assertThat(columns.node(0, "1")).isEqualTo(TextNode.valueOf("1"));
+    assertThat(columns.node(0, "")).isEqualTo(TextNode.valueOf(""));
+    assertThat(columns.node(1, "x")).isEqualTo(TextNode.valueOf("x"));
+    assertThat(columns.node(1, "1")).isEqualTo(IntNode.valueOf(1));
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> TypedCsvColumns.columnTypes(ImmutableMap.of("a", "date")))
+        .withMessage("Unsupported CSV column type! [date]");
+  }
+
+  private static JsonNode node(String cell) {
+    return new TypedCsvColumns(new String[] {"a"}, ImmutableMap.of("a", ColumnType.NUMBER))
+        .node(0, cell);
+  }
+}
@@ -0,0 +1,159 @@
+package dev.gokhun.convert;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatIllegalArgumentException;
+
+import dev.gokhun.convert.BatchConversion.Result;
+import dev.gokhun.convert.ConversionUtil.ConversionOptions;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.time.Duration;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+final class WatchConversionTest {
+  private static final Duration DEBOUNCE = Duration.ofMillis(50);
+  private static final ConversionOptions OPTIONS =
+      ConversionOptions.builder().setCsvSeparator(',').build();
+
+  @TempDir
+  File inputDirectory;
+
+  @TempDir
+  File outputDirectory;
+
+  @DisplayName("Should convert only inputs that changed since the last round")
+  @Test
+  void watch1() throws IOException, InterruptedException {
+    write("a.json", "{\"a\":1}");
+    write("b.json", "{\"b\":1}");
+
+    try (var watch = watch(OPTIONS)) {
+      assertThat(watch.convertChanged())
+          .map(Result::input)
+          .map(File::getName)
+          .containsExactly("a.json", "b.json");
+      assertThat(watch.convertChanged()).isEmpty();
+
+      write("b.json", "{\"b\":2}");
+      watch.awaitChanges();
+
+      assertThat(watch.convertChanged())
+          .map(Result::input)
+          .map(File::getName)
+          .containsExactly("b.json");
+      assertThat(new File(outputDirectory, "b.yaml")).content(UTF_8).contains("b: 2");
+    }
+  }
+
+  @DisplayName("Should pick up inputs in new directories")
+  @Test
+  void watch2() throws IOException, InterruptedException {
+    write("a.json", "{\"a\":1}");
+
+    try (var watch = watch(OPTIONS)) {
+      assertThat(watch.convertChanged()).hasSize(1);
+
+      write("sub/c.json", "{\"c\":1}");
+      watch.awaitChanges();
+
+      assertThat(watch.convertChanged())
+          .map(Result::output)
+          .containsExactly(new File(outputDirectory, "sub/c.yaml"));
+    }
+  }
+
+  @DisplayName("Should skip inputs converted before a restart with the same options")
+  @Test
+  void watch3() throws IOException, InterruptedException {
+    write("a.json", "{\"a\":1}");
+    write("b.json", "{\"b\":1}");
+    try (var watch = watch(OPTIONS)) {
+      assertThat(watch.convertChanged()).hasSize(2);
+    }
+    write("b.json", "{\"b\":2}");
+
+    try (var watch = watch(OPTIONS)) {
+      assertThat(watch.convertChanged())
+          .map(Result::input)
+          .map(File::getName)
+          .containsExactly("b.json");
+    }
+    try (var watch =
+        watch(ConversionOptions.builder().setCsvSeparator(',').setPretty(true).build())) {
+      assertThat(watch.convertChanged()).hasSize(2);
+    }
+  }
+
+  @DisplayName("Should convert failed inputs again only once they change")
+  @Test
+  void watch4() throws IOException, InterruptedException {
+    write("a.json", "{");
+
+    try (var watch = watch(OPTIONS)) {
+      assertThat(watch.convertChanged()).singleElement().matches(result -> !result.succeeded());
+      assertThat(watch.convertChanged()).isEmpty();
+
+      write("a.json", "{\"a\":1}");
+      watch.awaitChanges();
+
+      assertThat(watch.convertChanged()).singleElement().matches(Result::succeeded);
+    }
+  }
+
+  @DisplayName("Should not watch outputs within the watched input")
+  @Test
+  void watch5() {
+    assertThatIllegalArgumentException()
+        .isThrownBy(() -> WatchConversion.batch(
+            inputDirectory,
+            false,
+            new File(inputDirectory, "out"),
+            "yaml",
+            OPTIONS,
+            1,
+            new ConversionStats(),
+            ConversionCache.disabled(),
+            DEBOUNCE))
+        .withMessageStartingWith("Output directory must not be within the watched input!");
+  }
+
+  @DisplayName("Should skip inputs converted before a restart with options that only change speed")
+  @Test
+  void watch6() throws IOException, InterruptedException {
+    write("a.json", "{\"a\":1}");
+    try (var watch = watch(OPTIONS)) {
+      assertThat(watch.convertChanged()).hasSize(1);
+    }
+
+    try (var watch = watch(ConversionOptions.builder()
+        .setCsvSeparator(',')
+        .setBufferSize(512)
+        .setParallel(true)
+        .build())) {
+      assertThat(watch.convertChanged()).isEmpty();
+    }
+  }
+
+  private WatchConversion watch(ConversionOptions options) throws IOException {
+    return WatchConversion.batch(
+        inputDirectory,
+        false,
+        outputDirectory,
+        "yaml",
+        options,
+        1,
+        new ConversionStats(),
+        ConversionCache.disabled(),
+        DEBOUNCE);
+  }
+
+  private void write(String name, String content) throws IOException {
+    var path = inputDirectory.toPath().resolve(name);
+    Files.createDirectories(path.getParent());
+    Files.writeString(path, content, UTF_8);
+  }
+}
@@ -0,0 +1,118 @@
+package dev.gokhun.convert;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.json.JsonMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.yaml.snakeyaml.error.YAMLException;
+
+final class YamlTreeReaderTest {
+  private static final JsonMapper MAPPER = new JsonMapper();
+
+  @DisplayName("Should resolve aliases to sequences and mappings within the limit")
+  @Test
+  void aliases1() throws IOException {
+    var records = read("""
+        - &a [1, 2]
+        - &b {x: *a, y: *a}
+        - [*b, *b]
+        """);
+
+    assertThat(records)
+        .containsExactlyElementsOf(MAPPER.readTree("""
+            [[1, 2], {"x": [1, 2], "y": [1, 2]},
+              [{"x": [1, 2], "y": [1, 2]}, {"x": [1, 2], "y": [1, 2]}]]
+            """));
+  }
+
+  @DisplayName("Should reject documents whose aliases expand exponentially")
+  @Test
+  void aliases2() {
+    var yaml = new StringBuilder("a: &a [lol, lol, lol, lol, lol, lol, lol, lol, lol]\n");
+    for (var level = 'b'; level <= 'i'; level++) {
+      var previous = (char) (level - 1);
+      yaml.append("%s: &%s [%s]\n".formatted(level, level, IntStream.range(0, 9)
+          .mapToObj(i -> "*" + previous)
+          .collect(Collectors.joining(", "))));
+    }
+
+    assertThatThrownBy(() -> read(yaml.toString()))
+        .isInstanceOf(YAMLException.class)
+        .hasMessage("Number of aliases for non-scalar nodes exceeds the specified max=50");
+  }
+
+  @DisplayName("Should give every alias and merged mapping a tree of its own")
+  @Test
+  void aliases3() throws IOException {
+    var records = read("""
+        - &a {x: [1]}
+        - *a
+        - {<<: *a}
+        """);
+    ((ObjectNode) records.get(1)).put("y", 2);
+    ((ArrayNode) records.get(2).get("x")).add(3);
+
+    assertThat(records)
+        .containsExactlyElementsOf(MAPPER.readTree("""
+            [{"x": [1]}, {"x": [1], "y": 2}, {"x": [1, 3]}]
+            """));
+  }
+
+  @DisplayName("Should read every document as a record, sequences included")
+  @Test
+  void documents1() throws IOException {
+    assertThat(read("""
+            {a: 1}
+            ---
+            [1, 2]
+            ---
+            - &b {b: 2}
+            - *b
+            """))
+        .containsExactlyElementsOf(MAPPER.readTree("""
+            [{"a": 1}, [1, 2], [{"b": 2}, {"b": 2}]]
+            """));
+  }
+
+  @DisplayName("Should reject documents following a top level sequence read as records")
+  @Test
+  void documents2() {
+    assertThatThrownBy(() -> read("""
+            [1, 2]
+            ---
+            {a: 1}
+            """))
+        .isInstanceOf(YAMLException.class)
+        .hasMessageStartingWith("a top level sequence can not be followed by other documents\n");
+  }
+
+  @DisplayName("Should reject nesting deeper than the limit instead of overflowing the stack")
+  @Test
+  void nesting1() throws IOException {
+    assertThat(read("[".repeat(50) + "]".repeat(50))).hasSize(1);
+    assertThatThrownBy(() -> read("[".repeat(100_000) + "]".repeat(100_000)))
+        .isInstanceOf(YAMLException.class)
+        .hasMessage("Nesting Depth exceeded max 50");
+    assertThatThrownBy(() -> read("{a: ".repeat(100) + "b" + "}".repeat(100)))
+        .isInstanceOf(YAMLException.class)
+        .hasMessage("Nesting Depth exceeded max 50");
+  }
+
+  private static List<JsonNode> read(String yaml) throws IOException {
+    var records = new ArrayList<JsonNode>();
+    new YamlTreeReader(new ByteArrayInputStream(yaml.getBytes(UTF_8))).read(records::add);
+    return records;
+  }
+}